@@ -4,12 +4,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 import interfaces.IClient;
+import server.BinaryProtocol;
 
 public class Client implements IClient{
 
@@ -23,7 +28,11 @@ public class Client implements IClient{
 
     private boolean isLoggedIn = false;
     private String currentUsername = null;
+    // Seat maps already fetched, with their server version, so re-viewing only transfers changes.
+    private final Map<String, int[][]> seatMaps = new HashMap<>();
+    private final Map<String, Long> seatVersions = new HashMap<>();
     private boolean isAdmin = false;
+    private boolean binaryProtocol = false;
 
     public Client(String host, int port) {
         this.host = host;
@@ -33,29 +42,110 @@ public class Client implements IClient{
 
     public void start() {
         try {
-            socket = new Socket(host, port);
-            serverIn = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            serverOut = new PrintWriter(socket.getOutputStream(), true);
-
-            String welcome = serverIn.readLine();
-            if (welcome != null && welcome.startsWith("CONNECTED|")) {
-                System.out.println(welcome.replace("CONNECTED|", ""));
-            } else {
-                System.out.println(welcome);
+            connect();
+            if (binaryProtocol) {
+                switchToBinary();
             }
-
             mainMenu();
 
         } catch (IOException e) {
             System.out.println("Connection error: " + e.getMessage());
         } finally {
+            close();
+        }
+    }
+
+    /**
+     * Opens the connection and reads the welcome line, without starting the menus.
+     */
+    public void connect() throws IOException {
+        socket = new Socket(host, port);
+        serverIn = new ServerReader(new InputStreamReader(socket.getInputStream()), this::applySeatUpdate);
+        serverOut = new PrintWriter(socket.getOutputStream(), true);
+
+        String welcome = serverIn.readLine();
+        if (welcome != null && welcome.startsWith("CONNECTED|")) {
+            System.out.println(welcome.replace("CONNECTED|", ""));
+        } else {
+            System.out.println(welcome);
+        }
+    }
+
+    /**
+     * Makes start() switch the connection to the binary protocol right after connecting.
+     */
+    public void setBinaryProtocol(boolean binaryProtocol) {
+        this.binaryProtocol = binaryProtocol;
+    }
+
+    /**
+     * Asks the server for BinaryProtocol frames and, once it agrees, sends and reads frames.
+     * The rest of the client keeps working with protocol lines.
+     */
+    public void switchToBinary() throws IOException {
+        serverOut.println("BINARY");
+        String response = serverIn.readLine();
+        if (response == null || !response.startsWith("SUCCESS|")) {
+            throw new IOException("Server refused binary protocol: " + response);
+        }
+        serverIn = new ServerReader(new BinaryProtocol.FrameReader(socket.getInputStream()), this::applySeatUpdate);
+        serverOut = new PrintWriter(new BinaryProtocol.FrameWriter(socket.getOutputStream()), true);
+    }
+
+    public void close() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Sends all commands at once, each tagged "#n|", and then collects the replies.
+     * Saves a round trip per command, e.g. LIST_MOVIES plus a LIST_SHOWTIMES per movie on a
+     * kiosk screen refresh.
+     *
+     * @param commands protocol lines, e.g. "LIST_SHOWTIMES|Inception"
+     * @return the reply lines of each command (without tag and END_RESPONSE), in command order
+     */
+    public List<List<String>> sendPipelined(List<String> commands) throws IOException {
+        List<List<String>> replies = new ArrayList<>();
+        StringBuilder batch = new StringBuilder();
+        for (int i = 0; i < commands.size(); i++) {
+            replies.add(new ArrayList<>());
+            batch.append('#').append(i).append('|').append(commands.get(i)).append('\n');
+        }
+        serverOut.print(batch);
+        serverOut.flush();
+
+        int done = 0;
+        while (done < commands.size()) {
+            String line = serverIn.readLine();
+            if (line == null) {
+                throw new IOException("Connection closed with " + (commands.size() - done) + " replies outstanding");
+            }
+            int bar = line.indexOf('|');
+            if (!line.startsWith("#") || bar < 0) {
+                continue; // not part of a tagged reply
+            }
+            int tag;
             try {
-                if (socket != null) {
-                    socket.close();
-                }
-            } catch (IOException ignored) {
+                tag = Integer.parseInt(line.substring(1, bar));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (tag < 0 || tag >= replies.size()) {
+                continue;
+            }
+            String reply = line.substring(bar + 1);
+            if (reply.equals("END_RESPONSE")) {
+                done++;
+            } else {
+                replies.get(tag).add(reply);
             }
         }
+        return replies;
     }
 
 
@@ -543,6 +633,24 @@ public class Client implements IClient{
             return;
         }
 
+        // Keep the map live while the user picks seats.
+        boolean subscribed = subscribeSeats(chosenShowtimeId);
+        try {
+            chooseSeatsAndBook(chosenShowtimeId, seatsAvailable);
+        } finally {
+            if (subscribed) {
+                unsubscribeSeats(chosenShowtimeId);
+            }
+        }
+    }
+
+
+    /**
+     * Asks for seats and payment details and sends the booking. seatsAvailable is the cached
+     * seat map, which pushed seat updates keep current.
+     */
+    private void chooseSeatsAndBook(String chosenShowtimeId, int[][] seatsAvailable) throws IOException {
+
         int rows = seatsAvailable.length;
         int cols = rows > 0 ? seatsAvailable[0].length : 0;
 
@@ -597,6 +705,7 @@ public class Client implements IClient{
                 }
 
 
+                pollSeatUpdates();
                 if (seatsAvailable[row - 1][col - 1] == 0) {
                     System.out.println("That seat is already booked. Please choose another.");
                     continue;
@@ -645,7 +754,7 @@ public class Client implements IClient{
                 .append(cvv);
 
         serverOut.println(cmd.toString());
-        response = serverIn.readLine();
+        String response = serverIn.readLine();
 
         if (response != null && response.startsWith("SUCCESS")) {
             String[] f = response.split("\\|");
@@ -662,7 +771,54 @@ public class Client implements IClient{
 
 
     private int[][] viewSeatMap(String showtimeId) throws IOException {
-        serverOut.println("VIEW_SEATS|" + showtimeId);
+        int[][] seats = readSeatMap(showtimeId);
+        if (seats == null) {
+            return null;
+        }
+        int rows = seats.length;
+        int cols = rows > 0 ? seats[0].length : 0;
+
+
+        System.out.println("\n        SCREEN");
+        System.out.println("--------------------------------");
+
+        for (int r = 0; r < rows; r++) {
+            char rowLabel;
+            if (r < 26) {
+                rowLabel = (char) ('A' + r);
+            } else {
+                rowLabel = '?';
+            }
+
+            StringBuilder line = new StringBuilder();
+            line.append(rowLabel).append(": ");
+            for (int c = 0; c < cols; c++) {
+                if (seats[r][c] == 1) {
+                    line.append("[O]");
+                } else {
+                    line.append("[X]");
+                }
+            }
+            System.out.println(line.toString());
+        }
+
+        System.out.println("--------------------------------");
+        System.out.println("O = available, X = booked");
+        System.out.println("Rows are labeled A, B, C... (Row 1 = A, Row 2 = B, etc.)");
+        System.out.println("You will enter seats using numbers like 1:3 (row:col).");
+
+        return seats;
+    }
+
+
+    /**
+     * Fetches the seat map (1 = available, 0 = booked). If this showtime's map was fetched
+     * before, only the seats changed since then are requested and applied to the cached copy.
+     */
+    private int[][] readSeatMap(String showtimeId) throws IOException {
+        int[][] cached = seatMaps.get(showtimeId);
+        long since = cached != null ? seatVersions.get(showtimeId) : 0;
+        serverOut.println("VIEW_SEATS|" + showtimeId + "|" + since);
         String response = serverIn.readLine();
 
         if (response == null) {
@@ -670,6 +826,34 @@ public class Client implements IClient{
             return null;
         }
 
+        if (response.startsWith("SEAT_DELTA|") && cached != null) {
+            String[] parts = response.split("\\|");
+            int[][] seats = new int[cached.length][];
+            for (int r = 0; r < cached.length; r++) {
+                seats[r] = cached[r].clone();
+            }
+            String line;
+            while ((line = serverIn.readLine()) != null && !line.equals("END_SEATS")) {
+                String[] seatParts = line.split("\\|");
+                if (seatParts.length < 3) {
+                    continue;
+                }
+                String[] rowCol = seatParts[1].split(":");
+                try {
+                    int r = Integer.parseInt(rowCol[0]) - 1;
+                    int c = Integer.parseInt(rowCol[1]) - 1;
+                    if (r >= 0 && r < seats.length && c >= 0 && c < seats[r].length) {
+                        seats[r][c] = "1".equals(seatParts[2]) ? 1 : 0;
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    System.out.println("Unexpected seat update format.");
+                }
+            }
+            seatMaps.put(showtimeId, seats);
+            seatVersions.put(showtimeId, Long.parseLong(parts[1]));
+            return seats;
+        }
+
         if (!response.startsWith("SUCCESS")) {
             System.out.println("Error: " + response.replace("ERROR|", ""));
             return null;
@@ -719,36 +903,73 @@ public class Client implements IClient{
         if (endLine == null || !endLine.equals("END_SEATS")) {
         }
 
+        if (parts.length >= 4) {
+            try {
+                seatVersions.put(showtimeId, Long.parseLong(parts[3]));
+                seatMaps.put(showtimeId, seats);
+            } catch (NumberFormatException e) {
+                seatMaps.remove(showtimeId);
+            }
+        }
+        return seats;
+    }
 
-        System.out.println("\n        SCREEN");
-        System.out.println("--------------------------------");
 
-        for (int r = 0; r < rows; r++) {
-            char rowLabel;
-            if (r < 26) {
-                rowLabel = (char) ('A' + r);
-            } else {
-                rowLabel = '?';
-            }
+    private boolean subscribeSeats(String showtimeId) throws IOException {
+        Long version = seatVersions.get(showtimeId);
+        serverOut.println("SUBSCRIBE_SEATS|" + showtimeId + (version != null ? "|" + version : ""));
+        String response = serverIn.readLine();
+        return response != null && response.startsWith("SUCCESS");
+    }
 
-            StringBuilder line = new StringBuilder();
-            line.append(rowLabel).append(": ");
-            for (int c = 0; c < cols; c++) {
-                if (seats[r][c] == 1) {
-                    line.append("[O]");
-                } else {
-                    line.append("[X]");
-                }
-            }
-            System.out.println(line.toString());
+
+    private void unsubscribeSeats(String showtimeId) throws IOException {
+        serverOut.println("UNSUBSCRIBE_SEATS|" + showtimeId);
+        serverIn.readLine();
+    }
+
+
+    /**
+     * Applies seat updates the server pushed since the last read, without waiting for more.
+     */
+    private void pollSeatUpdates() throws IOException {
+        if (serverIn instanceof ServerReader) {
+            ((ServerReader) serverIn).pollPushes();
         }
+    }
 
-        System.out.println("--------------------------------");
-        System.out.println("O = available, X = booked");
-        System.out.println("Rows are labeled A, B, C... (Row 1 = A, Row 2 = B, etc.)");
-        System.out.println("You will enter seats using numbers like 1:3 (row:col).");
 
-        return seats;
+    /**
+     * Applies a pushed SEAT_UPDATE|id|version|row:col:available,... line to the cached seat map.
+     */
+    private void applySeatUpdate(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 3) {
+            return;
+        }
+        int[][] seats = seatMaps.get(parts[1]);
+        if (seats == null) {
+            return;
+        }
+        if (parts.length > 3 && !parts[3].isEmpty()) {
+            for (String seat : parts[3].split(",")) {
+                String[] rca = seat.split(":");
+                try {
+                    int r = Integer.parseInt(rca[0]) - 1;
+                    int c = Integer.parseInt(rca[1]) - 1;
+                    if (r >= 0 && r < seats.length && c >= 0 && c < seats[r].length) {
+                        seats[r][c] = "1".equals(rca[2]) ? 1 : 0;
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    System.out.println("Unexpected seat update format.");
+                }
+            }
+        }
+        try {
+            seatVersions.put(parts[1], Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            seatMaps.remove(parts[1]);
+        }
     }
 
 
@@ -907,6 +1128,50 @@ public class Client implements IClient{
 
     public static void main(String[] args) {
         Client client = new Client("localhost", 4242);
+        client.setBinaryProtocol(args.length > 0 && args[0].equals("--binary"));
         client.start();
     }
+
+    /**
+     * Reader for server replies that hands pushed SEAT_UPDATE lines to a callback instead of
+     * returning them, so they can arrive between any two replies.
+     */
+    private static final class ServerReader extends BufferedReader {
+        private final Consumer<String> onPush;
+        private final List<String> held = new ArrayList<>(); // replies read while polling for pushes
+
+        ServerReader(Reader in, Consumer<String> onPush) {
+            super(in);
+            this.onPush = onPush;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            if (!held.isEmpty()) {
+                return held.remove(0);
+            }
+            String line;
+            while ((line = super.readLine()) != null && line.startsWith("SEAT_UPDATE|")) {
+                onPush.accept(line);
+            }
+            return line;
+        }
+
+        /**
+         * Handles every push already received, without blocking for more.
+         */
+        void pollPushes() throws IOException {
+            while (ready()) {
+                String line = super.readLine();
+                if (line == null) {
+                    return;
+                }
+                if (line.startsWith("SEAT_UPDATE|")) {
+                    onPush.accept(line);
+                } else {
+                    held.add(line);
+                }
+            }
+        }
+    }
 }
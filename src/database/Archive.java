@@ -0,0 +1,350 @@
+package database;
+
+import database.DatabaseSnapshot.ReservationRecord;
+import database.DatabaseSnapshot.ShowtimeRecord;
+import seat.Seat;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of showtimes that have been moved out of the live Database, together with
+ * the reservations they had.
+ *
+ * Notes:
+ * - One record per archived showtime, framed like the journal as [length][crc32][payload], so a
+ *   torn record at the tail is cut off on the next open.
+ * - Payment details (card number, expiry, CVV) are not archived; the archive is for reports.
+ * - A showtime can be appended twice if the server stops between appending it and logging its
+ *   removal; readers keep the last record per showtime ID.
+ * - For a user's own bookings only the records that mention them are read: the file offsets of
+ *   those records are indexed per username on the first such lookup and kept up by append().
+ */
+public class Archive implements Closeable {
+
+    private static final int MAGIC = 0x43415243; // "CARC"
+    private static final int HEADER_SIZE = 4;
+
+    private final FileChannel channel;
+    private final ReentrantLock fileLock = new ReentrantLock(); // held across fsync; not a monitor so virtual threads don't pin
+    private Map<String, Set<Long>> recordsByUser; // record offsets per username; built on first use, guarded by fileLock
+
+    /**
+     * A reservation of an archived showtime, with the fields the admin booking report shows.
+     */
+    public static final class ArchivedBooking {
+        private final String bookingID;
+        private final String username;
+        private final String movieTitle;
+        private final LocalDateTime dateTime;
+        private final List<String> seatLabels;
+        private final double totalPrice;
+
+        ArchivedBooking(String bookingID, String username, String movieTitle, LocalDateTime dateTime,
+                        List<String> seatLabels, double totalPrice) {
+            this.bookingID = bookingID;
+            this.username = username;
+            this.movieTitle = movieTitle;
+            this.dateTime = dateTime;
+            this.seatLabels = Collections.unmodifiableList(seatLabels);
+            this.totalPrice = totalPrice;
+        }
+
+        public String getBookingID() {
+            return bookingID;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getMovieTitle() {
+            return movieTitle;
+        }
+
+        public LocalDateTime getDateTime() {
+            return dateTime;
+        }
+
+        public List<String> getSeatLabels() {
+            return seatLabels;
+        }
+
+        public double getTotalPrice() {
+            return totalPrice;
+        }
+    }
+
+    private Archive(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens (or creates) the archive at the given path and drops a torn record at its tail.
+     */
+    static Archive open(String path) throws IOException {
+        Path p = Paths.get(path);
+        long validLength = HEADER_SIZE;
+        if (Files.exists(p) && Files.size(p) >= HEADER_SIZE) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an archive file: " + path);
+                }
+                byte[] payload;
+                while ((payload = readFrame(in)) != null) {
+                    validLength += 8 + payload.length;
+                }
+            }
+        }
+
+        FileChannel channel = FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+            header.flip();
+            channel.write(header, 0);
+            validLength = HEADER_SIZE;
+        } else if (channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        channel.force(true);
+        channel.position(validLength);
+        return new Archive(channel);
+    }
+
+    /**
+     * Appends one showtime and its reservations and forces them to disk.
+     */
+    void append(ShowtimeRecord showtime, List<ReservationRecord> reservations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(showtime.id);
+        out.writeUTF(showtime.movie.title);
+        out.writeUTF(showtime.dateTime.toString());
+        out.writeInt(showtime.rows);
+        out.writeInt(showtime.cols);
+        out.writeDouble(showtime.basePrice);
+        Journal.writeNullable(out, showtime.auditorium);
+        out.writeInt(reservations.size());
+        for (ReservationRecord r : reservations) {
+            out.writeUTF(r.bookingID);
+            out.writeUTF(r.bookingTime.toString());
+            out.writeUTF(r.username);
+            out.writeInt(r.rows.length);
+            for (int i = 0; i < r.rows.length; i++) {
+                out.writeInt(r.rows[i]);
+                out.writeInt(r.cols[i]);
+                out.writeDouble(r.prices[i]);
+            }
+        }
+        out.flush();
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        frame.flip();
+        fileLock.lock();
+        try {
+            long offset = channel.position();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            channel.force(false);
+            if (recordsByUser != null) {
+                for (ReservationRecord r : reservations) {
+                    recordsByUser.computeIfAbsent(r.username, u -> new LinkedHashSet<>()).add(offset);
+                }
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Reads every archived booking, oldest showtime first.
+     */
+    List<ArchivedBooking> readBookings() throws IOException {
+        Map<Integer, List<ArchivedBooking>> byShowtime = new LinkedHashMap<>();
+        long end;
+        fileLock.lock();
+        try {
+            end = channel.position();
+        } finally {
+            fileLock.unlock();
+        }
+        // Records below end are complete and never rewritten, so they can be read while others append.
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new RangeInputStream(channel, HEADER_SIZE, end)));
+        byte[] payload;
+        while ((payload = readFrame(in)) != null) {
+            int showtimeId = ByteBuffer.wrap(payload).getInt();
+            byShowtime.remove(showtimeId); // a re-archived showtime moves to its latest position
+            byShowtime.put(showtimeId, parseBookings(payload));
+        }
+        List<ArchivedBooking> all = new ArrayList<>();
+        for (List<ArchivedBooking> bookings : byShowtime.values()) {
+            all.addAll(bookings);
+        }
+        return all;
+    }
+
+    /**
+     * Reads the archived bookings of one user, oldest showtime first, from just the records that
+     * mention them.
+     */
+    List<ArchivedBooking> readBookings(String username) throws IOException {
+        List<Long> offsets;
+        long end;
+        fileLock.lock();
+        try {
+            end = channel.position();
+            if (recordsByUser == null) {
+                recordsByUser = indexUsers(end);
+            }
+            offsets = new ArrayList<>(recordsByUser.getOrDefault(username, Collections.emptySet()));
+        } finally {
+            fileLock.unlock();
+        }
+        Map<String, ArchivedBooking> bookings = new LinkedHashMap<>(); // a re-archived booking keeps one entry
+        for (long offset : offsets) {
+            byte[] payload = readFrame(new DataInputStream(new RangeInputStream(channel, offset, end)));
+            if (payload == null) {
+                continue;
+            }
+            for (ArchivedBooking booking : parseBookings(payload)) {
+                if (booking.getUsername().equals(username)) {
+                    bookings.put(booking.getBookingID(), booking);
+                }
+            }
+        }
+        return new ArrayList<>(bookings.values());
+    }
+
+    /**
+     * Maps each username to the offsets of the records holding their bookings.
+     */
+    private Map<String, Set<Long>> indexUsers(long end) throws IOException {
+        Map<String, Set<Long>> index = new HashMap<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new RangeInputStream(channel, HEADER_SIZE, end)));
+        long offset = HEADER_SIZE;
+        byte[] payload;
+        while ((payload = readFrame(in)) != null) {
+            for (ArchivedBooking booking : parseBookings(payload)) {
+                index.computeIfAbsent(booking.getUsername(), u -> new LinkedHashSet<>()).add(offset);
+            }
+            offset += 8 + payload.length;
+        }
+        return index;
+    }
+
+    /**
+     * Decodes the bookings of one showtime record.
+     */
+    private static List<ArchivedBooking> parseBookings(byte[] payload) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        record.readInt();    // showtime ID
+        String title = record.readUTF();
+        LocalDateTime dateTime = LocalDateTime.parse(record.readUTF());
+        record.readInt();    // rows
+        record.readInt();    // cols
+        record.readDouble(); // base price
+        Journal.readNullable(record);
+        List<ArchivedBooking> bookings = new ArrayList<>();
+        for (int n = record.readInt(); n > 0; n--) {
+            String bookingID = record.readUTF();
+            record.readUTF(); // booking time
+            String username = record.readUTF();
+            List<String> labels = new ArrayList<>();
+            double total = 0.0;
+            for (int s = record.readInt(); s > 0; s--) {
+                Seat seat = new Seat(record.readInt(), record.readInt(), record.readDouble());
+                labels.add(seat.getSeatLabel());
+                total += seat.getPrice();
+            }
+            bookings.add(new ArchivedBooking(bookingID, username, title, dateTime, labels, total));
+        }
+        return bookings;
+    }
+
+    /**
+     * Reads one [length][crc32][payload] frame, or returns null at the end of the valid records.
+     */
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileLock.lock();
+        try {
+            channel.close();
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Reads a byte range of a channel without moving its position.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+            int n = channel.read(buf, position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
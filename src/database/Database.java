@@ -4,210 +4,1412 @@ import interfaces.IDatabase;
 import user.User;
 import reservation.Reservation;
 import movie.Movie;
+import showtime.MappedSeatStore;
 import showtime.Showtime;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
+/**
+ * Central in-memory store.
+ *
+ * Users and movies are kept in insertion-ordered maps keyed by username and title, so lookups
+ * and removals are O(1) while the list getters still return entries in the order they were
+ * added, and reservations in a map keyed by booking ID. Adding an entry whose key already exists
+ * replaces the earlier one in place. Showtimes are keyed by the numeric ID the database assigns when they are added,
+ * with a secondary (movie, dateTime) index and, per movie title, a schedule sorted by start time
+ * for range queries. Reservations are also ordered by (booking time, booking ID), the order
+ * getReservations() returns them in, so large histories can be paged through with a cursor
+ * (getReservationPage()).
+ *
+ * Locking (ReentrantLocks rather than the object monitor, so clients on virtual threads do not
+ * pin their carrier):
+ * - Users, movies and showtimes each have a read-write lock, so lookups run in parallel and a
+ *   write only waits for readers and writers of the same entity type.
+ * - Reservations are in concurrent maps and are read without locks. Writes lock one of
+ *   RESERVATION_STRIPES locks chosen by booking ID, so bookings and cancellations of different
+ *   reservations do not contend; each user's own list has a lock of its own (see User).
+ * - Check-then-act steps that clients need done atomically (registering a free username, adding
+ *   a movie or showtime that does not exist yet, cancelling a booking once) are methods here, so
+ *   callers never hold a database lock themselves.
+ * - Journal records are appended while holding the lock of what they change, so records for the
+ *   same entity are in apply order. A booking also holds the users read lock and removeUser() the
+ *   write lock, so a user's removal is never logged before one of their bookings. Operations on
+ *   the whole state (snapshots, clearAll, the journal and archive) take the locks in a fixed
+ *   order: stateLock, users, movies, showtimes, then the reservation stripes.
+ *
+ * Snapshots copy the state into a DatabaseSnapshot while every writer is held off and are written
+ * to disk by a background thread, so readers are not blocked at all and writers only for the copy,
+ * not the file write.
+ *
+ * Showtimes that have ended can be moved, with their reservations, to an append-only Archive
+ * (archiveEndedShowtimes()), so the in-memory state only holds current and future screenings.
+ * Their owners still see archived bookings through getArchivedBookings(username).
+ *
+ * The snapshot, journal, seat store and archive files live in the working directory, or in the
+ * directory given by -Dcinema.dataDir when the Database is created.
+ */
 public class Database implements IDatabase, Serializable {
 
-    private List<User> users;
-    private List<Movie> movies;
-    private List<Showtime> showtimes;
-    private List<Reservation> reservations;
+    private Map<String, User> users;
+    private Map<String, Movie> movies;
+    private Map<Integer, Showtime> showtimes;
+    private transient Map<ShowtimeKey, Showtime> showtimeIndex; // (movie, dateTime) -> showtime
+    private transient Map<String, NavigableMap<LocalDateTime, List<Showtime>>> schedules; // movie title -> showtimes by start time
+    private int nextShowtimeId;
+    private Map<String, Reservation> reservations;
+    private transient ConcurrentSkipListMap<ReservationKey, Reservation> reservationOrder; // same reservations, in booking order
     private final String filePath = "myDataBase.ser";
 
+    private static final String JOURNAL_PATH = "myDataBase.log";
+    private static final String SEAT_STORE_PATH = "myDataBase.seats";
+    private static final String ARCHIVE_PATH = "myDataBase.archive";
+    private static final String DATA_DIR_PROPERTY = "cinema.dataDir"; // directory of the files above, default the working directory
+    private static final int CHECKPOINT_INTERVAL = 10000; // journal records between full snapshots
+    private static final int PAGE_SCAN_FACTOR = 16; // a filtered page looks at most this many entries per row returned
+    private static final int RESERVATION_STRIPES = 64; // power of two
+
+    // One writer for every snapshot, so snapshots reach the disk in the order they were captured.
+    private static final ExecutorService SNAPSHOT_WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private transient ReentrantLock stateLock;                 // paging in, clearing, journal open/close
+    private transient ReentrantReadWriteLock usersLock;
+    private transient ReentrantReadWriteLock moviesLock;
+    private transient ReentrantReadWriteLock showtimesLock;    // showtimes, their indexes, nextShowtimeId, seatStore
+    private transient ReentrantLock[] reservationLocks;        // striped by booking ID
+    private transient ReentrantLock archiveLock;
+    private transient AtomicBoolean checkpointRunning = new AtomicBoolean();
+    private transient volatile Journal journal;  // null until openJournal(); mutations are then logged here
+    private long journalSeq;            // last journal record already reflected in this state
+    private transient volatile DatabaseSnapshot.ReservationSource deferredReservations; // stored reservations not paged in yet
+    private transient volatile boolean reservationsReady = true;
+    private transient boolean deferredSeatsBooked;
+    private transient Map<String, Reservation> replayedReservations; // journal bookings parked while reservations are deferred
+    private transient Set<String> replayedCancellations;             // deferred bookings the journal cancelled
+    private transient MappedSeatStore seatStore;  // null unless openSeatStore() moved seat state off-heap
+    private transient Archive archive;            // opened on first use
+    private transient Path dataDir;               // where the snapshot, journal, seat store and archive live
+    private transient volatile long catalogVersion; // bumped whenever the movie list changes
+
 
     public Database() {
-        users = new ArrayList<>();
-        movies = new ArrayList<>();
-        showtimes = new ArrayList<>();
-        reservations = new ArrayList<>();
+        users = new LinkedHashMap<>();
+        movies = new LinkedHashMap<>();
+        showtimes = new LinkedHashMap<>();
+        showtimeIndex = new HashMap<>();
+        schedules = new HashMap<>();
+        reservations = new ConcurrentHashMap<>();
+        reservationOrder = new ConcurrentSkipListMap<>();
+        initLocks();
+        dataDir = Paths.get(System.getProperty(DATA_DIR_PROPERTY, ""));
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initLocks();
+        dataDir = Paths.get(System.getProperty(DATA_DIR_PROPERTY, ""));
+        checkpointRunning = new AtomicBoolean();
+        reservationsReady = true;
+        schedules = new HashMap<>();
+        showtimeIndex = new HashMap<>();
+        for (Showtime s : showtimes.values()) {
+            schedule(s);
+            showtimeIndex.put(new ShowtimeKey(s.getMovie(), s.getDateTime()), s);
+        }
+        reservations = new ConcurrentHashMap<>(reservations);
+        reservationOrder = new ConcurrentSkipListMap<>();
+        for (Reservation r : reservations.values()) {
+            reservationOrder.put(new ReservationKey(r), r);
+        }
+    }
 
-    @Override
-    public synchronized List<User> getUsers() {
-        return new ArrayList<>(users);
+    private void initLocks() {
+        stateLock = new ReentrantLock();
+        usersLock = new ReentrantReadWriteLock();
+        moviesLock = new ReentrantReadWriteLock();
+        showtimesLock = new ReentrantReadWriteLock();
+        reservationLocks = new ReentrantLock[RESERVATION_STRIPES];
+        for (int i = 0; i < RESERVATION_STRIPES; i++) {
+            reservationLocks[i] = new ReentrantLock();
+        }
+        archiveLock = new ReentrantLock();
+    }
+
+    private ReentrantLock reservationLock(String bookingID) {
+        int h = bookingID.hashCode();
+        return reservationLocks[(h ^ (h >>> 16)) & (RESERVATION_STRIPES - 1)];
+    }
+
+    /**
+     * Holds off every writer, for a consistent copy of the whole state. Readers carry on.
+     */
+    private void lockAllForReading() {
+        usersLock.readLock().lock();
+        moviesLock.readLock().lock();
+        showtimesLock.readLock().lock();
+        for (ReentrantLock stripe : reservationLocks) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAllForReading() {
+        for (int i = RESERVATION_STRIPES - 1; i >= 0; i--) {
+            reservationLocks[i].unlock();
+        }
+        showtimesLock.readLock().unlock();
+        moviesLock.readLock().unlock();
+        usersLock.readLock().unlock();
     }
 
+    /**
+     * Holds off every reader and writer (apart from lock-free reservation reads), for changes to
+     * the whole state. Callers take stateLock first.
+     */
+    private void lockAll() {
+        usersLock.writeLock().lock();
+        moviesLock.writeLock().lock();
+        showtimesLock.writeLock().lock();
+        for (ReentrantLock stripe : reservationLocks) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = RESERVATION_STRIPES - 1; i >= 0; i--) {
+            reservationLocks[i].unlock();
+        }
+        showtimesLock.writeLock().unlock();
+        moviesLock.writeLock().unlock();
+        usersLock.writeLock().unlock();
+    }
+
+    /**
+     * Key for the (movie, dateTime) showtime index. The index is rebuilt after deserializing,
+     * so keys are never serialized.
+     */
+    private static final class ShowtimeKey {
+        private final Movie movie;
+        private final LocalDateTime dateTime;
+
+        ShowtimeKey(Movie movie, LocalDateTime dateTime) {
+            this.movie = movie;
+            this.dateTime = dateTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ShowtimeKey)) return false;
+            ShowtimeKey other = (ShowtimeKey) o;
+            return Objects.equals(movie, other.movie) && Objects.equals(dateTime, other.dateTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(movie, dateTime);
+        }
+    }
+
+    /**
+     * Position of a reservation in booking order; also the page cursor ("time/bookingID").
+     */
+    private static final class ReservationKey implements Comparable<ReservationKey> {
+        private final LocalDateTime time;
+        private final String bookingID;
+
+        ReservationKey(Reservation r) {
+            this(r.getBookingTime() != null ? r.getBookingTime() : LocalDateTime.MIN, r.getBookingID());
+        }
+
+        ReservationKey(LocalDateTime time, String bookingID) {
+            this.time = time;
+            this.bookingID = bookingID;
+        }
+
+        static ReservationKey parse(String cursor) {
+            int slash = cursor.indexOf('/');
+            if (slash < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            try {
+                return new ReservationKey(LocalDateTime.parse(cursor.substring(0, slash)), cursor.substring(slash + 1));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+
+        @Override
+        public int compareTo(ReservationKey o) {
+            int c = time.compareTo(o.time);
+            return c != 0 ? c : bookingID.compareTo(o.bookingID);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ReservationKey && compareTo((ReservationKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, bookingID);
+        }
+
+        @Override
+        public String toString() {
+            return time + "/" + bookingID;
+        }
+    }
 
 
     @Override
-    public synchronized void addUser(User u) {
-        if (u != null) {
-            users.add(u);
+    public List<User> getUsers() {
+        usersLock.readLock().lock();
+        try {
+            return new ArrayList<>(users.values());
+        } finally {
+            usersLock.readLock().unlock();
         }
     }
 
+
+
     @Override
-    public synchronized void removeUser(String username) {
-        User toBeRemoved = null;
-        for (User u : users) {
-            if (u.getUsername().equals(username)) {
-                toBeRemoved = u;
-                break;
+    public void addUser(User u) {
+        usersLock.writeLock().lock();
+        try {
+            if (u != null) {
+                users.put(u.getUsername(), u);
+                if (journal != null) {
+                    journal.logUserAdded(u);
+                }
             }
+        } finally {
+            usersLock.writeLock().unlock();
         }
-        if (toBeRemoved != null) {
-            users.remove(toBeRemoved);
+    }
+
+    /**
+     * Adds the user unless the username is taken, as one step.
+     *
+     * @return false if a user with that name already exists
+     */
+    public boolean addUserIfAbsent(User u) {
+        usersLock.writeLock().lock();
+        try {
+            if (users.containsKey(u.getUsername())) {
+                return false;
+            }
+            addUser(u);
+            return true;
+        } finally {
+            usersLock.writeLock().unlock();
         }
     }
 
+    /**
+     * Removes the user and cancels the bookings they still hold, freeing their seats. Runs under
+     * the users write lock, which addReservation() holds for reading, so a booking made
+     * concurrently is either cancelled here (and journaled before the removal) or rejected.
+     */
     @Override
-    public synchronized User findUser(String username) {
-        for (User u : users) {
-            if (u.getUsername().equals(username)) {
-                return u;
+    public void removeUser(String username) {
+        loadDeferredReservations();
+        usersLock.writeLock().lock();
+        try {
+            User removed = users.remove(username);
+            if (removed != null) {
+                removeReservationsOf(removed);
+                if (journal != null) {
+                    journal.logUserRemoved(username);
+                }
             }
+        } finally {
+            usersLock.writeLock().unlock();
         }
-        return null;
     }
 
+    /**
+     * Replays a journaled user removal. The bookings the user held have their own cancellation
+     * records earlier in the journal.
+     */
+    void replayUserRemoved(String username) {
+        usersLock.writeLock().lock();
+        try {
+            users.remove(username);
+        } finally {
+            usersLock.writeLock().unlock();
+        }
+    }
 
     @Override
-    public synchronized void addMovie(Movie m) {
-        if (m != null) {
-            movies.add(m);
+    public User findUser(String username) {
+        usersLock.readLock().lock();
+        try {
+            return users.get(username);
+        } finally {
+            usersLock.readLock().unlock();
+        }
+    }
+
+
+    @Override
+    public void addMovie(Movie m) {
+        moviesLock.writeLock().lock();
+        try {
+            if (m != null) {
+                movies.put(m.getTitle(), m);
+                catalogVersion++;
+                if (journal != null) {
+                    journal.logMovieAdded(m);
+                }
+            }
+        } finally {
+            moviesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the movie unless one with the same title exists, as one step.
+     *
+     * @return false if the title is already in the catalog
+     */
+    public boolean addMovieIfAbsent(Movie m) {
+        moviesLock.writeLock().lock();
+        try {
+            if (movies.containsKey(m.getTitle())) {
+                return false;
+            }
+            addMovie(m);
+            return true;
+        } finally {
+            moviesLock.writeLock().unlock();
         }
     }
 
     @Override
-    public synchronized void removeMovie(String title) {
-        Movie toBeRemoved = null;
-        for (Movie m : movies) {
-            if (m.getTitle().equals(title)) {
-                toBeRemoved = m;
-                break;
+    public void removeMovie(String title) {
+        moviesLock.writeLock().lock();
+        try {
+            if (movies.remove(title) != null) {
+                catalogVersion++;
+                if (journal != null) {
+                    journal.logMovieRemoved(title);
+                }
             }
+        } finally {
+            moviesLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Movie> getMovies() {
+        moviesLock.readLock().lock();
+        try {
+            return new ArrayList<>(movies.values());
+        } finally {
+            moviesLock.readLock().unlock();
         }
-        if (toBeRemoved != null) {
-            movies.remove(toBeRemoved);
+    }
+
+    /**
+     * Returns a counter that changes whenever a movie is added or removed. Read without the lock,
+     * so callers can check a cached movie list cheaply.
+     */
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    @Override
+    public Movie findMovie(String title) {
+        moviesLock.readLock().lock();
+        try {
+            return movies.get(title);
+        } finally {
+            moviesLock.readLock().unlock();
         }
     }
 
+
     @Override
-    public synchronized List<Movie> getMovies() {
-        return new ArrayList<>(movies);
+    public void addShowtime(Showtime s) {
+        showtimesLock.writeLock().lock();
+        try {
+            if (s != null) {
+                if (s.getId() == Showtime.UNASSIGNED_ID) {
+                    s.assignId(nextShowtimeId);
+                }
+                nextShowtimeId = Math.max(nextShowtimeId, s.getId() + 1);
+                Showtime previous = showtimes.put(s.getId(), s);
+                if (previous != null) {
+                    unschedule(previous);
+                    showtimeIndex.remove(new ShowtimeKey(previous.getMovie(), previous.getDateTime()), previous);
+                }
+                showtimeIndex.put(new ShowtimeKey(s.getMovie(), s.getDateTime()), s);
+                schedule(s);
+                if (journal != null) {
+                    journal.logShowtimeAdded(s);
+                }
+                attachSeats(s);
+            }
+        } finally {
+            showtimesLock.writeLock().unlock();
+        }
     }
 
+    /**
+     * Adds the showtime unless its movie already has one at the same time, as one step.
+     *
+     * @return false on such a conflict; the showtime is then not added and gets no ID
+     */
+    public boolean addShowtimeIfAbsent(Showtime s) {
+        showtimesLock.writeLock().lock();
+        try {
+            if (showtimeIndex.containsKey(new ShowtimeKey(s.getMovie(), s.getDateTime()))) {
+                return false;
+            }
+            addShowtime(s);
+            return true;
+        } finally {
+            showtimesLock.writeLock().unlock();
+        }
+    }
 
     @Override
-    public synchronized void addShowtime(Showtime s) {
-        if (s != null) {
-            showtimes.add(s);
+    public Showtime findShowtime(Movie m, LocalDateTime dt) {
+        showtimesLock.readLock().lock();
+        try {
+            return showtimeIndex.get(new ShowtimeKey(m, dt));
+        } finally {
+            showtimesLock.readLock().unlock();
         }
     }
 
     @Override
-    public synchronized Showtime findShowtime(Movie m, LocalDateTime dt) {
-        for (Showtime s : showtimes) {
-            if (s.getMovie().equals(m) && s.getDateTime().equals(dt)) {
-                return s;
+    public List<Showtime> getShowtimes() {
+        showtimesLock.readLock().lock();
+        try {
+            return new ArrayList<>(showtimes.values());
+        } finally {
+            showtimesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all showtimes of a movie, earliest first.
+     */
+    public List<Showtime> getShowtimesForMovie(String title) {
+        return getShowtimesForMovie(title, null, null);
+    }
+
+    /**
+     * Returns the showtimes of a movie starting in [from, to), earliest first. Either bound may be
+     * null for an open range; pass the current time as from for showtimes that have not started.
+     * Only that movie's schedule is visited.
+     */
+    public List<Showtime> getShowtimesForMovie(String title, LocalDateTime from, LocalDateTime to) {
+        showtimesLock.readLock().lock();
+        try {
+            List<Showtime> result = new ArrayList<>();
+            NavigableMap<LocalDateTime, List<Showtime>> schedule = schedules.get(title);
+            if (schedule == null) {
+                return result;
+            }
+            NavigableMap<LocalDateTime, List<Showtime>> range = schedule;
+            if (from != null) {
+                range = range.tailMap(from, true);
+            }
+            if (to != null) {
+                range = range.headMap(to, false);
+            }
+            for (List<Showtime> sameTime : range.values()) {
+                result.addAll(sameTime);
+            }
+            return result;
+        } finally {
+            showtimesLock.readLock().unlock();
+        }
+    }
+
+    private void schedule(Showtime s) {
+        schedules.computeIfAbsent(s.getMovie().getTitle(), t -> new TreeMap<>())
+                .computeIfAbsent(s.getDateTime(), t -> new ArrayList<>(1))
+                .add(s);
+    }
+
+    private void unschedule(Showtime s) {
+        NavigableMap<LocalDateTime, List<Showtime>> schedule = schedules.get(s.getMovie().getTitle());
+        if (schedule == null) {
+            return;
+        }
+        List<Showtime> sameTime = schedule.get(s.getDateTime());
+        if (sameTime != null && sameTime.remove(s) && sameTime.isEmpty()) {
+            schedule.remove(s.getDateTime());
+            if (schedule.isEmpty()) {
+                schedules.remove(s.getMovie().getTitle());
             }
         }
-        return null;
     }
 
     @Override
-    public synchronized List<Showtime> getShowtimes() {
-        return new ArrayList<>(showtimes);
+    public Showtime findShowtimeById(int id) {
+        showtimesLock.readLock().lock();
+        try {
+            return showtimes.get(id);
+        } finally {
+            showtimesLock.readLock().unlock();
+        }
     }
 
 
+    /**
+     * Adds the reservation and links it to its user. The users read lock is held throughout, so
+     * the booking and its journal record cannot interleave with removeUser() for that user.
+     *
+     * @throws IllegalStateException if the reservation's user is not (or no longer) registered
+     */
     @Override
-    public synchronized void addReservation(Reservation r) {
-        if (r != null) {
-            reservations.add(r);
+    public void addReservation(Reservation r) {
+        if (r == null) {
+            return;
+        }
+        loadDeferredReservations();
+        User user = r.getUser();
+        usersLock.readLock().lock();
+        try {
+            if (users.get(user.getUsername()) != user) {
+                throw new IllegalStateException("User is not registered: " + user.getUsername());
+            }
+            ReentrantLock stripe = reservationLock(r.getBookingID());
+            stripe.lock();
+            try {
+                Reservation replaced = reservations.put(r.getBookingID(), r);
+                if (replaced != null) {
+                    reservationOrder.remove(new ReservationKey(replaced));
+                }
+                reservationOrder.put(new ReservationKey(r), r);
+                if (journal != null) {
+                    journal.logReservationCreated(r);
+                }
+            } finally {
+                stripe.unlock();
+            }
+            user.addReservation(r);
+        } finally {
+            usersLock.readLock().unlock();
         }
     }
 
     @Override
-    public synchronized void removeReservation(String bookingID) {
-        Reservation toBeRemoved = null;
-        for (Reservation r : reservations) {
-            if (r.getBookingID().equals(bookingID)) {
-                toBeRemoved = r;
-                break;
+    public void removeReservation(String bookingID) {
+        loadDeferredReservations();
+        ReentrantLock stripe = reservationLock(bookingID);
+        stripe.lock();
+        try {
+            unlink(bookingID);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Removes a reservation from both maps and journals it; the caller holds its stripe.
+     *
+     * @return the removed reservation, or null if there was none with that ID
+     */
+    private Reservation unlink(String bookingID) {
+        Reservation removed = reservations.remove(bookingID);
+        if (removed != null) {
+            reservationOrder.remove(new ReservationKey(removed));
+            if (journal != null) {
+                journal.logReservationCancelled(removed);
             }
         }
-        if (toBeRemoved != null) {
-            reservations.remove(toBeRemoved);
+        return removed;
+    }
+
+    /**
+     * Cancels a booking: removes it, frees its seats and takes it off its user's list. When two
+     * clients cancel the same booking at once, only one of them gets it back, so seats are never
+     * freed twice.
+     *
+     * @return the cancelled reservation, or null if there was none with that ID
+     */
+    public Reservation cancelReservation(String bookingID) {
+        loadDeferredReservations();
+        ReentrantLock stripe = reservationLock(bookingID);
+        stripe.lock();
+        try {
+            Reservation removed = unlink(bookingID);
+            if (removed != null) {
+                removed.cancelAllSeats();
+                removed.getUser().removeReservation(bookingID);
+            }
+            return removed;
+        } finally {
+            stripe.unlock();
         }
     }
 
-    @Override
-    public synchronized Reservation findReservation(String bookingID) {
-        for (Reservation r : reservations) {
-            if (r.getBookingID().equals(bookingID)) {
-                return r;
+    /**
+     * Cancels and removes all of a user's reservations in one pass over the user's own bookings,
+     * as removeUser() does before the account goes. The seats are freed and each cancellation is
+     * journaled; a booking cancelled concurrently elsewhere is skipped.
+     *
+     * @return the number of reservations removed
+     */
+    public int removeReservationsOf(User u) {
+        loadDeferredReservations();
+        int count = 0;
+        for (Reservation r : u.removeAllReservations()) {
+            ReentrantLock stripe = reservationLock(r.getBookingID());
+            stripe.lock();
+            try {
+                if (unlink(r.getBookingID()) != null) {
+                    r.cancelAllSeats();
+                    count++;
+                }
+            } finally {
+                stripe.unlock();
             }
         }
-        return null;
+        return count;
     }
 
+    /**
+     * Looks the reservation up without taking a lock.
+     */
     @Override
-    public synchronized List<Reservation> getReservations() {
-        return new ArrayList<>(reservations);
+    public Reservation findReservation(String bookingID) {
+        loadDeferredReservations();
+        return reservations.get(bookingID);
     }
 
+    /**
+     * Returns all reservations in booking order, copied without taking a lock.
+     */
+    @Override
+    public List<Reservation> getReservations() {
+        loadDeferredReservations();
+        return new ArrayList<>(reservationOrder.values());
+    }
 
+
+    /**
+     * Returns up to limit reservations that match the filter, in booking order, starting after
+     * the cursor of the previous page. The page is read from the concurrent booking-order index
+     * without a lock, so paging through a large history never blocks bookings; reservations added
+     * or cancelled between (or during) pages show up or drop out like in any keyset pagination,
+     * but none is returned twice.
+     *
+     * A filtered page looks at no more than PAGE_SCAN_FACTOR * limit reservations and may come
+     * back short (even empty) with a next cursor; keep paging until the cursor is null.
+     *
+     * @param cursor from the previous page's getNextCursor(), or null for the first page
+     * @param filter reservations to include, or null for all; called without any database lock
+     * @throws IllegalArgumentException if the cursor is malformed or limit is not positive
+     */
+    public ReservationPage getReservationPage(String cursor, int limit, Predicate<Reservation> filter) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        ReservationKey after = cursor == null ? null : ReservationKey.parse(cursor);
+        loadDeferredReservations();
+        NavigableMap<ReservationKey, Reservation> rest =
+                after == null ? reservationOrder : reservationOrder.tailMap(after, false);
+        List<Reservation> page = new ArrayList<>(Math.min(limit, 64)); // size() is O(n) on a skip list
+        long budget = (long) limit * PAGE_SCAN_FACTOR;
+        ReservationKey last = null;
+        for (Map.Entry<ReservationKey, Reservation> e : rest.entrySet()) {
+            if (page.size() == limit || budget-- == 0) {
+                return new ReservationPage(page, last.toString());
+            }
+            last = e.getKey();
+            if (filter == null || filter.test(e.getValue())) {
+                page.add(e.getValue());
+            }
+        }
+        return new ReservationPage(page, null);
+    }
+
+
+    /**
+     * Writes a full snapshot and waits until it is on disk. See saveDatabaseAsync().
+     */
     @Override
-    public synchronized void saveDatabase() throws IOException {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            out.writeObject(this);
+    public void saveDatabase() throws IOException {
+        try {
+            saveDatabaseAsync().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing snapshot");
+        }
+    }
+
+    /**
+     * Captures the current state and writes it in the background. The snapshot is written to a
+     * temporary file and renamed over the old one, so a crash mid-write never leaves a
+     * half-written store behind. Afterwards the journal records it contains are dropped.
+     *
+     * @return future completed once the snapshot is on disk
+     */
+    public CompletableFuture<Void> saveDatabaseAsync() {
+        loadDeferredReservations();
+        lockAllForReading();
+        try {
+            Journal j = journal;
+            Journal.Mark mark = j != null ? j.mark() : null;
+            DatabaseSnapshot snapshot = DatabaseSnapshot.capture(mark != null ? mark.seq : journalSeq,
+                    nextShowtimeId, users.values(), movies.values(), showtimes.values(), reservations.values());
+            // Submitted under the locks so the writer sees snapshots in capture order.
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    writeSnapshot(snapshot);
+                    if (j != null) {
+                        j.truncateBefore(mark);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, SNAPSHOT_WRITER);
+        } finally {
+            unlockAllForReading();
+        }
+    }
+
+    private void writeSnapshot(DatabaseSnapshot snapshot) throws IOException {
+        Path target = dataDir.resolve(filePath);
+        Path tmp = dataDir.resolve(filePath + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             BufferedOutputStream out = new BufferedOutputStream(fos)) {
+            SnapshotCodec.write(snapshot, out);
+            out.flush();
+            fos.getFD().sync();
         }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
+    /**
+     * Reads the snapshot file into a new Database. Files from before the binary format (a
+     * Java-serialized Database or DatabaseSnapshot) are imported; the next snapshot rewrites
+     * them in the binary format.
+     */
     @Override
-    public synchronized IDatabase loadDatabase() throws IOException, ClassNotFoundException {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filePath))) {
-            return (IDatabase) in.readObject();
+    public IDatabase loadDatabase() throws IOException, ClassNotFoundException {
+        DatabaseSnapshot snapshot = SnapshotCodec.read(dataDir.resolve(filePath));
+        if (snapshot != null) {
+            return snapshot.restore();
         }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(dataDir.resolve(filePath).toFile()))) {
+            return importSerialized(in);
+        }
+    }
+
+    private static IDatabase importSerialized(InputStream in) throws IOException, ClassNotFoundException {
+        Object stored = new ObjectInputStream(in).readObject();
+        if (stored instanceof DatabaseSnapshot) {
+            return ((DatabaseSnapshot) stored).restore();
+        }
+        return (IDatabase) stored;
+    }
+
+
+    /**
+     * Leaves the stored reservations on disk until they are first needed. Every reservation
+     * accessor here, and every user's reservation list, pages them in before use.
+     *
+     * @param seatsBooked whether the showtimes already have the reservations' seats booked
+     */
+    void deferReservations(DatabaseSnapshot.ReservationSource source, boolean seatsBooked) {
+        stateLock.lock();
+        usersLock.readLock().lock();
+        try {
+            deferredReservations = source;
+            deferredSeatsBooked = seatsBooked;
+            replayedReservations = new LinkedHashMap<>();
+            replayedCancellations = new HashSet<>();
+            reservationsReady = false;
+            for (User u : users.values()) {
+                u.deferReservations(this::loadDeferredReservations);
+            }
+        } finally {
+            usersLock.readLock().unlock();
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true once no stored reservations are waiting to be paged in.
+     */
+    public boolean reservationsLoaded() {
+        return reservationsReady;
+    }
+
+    /**
+     * Pages in deferred reservations. Other threads block until they are all in place; the
+     * loading thread itself re-enters here (through addReservation) and returns immediately.
+     * Callers must not hold any other database lock, since the loader takes them.
+     */
+    private void loadDeferredReservations() {
+        if (reservationsReady) {
+            return;
+        }
+        stateLock.lock();
+        try {
+            DatabaseSnapshot.ReservationSource source = deferredReservations;
+            if (source == null) {
+                return;
+            }
+            List<DatabaseSnapshot.ReservationRecord> records;
+            try {
+                records = source.load();
+            } catch (IOException e) {
+                // Stay deferred: a snapshot written now would silently drop the stored reservations.
+                throw new UncheckedIOException("Could not load stored reservations", e);
+            }
+            deferredReservations = null;
+            try {
+                if (!replayedCancellations.isEmpty()) {
+                    records = new ArrayList<>(records);
+                    records.removeIf(r -> replayedCancellations.contains(r.bookingID));
+                }
+                DatabaseSnapshot.restoreReservations(this, records, deferredSeatsBooked);
+                for (Reservation r : replayedReservations.values()) {
+                    restoreReservation(r);
+                }
+            } finally {
+                replayedReservations = null;
+                replayedCancellations = null;
+                reservationsReady = true;
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Adds a stored or replayed reservation and links it to its user, without journaling it
+     * again.
+     */
+    void restoreReservation(Reservation r) {
+        ReentrantLock stripe = reservationLock(r.getBookingID());
+        stripe.lock();
+        try {
+            Reservation replaced = reservations.put(r.getBookingID(), r);
+            if (replaced != null) {
+                reservationOrder.remove(new ReservationKey(replaced));
+            }
+            reservationOrder.put(new ReservationKey(r), r);
+        } finally {
+            stripe.unlock();
+        }
+        r.getUser().addReservation(r);
+    }
+
+    /**
+     * True while journal replay can leave the snapshot's reservations on disk: they are deferred
+     * and their seats are already booked from the snapshot's seat maps.
+     */
+    private boolean replayKeepsDeferred() {
+        return deferredReservations != null && deferredSeatsBooked;
     }
 
+    /**
+     * Replays a journaled booking; its seats are booked already. While the stored reservations are
+     * deferred it is parked and joins them when they are paged in.
+     */
+    void replayReservation(Reservation r) {
+        stateLock.lock();
+        try {
+            if (replayKeepsDeferred()) {
+                replayedReservations.put(r.getBookingID(), r);
+                return;
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        loadDeferredReservations();
+        restoreReservation(r);
+    }
+
+    /**
+     * Replays a journaled cancellation and frees the booking's seats. A deferred booking is only
+     * noted, and skipped when they are paged in, if the record names its showtime and seats.
+     *
+     * @param rows seat rows from the record, or null for records written without them
+     */
+    void replayCancellation(String bookingID, int showtimeId, int[] rows, int[] cols) {
+        stateLock.lock();
+        try {
+            if (replayKeepsDeferred()) {
+                Reservation parked = replayedReservations.remove(bookingID);
+                if (parked != null) {
+                    parked.cancelAllSeats();
+                    return;
+                }
+                if (rows != null) {
+                    replayedCancellations.add(bookingID);
+                    Showtime showtime = findShowtimeById(showtimeId);
+                    for (int i = 0; showtime != null && i < rows.length; i++) {
+                        showtime.cancelSeat(rows[i], cols[i]);
+                    }
+                    return;
+                }
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        Reservation r = findReservation(bookingID);
+        if (r != null) {
+            r.cancelAllSeats();
+            removeReservation(bookingID);
+            r.getUser().removeReservation(bookingID);
+        }
+    }
+
+    /**
+     * Moves the seat state of every showtime, and of showtimes added later, into the
+     * memory-mapped seat store. Call after openJournal() so replayed bookings are included;
+     * regions left by a clean close at the same journal sequence are reused without a copy.
+     */
+    public void openSeatStore() throws IOException {
+        showtimesLock.writeLock().lock();
+        try {
+            if (seatStore != null) {
+                return;
+            }
+            seatStore = MappedSeatStore.open(dataDir.resolve(SEAT_STORE_PATH).toString(), journalSeq);
+            for (Showtime s : showtimes.values()) {
+                attachSeats(s);
+            }
+        } finally {
+            showtimesLock.writeLock().unlock();
+        }
+    }
+
+    private void attachSeats(Showtime s) {
+        if (seatStore == null) {
+            return;
+        }
+        try {
+            seatStore.attach(s);
+        } catch (IOException e) {
+            System.out.println("Keeping seats of showtime " + s.getId() + " on the heap: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves every showtime that ended before now (start plus the movie's runtime), and its
+     * reservations, to the archive file. A screening still running keeps its bookings live.
+     * The records are copied under the showtimes read lock, appended and fsynced without any lock,
+     * and only then removed from memory; a showtime whose reservations changed in between stays
+     * for the next run.
+     *
+     * @return number of showtimes archived
+     */
+    public int archiveEndedShowtimes(LocalDateTime now) throws IOException {
+        Map<Integer, DatabaseSnapshot.ShowtimeRecord> started = new LinkedHashMap<>();
+        Map<Integer, List<DatabaseSnapshot.ReservationRecord>> booked = new HashMap<>();
+        Archive target;
+        if (!hasEndedShowtimes(now)) {
+            return 0; // the usual case; keeps deferred reservations on disk
+        }
+        loadDeferredReservations();
+        showtimesLock.readLock().lock();
+        try {
+            for (Showtime s : showtimes.values()) {
+                if (hasEnded(s, now)) {
+                    started.put(s.getId(), DatabaseSnapshot.record(s));
+                    booked.put(s.getId(), new ArrayList<>());
+                }
+            }
+            if (started.isEmpty()) {
+                return 0;
+            }
+            for (Reservation r : reservations.values()) {
+                List<DatabaseSnapshot.ReservationRecord> list = booked.get(r.getShowtime().getId());
+                if (list != null) {
+                    list.add(DatabaseSnapshot.record(r));
+                }
+            }
+            target = openArchive();
+        } finally {
+            showtimesLock.readLock().unlock();
+        }
+
+        for (DatabaseSnapshot.ShowtimeRecord s : started.values()) {
+            target.append(s, booked.get(s.id));
+        }
+
+        int archived = 0;
+        lockShowtimesAndReservations();
+        try {
+            Map<Integer, Set<String>> current = new HashMap<>();
+            for (Reservation r : reservations.values()) {
+                if (started.containsKey(r.getShowtime().getId())) {
+                    current.computeIfAbsent(r.getShowtime().getId(), id -> new HashSet<>()).add(r.getBookingID());
+                }
+            }
+            for (Map.Entry<Integer, List<DatabaseSnapshot.ReservationRecord>> e : booked.entrySet()) {
+                Set<String> written = new HashSet<>();
+                for (DatabaseSnapshot.ReservationRecord r : e.getValue()) {
+                    written.add(r.bookingID);
+                }
+                if (written.equals(current.getOrDefault(e.getKey(), Collections.emptySet()))
+                        && dropArchivedShowtime(e.getKey())) {
+                    archived++;
+                }
+            }
+        } finally {
+            unlockShowtimesAndReservations();
+        }
+        if (archived > 0) {
+            commit();
+        }
+        return archived;
+    }
+
+    private static boolean hasEnded(Showtime s, LocalDateTime now) {
+        return s.getDateTime().plusMinutes(s.getMovie().getRuntime()).isBefore(now);
+    }
+
+    private boolean hasEndedShowtimes(LocalDateTime now) {
+        showtimesLock.readLock().lock();
+        try {
+            for (Showtime s : showtimes.values()) {
+                if (hasEnded(s, now)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            showtimesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an archived showtime and its reservations from memory. Seats are left as they are,
+     * since the showtime is gone with them. During replay, deferred reservations stay on disk:
+     * those of a showtime that no longer exists are skipped when they are paged in.
+     *
+     * @return false if there was no showtime with that ID
+     */
+    boolean dropArchivedShowtime(int showtimeId) {
+        if (!reservationsReady) { // replay, or a caller that did not page them in first
+            stateLock.lock();
+            try {
+                if (replayKeepsDeferred()) {
+                    replayedReservations.values().removeIf(r -> r.getShowtime().getId() == showtimeId);
+                } else {
+                    loadDeferredReservations();
+                }
+            } finally {
+                stateLock.unlock();
+            }
+        }
+        lockShowtimesAndReservations();
+        try {
+            Showtime s = showtimes.remove(showtimeId);
+            if (s == null) {
+                return false;
+            }
+            showtimeIndex.remove(new ShowtimeKey(s.getMovie(), s.getDateTime()), s);
+            unschedule(s);
+            Iterator<Reservation> it = reservations.values().iterator();
+            while (it.hasNext()) {
+                Reservation r = it.next();
+                if (r.getShowtime() == s) {
+                    it.remove();
+                    reservationOrder.remove(new ReservationKey(r));
+                    r.getUser().removeReservation(r.getBookingID());
+                }
+            }
+            if (journal != null) {
+                journal.logShowtimeArchived(showtimeId);
+            }
+            return true;
+        } finally {
+            unlockShowtimesAndReservations();
+        }
+    }
+
+    private void lockShowtimesAndReservations() {
+        showtimesLock.writeLock().lock();
+        for (ReentrantLock stripe : reservationLocks) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockShowtimesAndReservations() {
+        for (int i = RESERVATION_STRIPES - 1; i >= 0; i--) {
+            reservationLocks[i].unlock();
+        }
+        showtimesLock.writeLock().unlock();
+    }
+
+    /**
+     * Returns every booking moved to the archive, for admin reports.
+     */
+    public List<Archive.ArchivedBooking> getArchivedBookings() throws IOException {
+        return openArchive().readBookings();
+    }
+
+    /**
+     * Returns the archived bookings of one user, oldest showtime first. Does not create the
+     * archive file if nothing was ever archived.
+     */
+    public List<Archive.ArchivedBooking> getArchivedBookings(String username) throws IOException {
+        archiveLock.lock();
+        try {
+            if (archive == null && !Files.exists(dataDir.resolve(ARCHIVE_PATH))) {
+                return Collections.emptyList();
+            }
+        } finally {
+            archiveLock.unlock();
+        }
+        return openArchive().readBookings(username);
+    }
+
+    private Archive openArchive() throws IOException {
+        archiveLock.lock();
+        try {
+            if (archive == null) {
+                archive = Archive.open(dataDir.resolve(ARCHIVE_PATH).toString());
+            }
+            return archive;
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    /**
+     * Replays the write-ahead log on top of this (snapshot) state and starts logging every
+     * later mutation to it instead of re-serializing the whole database.
+     *
+     * @return number of log records replayed
+     */
+    public int openJournal() throws IOException {
+        stateLock.lock();
+        lockAll();
+        try {
+            if (journal != null) {
+                return 0;
+            }
+            journal = Journal.open(dataDir.resolve(JOURNAL_PATH).toString(), this);
+            return journal.getReplayedCount();
+        } finally {
+            unlockAll();
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Makes all mutations so far durable. With a journal this is a (batched) fsync of the log,
+     * plus a background compacting snapshot every CHECKPOINT_INTERVAL records; without one it falls back to
+     * a full saveDatabase(). Does not take any database lock, so other clients are not blocked on the disk flush.
+     */
+    public void commit() throws IOException {
+        Journal j = journal;
+        if (j == null) {
+            saveDatabase();
+            return;
+        }
+        j.sync();
+        if (j.getRecordsSinceCheckpoint() >= CHECKPOINT_INTERVAL && checkpointRunning.compareAndSet(false, true)) {
+            saveDatabaseAsync().whenComplete((ignored, e) -> {
+                checkpointRunning.set(false);
+                if (e != null) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes a final snapshot and closes the journal, seat store and archive. The seat store is
+     * only marked clean, and so reusable on the next start, when the snapshot was written.
+     */
+    public void close() throws IOException {
+        stateLock.lock();
+        lockAll();
+        long savedSeq = -1;   // state version the final snapshot holds, if one was written
+        try {
+            if (journal != null) {
+                try {
+                    saveDatabase();
+                    savedSeq = journal.getLastSeq();
+                } finally {
+                    journal.close();
+                    journal = null;
+                }
+            }
+        } finally {
+            try {
+                if (seatStore != null) {
+                    try {
+                        if (savedSeq >= 0) {
+                            seatStore.markClean(savedSeq);
+                        }
+                    } finally {
+                        seatStore.close();
+                        seatStore = null;
+                    }
+                }
+                archiveLock.lock();
+                try {
+                    if (archive != null) {
+                        archive.close();
+                        archive = null;
+                    }
+                } finally {
+                    archiveLock.unlock();
+                }
+            } finally {
+                unlockAll();
+                stateLock.unlock();
+            }
+        }
+    }
+
+    long getJournalSeq() {
+        return journalSeq;
+    }
+
+    void setJournalSeq(long seq) {
+        this.journalSeq = seq;
+    }
+
+    void setNextShowtimeId(int id) {
+        showtimesLock.writeLock().lock();
+        try {
+            this.nextShowtimeId = Math.max(nextShowtimeId, id);
+        } finally {
+            showtimesLock.writeLock().unlock();
+        }
+    }
 
     @Override
-    public synchronized void clearAll() {
-        users.clear();
-        movies.clear();
-        showtimes.clear();
-        reservations.clear();
+    public void clearAll() {
+        stateLock.lock();
+        lockAll();
+        try {
+            deferredReservations = null;
+            reservationsReady = true;
+            users.clear();
+            movies.clear();
+            showtimes.clear();
+            showtimeIndex.clear();
+            schedules.clear();
+            catalogVersion++;
+            reservations.clear();
+            reservationOrder.clear();
+        } finally {
+            unlockAll();
+            stateLock.unlock();
+        }
     }
 
     // --- PHASE 2 ADDITIONS ---
 
     @Override
-    public synchronized boolean movieExists(String title) {
-        for (Movie m : movies) {
-            if (m.getTitle().equals(title)) {
-                return true;
-            }
+    public boolean movieExists(String title) {
+        moviesLock.readLock().lock();
+        try {
+            return movies.containsKey(title);
+        } finally {
+            moviesLock.readLock().unlock();
         }
-        return false;
     }
 
     @Override
-    public synchronized boolean usernameExists(String username) {
-        return findUser(username) != null;
+    public boolean usernameExists(String username) {
+        usersLock.readLock().lock();
+        try {
+            return findUser(username) != null;
+        } finally {
+            usersLock.readLock().unlock();
+        }
     }
 
     @Override
-    public synchronized boolean isShowtimeConflict(Movie m, LocalDateTime dt) {
-        return findShowtime(m, dt) != null;
+    public boolean isShowtimeConflict(Movie m, LocalDateTime dt) {
+        showtimesLock.readLock().lock();
+        try {
+            return findShowtime(m, dt) != null;
+        } finally {
+            showtimesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a new password hash for the user and journals it, e.g. when a login upgrades an
+     * outdated hash. Hash it before calling; nothing slow runs under the users lock.
+     */
+    public void updatePasswordHash(String username, String passwordHash) {
+        usersLock.writeLock().lock();
+        try {
+            User user = users.get(username);
+            if (user == null) {
+                return;
+            }
+            user.setPasswordHash(passwordHash);
+            if (journal != null) {
+                journal.logPasswordChanged(username, passwordHash);
+            }
+        } finally {
+            usersLock.writeLock().unlock();
+        }
+        try {
+            commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     @Override
-    public synchronized void promoteUserToAdmin(String username) {
-        User user = findUser(username);
-        if (user != null) {
+    public void promoteUserToAdmin(String username) {
+        usersLock.writeLock().lock();
+        try {
+            User user = findUser(username);
+            if (user == null) {
+                return;
+            }
             user.setAdmin(true);
-            try {
-                saveDatabase();
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (journal != null) {
+                journal.logUserPromoted(username);
             }
+        } finally {
+            usersLock.writeLock().unlock();
+        }
+        try {
+            commit();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 }
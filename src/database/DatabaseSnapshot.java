@@ -0,0 +1,291 @@
+package database;
+
+import movie.Movie;
+import reservation.Reservation;
+import seat.Seat;
+import showtime.Showtime;
+import user.User;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable point-in-time copy of a Database, made of plain value records.
+ *
+ * Notes:
+ * - capture() only copies field values, so it is cheap enough to run while writers are held off;
+ *   the slow part (serializing and writing the file) then runs on a background thread while
+ *   clients keep mutating the live objects.
+ * - Each showtime carries a bitmap of its booked seats, computed from the reservations at
+ *   capture time (not copied from the live bits, which may include seats of a booking still in
+ *   flight), so seats and reservations can never disagree after a restart. Because the bitmaps
+ *   make seat state available without them, reservations can be restored lazily: a snapshot
+ *   read from disk may carry a ReservationSource instead of the list.
+ * - Snapshots without bitmaps (older files) re-book each reservation's seats instead.
+ */
+final class DatabaseSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final long journalSeq;
+    final int nextShowtimeId;
+    final ArrayList<UserRecord> users;
+    final ArrayList<MovieRecord> movies;
+    final ArrayList<ShowtimeRecord> showtimes;
+    final ArrayList<ReservationRecord> reservations;     // null when deferred
+    final transient ReservationSource reservationSource; // non-null when deferred
+
+    /**
+     * Reads the reservation records of a snapshot on demand.
+     */
+    interface ReservationSource {
+        List<ReservationRecord> load() throws IOException;
+    }
+
+    DatabaseSnapshot(long journalSeq, int nextShowtimeId, ArrayList<UserRecord> users,
+                     ArrayList<MovieRecord> movies, ArrayList<ShowtimeRecord> showtimes,
+                     ArrayList<ReservationRecord> reservations) {
+        this(journalSeq, nextShowtimeId, users, movies, showtimes, reservations, null);
+    }
+
+    DatabaseSnapshot(long journalSeq, int nextShowtimeId, ArrayList<UserRecord> users,
+                     ArrayList<MovieRecord> movies, ArrayList<ShowtimeRecord> showtimes,
+                     ReservationSource reservationSource) {
+        this(journalSeq, nextShowtimeId, users, movies, showtimes, null, reservationSource);
+    }
+
+    private DatabaseSnapshot(long journalSeq, int nextShowtimeId, ArrayList<UserRecord> users,
+                             ArrayList<MovieRecord> movies, ArrayList<ShowtimeRecord> showtimes,
+                             ArrayList<ReservationRecord> reservations,
+                             ReservationSource reservationSource) {
+        this.journalSeq = journalSeq;
+        this.nextShowtimeId = nextShowtimeId;
+        this.users = users;
+        this.movies = movies;
+        this.showtimes = showtimes;
+        this.reservations = reservations;
+        this.reservationSource = reservationSource;
+    }
+
+    /**
+     * Copies the given entries. The caller must hold off every writer (see Database).
+     */
+    static DatabaseSnapshot capture(long journalSeq, int nextShowtimeId, Iterable<User> users, Iterable<Movie> movies,
+                                    Iterable<Showtime> showtimes, Iterable<Reservation> reservations) {
+        ArrayList<UserRecord> userRecords = new ArrayList<>();
+        for (User u : users) {
+            userRecords.add(new UserRecord(u.getUsername(), u.getPasswordHash(), u.getEmail(), u.isAdmin()));
+        }
+        ArrayList<MovieRecord> movieRecords = new ArrayList<>();
+        for (Movie m : movies) {
+            movieRecords.add(MovieRecord.of(m));
+        }
+        ArrayList<ShowtimeRecord> showtimeRecords = new ArrayList<>();
+        Map<Integer, ShowtimeRecord> byId = new HashMap<>();
+        for (Showtime s : showtimes) {
+            ShowtimeRecord record = record(s);
+            showtimeRecords.add(record);
+            byId.put(record.id, record);
+        }
+        ArrayList<ReservationRecord> reservationRecords = new ArrayList<>();
+        for (Reservation r : reservations) {
+            ReservationRecord record = record(r);
+            reservationRecords.add(record);
+            ShowtimeRecord showtime = byId.get(record.showtimeId);
+            if (showtime != null) {
+                for (int i = 0; i < record.rows.length; i++) {
+                    int row = record.rows[i];
+                    int col = record.cols[i];
+                    if (row >= 0 && row < showtime.rows && col >= 0 && col < showtime.cols) {
+                        int bit = row * showtime.cols + col;
+                        showtime.booked[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+        }
+        return new DatabaseSnapshot(journalSeq, nextShowtimeId, userRecords, movieRecords,
+                showtimeRecords, reservationRecords);
+    }
+
+    /**
+     * Copies a showtime with an empty seat bitmap.
+     */
+    static ShowtimeRecord record(Showtime s) {
+        int rows = s.getRowCount();
+        int cols = s.getColCount();
+        return new ShowtimeRecord(s.getId(), MovieRecord.of(s.getMovie()), s.getDateTime(),
+                rows, cols, s.getBasePrice(), s.getAuditoriumName(), new long[(rows * cols + 63) >>> 6]);
+    }
+
+    static ReservationRecord record(Reservation r) {
+        List<Seat> seats = r.getBookedSeats();
+        int[] rows = new int[seats.size()];
+        int[] cols = new int[seats.size()];
+        double[] prices = new double[seats.size()];
+        for (int i = 0; i < seats.size(); i++) {
+            rows[i] = seats.get(i).getRow();
+            cols[i] = seats.get(i).getNumber();
+            prices[i] = seats.get(i).getPrice();
+        }
+        return new ReservationRecord(r.getBookingID(), r.getBookingTime(), r.getUser().getUsername(),
+                r.getShowtime().getId(), rows, cols, prices, r.getCardNumber(), r.getExpiry(), r.getCvv());
+    }
+
+    /**
+     * Builds a fresh Database holding this snapshot's state.
+     */
+    Database restore() {
+        Database db = new Database();
+        for (UserRecord u : users) {
+            db.addUser(User.withPasswordHash(u.username, u.passwordHash, u.email, u.admin));
+        }
+        for (MovieRecord m : movies) {
+            db.addMovie(m.toMovie());
+        }
+        for (ShowtimeRecord s : showtimes) {
+            Movie movie = db.findMovie(s.movie.title);
+            if (movie == null) {
+                movie = s.movie.toMovie();
+            }
+            Showtime showtime = new Showtime(movie, s.dateTime, s.rows, s.cols, s.basePrice, s.auditorium);
+            showtime.assignId(s.id);
+            if (s.booked != null) {
+                for (int w = 0; w < s.booked.length; w++) {
+                    for (long bits = s.booked[w]; bits != 0; bits &= bits - 1) {
+                        int bit = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        showtime.bookSeat(bit / s.cols, bit % s.cols);
+                    }
+                }
+            }
+            db.addShowtime(showtime);
+        }
+        boolean haveBitmaps = showtimes.isEmpty() || showtimes.get(0).booked != null;
+        if (reservationSource != null) {
+            db.deferReservations(reservationSource, haveBitmaps);
+        } else {
+            restoreReservations(db, reservations, haveBitmaps);
+        }
+        db.setNextShowtimeId(nextShowtimeId);
+        db.setJournalSeq(journalSeq);
+        return db;
+    }
+
+    /**
+     * Adds the reservations to db and to their users. If the showtimes already carry the seats
+     * from bitmaps the seats are not booked again.
+     */
+    static void restoreReservations(Database db, List<ReservationRecord> records, boolean seatsAlreadyBooked) {
+        for (ReservationRecord r : records) {
+            User user = db.findUser(r.username);
+            Showtime showtime = db.findShowtimeById(r.showtimeId);
+            if (user == null || showtime == null) {
+                continue;
+            }
+            ArrayList<Seat> seats = new ArrayList<>();
+            for (int i = 0; i < r.rows.length; i++) {
+                seats.add(new Seat(r.rows[i], r.cols[i], r.prices[i]));
+            }
+            Reservation reservation = seatsAlreadyBooked
+                    ? Reservation.restoreHeld(r.bookingID, r.bookingTime, user, showtime, seats, r.cardNumber, r.expiry, r.cvv)
+                    : new Reservation(r.bookingID, r.bookingTime, user, showtime, seats, r.cardNumber, r.expiry, r.cvv);
+            db.restoreReservation(reservation);
+        }
+    }
+
+    static final class UserRecord implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String username;
+        final String passwordHash;
+        final String email;
+        final boolean admin;
+
+        UserRecord(String username, String passwordHash, String email, boolean admin) {
+            this.username = username;
+            this.passwordHash = passwordHash;
+            this.email = email;
+            this.admin = admin;
+        }
+    }
+
+    static final class MovieRecord implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String title;
+        final String genre;
+        final String rating;
+        final int runtime;
+        final String posterPath;
+
+        MovieRecord(String title, String genre, String rating, int runtime, String posterPath) {
+            this.title = title;
+            this.genre = genre;
+            this.rating = rating;
+            this.runtime = runtime;
+            this.posterPath = posterPath;
+        }
+
+        static MovieRecord of(Movie m) {
+            return new MovieRecord(m.getTitle(), m.getGenre(), m.getRating(), m.getRuntime(), m.getPosterPath());
+        }
+
+        Movie toMovie() {
+            return new Movie(title, genre, rating, runtime, posterPath);
+        }
+    }
+
+    static final class ShowtimeRecord implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int id;
+        final MovieRecord movie;
+        final LocalDateTime dateTime;
+        final int rows;
+        final int cols;
+        final double basePrice;
+        final String auditorium;
+        final long[] booked;  // seat bitmap, bit row * cols + col; null in snapshots written without one
+
+        ShowtimeRecord(int id, MovieRecord movie, LocalDateTime dateTime, int rows, int cols,
+                       double basePrice, String auditorium, long[] booked) {
+            this.id = id;
+            this.movie = movie;
+            this.dateTime = dateTime;
+            this.rows = rows;
+            this.cols = cols;
+            this.basePrice = basePrice;
+            this.auditorium = auditorium;
+            this.booked = booked;
+        }
+    }
+
+    static final class ReservationRecord implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String bookingID;
+        final LocalDateTime bookingTime;
+        final String username;
+        final int showtimeId;
+        final int[] rows;
+        final int[] cols;
+        final double[] prices;
+        final String cardNumber;
+        final String expiry;
+        final String cvv;
+
+        ReservationRecord(String bookingID, LocalDateTime bookingTime, String username, int showtimeId,
+                          int[] rows, int[] cols, double[] prices, String cardNumber, String expiry, String cvv) {
+            this.bookingID = bookingID;
+            this.bookingTime = bookingTime;
+            this.username = username;
+            this.showtimeId = showtimeId;
+            this.rows = rows;
+            this.cols = cols;
+            this.prices = prices;
+            this.cardNumber = cardNumber;
+            this.expiry = expiry;
+            this.cvv = cvv;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package database;
+
+import movie.Movie;
+import reservation.Reservation;
+import seat.Seat;
+import showtime.Showtime;
+import user.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of Database mutations.
+ *
+ * Notes:
+ * - Every record is framed as [length][crc32][payload]. A torn record at the tail of the file
+ *   (crash in the middle of a write) fails the length/CRC check and is cut off on the next open.
+ * - Appends only go to an in-memory buffer. sync() queues a commit request for the writer
+ *   thread, which drains every queued request, writes the whole buffer and fsyncs once before
+ *   completing them all, so threads committing at the same time share a single disk flush.
+ * - Each record carries a sequence number. The snapshot remembers the last sequence it contains,
+ *   so records already folded into a snapshot are skipped on replay.
+ * - Snapshots are written in the background, so records keep arriving while one is written.
+ *   mark() notes where the snapshot's records end; truncateBefore() later drops only those.
+ * - Replayed bookings and cancellations go through Database.replayReservation() and
+ *   replayCancellation(), which leave a snapshot's deferred reservations on disk. A cancellation
+ *   carries its showtime and seats for that, so its seats can be freed without the booking.
+ */
+public class Journal implements Closeable {
+
+    static final byte USER_ADDED = 1;
+    static final byte USER_REMOVED = 2;
+    static final byte USER_PROMOTED = 3;
+    static final byte MOVIE_ADDED = 4;
+    static final byte MOVIE_REMOVED = 5;
+    static final byte SHOWTIME_ADDED = 6;
+    static final byte RESERVATION_CREATED = 7;
+    static final byte RESERVATION_CANCELLED = 8;
+    static final byte SHOWTIME_ARCHIVED = 9;
+    static final byte USER_PASSWORD_CHANGED = 10;
+
+    private static final int MAGIC = 0x434A4E4C; // "CJNL"
+    private static final int HEADER_SIZE = 4;
+    private static final int FRAME_OVERHEAD = 8; // length + crc
+
+    private final Path path;
+    private FileChannel channel;    // replaced when the log is compacted; guarded by syncLock
+    private final ReentrantLock syncLock = new ReentrantLock(); // held across fsync; not a monitor so virtual threads don't pin
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long lastSeq;                 // sequence of the last appended record
+    private long appendedBytes;           // logical offset of the end of the last appended record
+    private long fileBase;                // logical offset of the first record in the file; guarded by syncLock
+    private volatile long durableSeq;     // sequence of the last record known to be on disk
+    private int recordsSinceCheckpoint;
+    private int replayedCount;
+
+    private static final CompletableFuture<Void> SHUTDOWN = new CompletableFuture<>();
+    private final LinkedBlockingQueue<CompletableFuture<Void>> commitQueue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Position in the log: the last record a snapshot contains and where that record ends.
+     */
+    static final class Mark {
+        final long seq;
+        final long offset;
+
+        private Mark(long seq, long offset) {
+            this.seq = seq;
+            this.offset = offset;
+        }
+    }
+
+    private Journal(Path path, FileChannel channel, long lastSeq, long appendedBytes) {
+        this.path = path;
+        this.channel = channel;
+        this.lastSeq = lastSeq;
+        this.appendedBytes = appendedBytes;
+        this.durableSeq = lastSeq;
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the log at the given path, replays every record newer than the database's snapshot
+     * into it, and positions the log for further appends.
+     *
+     * @param path journal file path (created if missing)
+     * @param db   database restored from the latest snapshot
+     * @return journal ready for appends
+     */
+    static Journal open(String path, Database db) throws IOException {
+        Path p = Paths.get(path);
+        long validLength = HEADER_SIZE;
+        long lastSeq = db.getJournalSeq();
+        int replayed = 0;
+
+        if (Files.exists(p) && Files.size(p) >= HEADER_SIZE) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a journal file: " + path);
+                }
+                CRC32 crc = new CRC32();
+                while (true) {
+                    byte[] payload;
+                    try {
+                        int length = in.readInt();
+                        int checksum = in.readInt();
+                        if (length <= 0) {
+                            break;
+                        }
+                        payload = new byte[length];
+                        in.readFully(payload);
+                        crc.reset();
+                        crc.update(payload);
+                        if ((int) crc.getValue() != checksum) {
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    long seq = record.readLong();
+                    if (seq > db.getJournalSeq()) {
+                        apply(db, record.readByte(), record);
+                        db.setJournalSeq(seq);
+                        replayed++;
+                    }
+                    lastSeq = Math.max(lastSeq, seq);
+                    validLength += FRAME_OVERHEAD + payload.length;
+                }
+            }
+        }
+
+        FileChannel channel = FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+            header.flip();
+            channel.write(header, 0);
+            validLength = HEADER_SIZE;
+        } else if (channel.size() > validLength) {
+            channel.truncate(validLength); // drop a torn tail
+        }
+        channel.force(true);
+        channel.position(validLength);
+
+        Journal journal = new Journal(p, channel, lastSeq, validLength - HEADER_SIZE);
+        journal.replayedCount = replayed;
+        journal.recordsSinceCheckpoint = replayed;
+        journal.writer.start();
+        return journal;
+    }
+
+    private static void apply(Database db, byte type, DataInputStream in) throws IOException {
+        switch (type) {
+            case USER_ADDED: {
+                String username = in.readUTF();
+                String hash = in.readUTF();
+                String email = readNullable(in);
+                boolean admin = in.readBoolean();
+                db.addUser(User.withPasswordHash(username, hash, email, admin));
+                break;
+            }
+            case USER_REMOVED:
+                db.replayUserRemoved(in.readUTF());
+                break;
+            case USER_PROMOTED: {
+                User user = db.findUser(in.readUTF());
+                if (user != null) {
+                    user.setAdmin(true);
+                }
+                break;
+            }
+            case USER_PASSWORD_CHANGED: {
+                User user = db.findUser(in.readUTF());
+                String hash = in.readUTF();
+                if (user != null) {
+                    user.setPasswordHash(hash);
+                }
+                break;
+            }
+            case MOVIE_ADDED: {
+                String title = in.readUTF();
+                String genre = readNullable(in);
+                String rating = readNullable(in);
+                int runtime = in.readInt();
+                String poster = readNullable(in);
+                db.addMovie(new Movie(title, genre, rating, runtime, poster));
+                break;
+            }
+            case MOVIE_REMOVED:
+                db.removeMovie(in.readUTF());
+                break;
+            case SHOWTIME_ADDED: {
+                int id = in.readInt();
+                Movie movie = db.findMovie(in.readUTF());
+                LocalDateTime dateTime = LocalDateTime.parse(in.readUTF());
+                int rows = in.readInt();
+                int cols = in.readInt();
+                double basePrice = in.readDouble();
+                String auditorium = readNullable(in);
+                if (movie != null) {
+                    Showtime showtime = new Showtime(movie, dateTime, rows, cols, basePrice, auditorium);
+                    showtime.assignId(id);
+                    db.addShowtime(showtime);
+                }
+                break;
+            }
+            case RESERVATION_CREATED: {
+                String bookingID = in.readUTF();
+                LocalDateTime bookingTime = LocalDateTime.parse(in.readUTF());
+                User user = db.findUser(in.readUTF());
+                Showtime showtime = db.findShowtimeById(in.readInt());
+                int seatCount = in.readInt();
+                ArrayList<Seat> seats = new ArrayList<>();
+                for (int i = 0; i < seatCount; i++) {
+                    seats.add(new Seat(in.readInt(), in.readInt(), in.readDouble()));
+                }
+                String cardNumber = readNullable(in);
+                String expiry = readNullable(in);
+                String cvv = readNullable(in);
+
+                if (user != null && showtime != null) {
+                    db.replayReservation(new Reservation(bookingID, bookingTime, user, showtime, seats,
+                            cardNumber, expiry, cvv));
+                } else if (user == null) {
+                    // Logs written before removeUser() and addReservation() shared the users lock
+                    // can have a booking after its user's removal.
+                    System.out.println("Skipping journaled booking " + bookingID + " of a removed user.");
+                }
+                break;
+            }
+            case RESERVATION_CANCELLED: {
+                String bookingID = in.readUTF();
+                int showtimeId = -1;
+                int[] rows = null;
+                int[] cols = null;
+                if (in.available() > 0) { // older records end after the booking ID
+                    showtimeId = in.readInt();
+                    rows = new int[in.readInt()];
+                    cols = new int[rows.length];
+                    for (int i = 0; i < rows.length; i++) {
+                        rows[i] = in.readInt();
+                        cols[i] = in.readInt();
+                    }
+                }
+                db.replayCancellation(bookingID, showtimeId, rows, cols);
+                break;
+            }
+            case SHOWTIME_ARCHIVED:
+                db.dropArchivedShowtime(in.readInt());
+                break;
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    // --- Appends (callers hold the Database lock of what they change, so records for one entity are in apply order) ---
+
+    void logUserAdded(User u) {
+        append(USER_ADDED, out -> {
+            out.writeUTF(u.getUsername());
+            out.writeUTF(u.getPasswordHash());
+            writeNullable(out, u.getEmail());
+            out.writeBoolean(u.isAdmin());
+        });
+    }
+
+    void logUserRemoved(String username) {
+        append(USER_REMOVED, out -> out.writeUTF(username));
+    }
+
+    void logUserPromoted(String username) {
+        append(USER_PROMOTED, out -> out.writeUTF(username));
+    }
+
+    void logPasswordChanged(String username, String passwordHash) {
+        append(USER_PASSWORD_CHANGED, out -> {
+            out.writeUTF(username);
+            out.writeUTF(passwordHash);
+        });
+    }
+
+    void logMovieAdded(Movie m) {
+        append(MOVIE_ADDED, out -> {
+            out.writeUTF(m.getTitle());
+            writeNullable(out, m.getGenre());
+            writeNullable(out, m.getRating());
+            out.writeInt(m.getRuntime());
+            writeNullable(out, m.getPosterPath());
+        });
+    }
+
+    void logMovieRemoved(String title) {
+        append(MOVIE_REMOVED, out -> out.writeUTF(title));
+    }
+
+    /**
+     * Only the seat dimensions are logged; Seat objects supplied through the Seat[][]
+     * constructor are not part of the record.
+     */
+    void logShowtimeAdded(Showtime s) {
+        append(SHOWTIME_ADDED, out -> {
+            out.writeInt(s.getId());
+            out.writeUTF(s.getMovie().getTitle());
+            out.writeUTF(s.getDateTime().toString());
+            out.writeInt(s.getRowCount());
+            out.writeInt(s.getColCount());
+            out.writeDouble(s.getBasePrice());
+            writeNullable(out, s.getAuditoriumName());
+        });
+    }
+
+    void logReservationCreated(Reservation r) {
+        append(RESERVATION_CREATED, out -> {
+            out.writeUTF(r.getBookingID());
+            out.writeUTF(r.getBookingTime().toString());
+            out.writeUTF(r.getUser().getUsername());
+            out.writeInt(r.getShowtime().getId());
+            ArrayList<Seat> seats = r.getBookedSeats();
+            out.writeInt(seats.size());
+            for (Seat seat : seats) {
+                out.writeInt(seat.getRow());
+                out.writeInt(seat.getNumber());
+                out.writeDouble(seat.getPrice());
+            }
+            writeNullable(out, r.getCardNumber());
+            writeNullable(out, r.getExpiry());
+            writeNullable(out, r.getCvv());
+        });
+    }
+
+    /**
+     * Replaying this record also frees the reservation's seats, matching what every
+     * cancel path does before removing the reservation.
+     */
+    void logReservationCancelled(Reservation r) {
+        append(RESERVATION_CANCELLED, out -> {
+            out.writeUTF(r.getBookingID());
+            out.writeInt(r.getShowtime().getId());
+            ArrayList<Seat> seats = r.getBookedSeats();
+            out.writeInt(seats.size());
+            for (Seat seat : seats) {
+                out.writeInt(seat.getRow());
+                out.writeInt(seat.getNumber());
+            }
+        });
+    }
+
+    void logShowtimeArchived(int showtimeId) {
+        append(SHOWTIME_ARCHIVED, out -> out.writeInt(showtimeId));
+    }
+
+    private interface RecordBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private synchronized void append(byte type, RecordBody body) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeLong(lastSeq + 1);
+            out.writeByte(type);
+            body.write(out);
+            out.flush();
+
+            byte[] payload = buffer.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            DataOutputStream frame = new DataOutputStream(pending);
+            frame.writeInt(payload.length);
+            frame.writeInt((int) crc.getValue());
+            frame.write(payload);
+            frame.flush();
+
+            appendedBytes += FRAME_OVERHEAD + payload.length;
+            lastSeq++;
+            recordsSinceCheckpoint++;
+        } catch (IOException e) {
+            // Only reachable for strings longer than writeUTF allows; nothing has been appended.
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes every record appended so far durable, waiting for the writer thread's next batch.
+     */
+    public void sync() throws IOException {
+        try {
+            syncAsync().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for journal flush");
+        }
+    }
+
+    /**
+     * Requests that every record appended so far be made durable.
+     *
+     * @return future completed once those records are on disk
+     */
+    public CompletableFuture<Void> syncAsync() {
+        long target;
+        synchronized (this) {
+            target = lastSeq;
+        }
+        if (durableSeq >= target) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> request = new CompletableFuture<>();
+        commitQueue.add(request);
+        // Queued ahead of SHUTDOWN unless close() already ran, in which case take it back.
+        if (closed && commitQueue.remove(request)) {
+            request.completeExceptionally(new IOException("Journal is closed"));
+        }
+        return request;
+    }
+
+    /**
+     * Writer thread: takes every commit request queued so far, flushes once, completes them all.
+     */
+    private void writeLoop() {
+        ArrayList<CompletableFuture<Void>> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(commitQueue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            commitQueue.drainTo(batch);
+            stop = batch.remove(SHUTDOWN);
+
+            IOException failure = null;
+            try {
+                flush();
+            } catch (IOException e) {
+                failure = e;
+            }
+            for (CompletableFuture<Void> request : batch) {
+                if (failure == null) {
+                    request.complete(null);
+                } else {
+                    request.completeExceptionally(failure);
+                }
+            }
+            batch.clear();
+        }
+        commitQueue.drainTo(batch);
+        for (CompletableFuture<Void> request : batch) {
+            request.completeExceptionally(new IOException("Journal is closed"));
+        }
+    }
+
+    /**
+     * Writes everything buffered so far and fsyncs it. The records leave pending only once
+     * they are on disk; a failed write is truncated away and retried by the next flush.
+     */
+    private void flush() throws IOException {
+        long target;
+        synchronized (this) {
+            target = lastSeq;
+        }
+        syncLock.lock();
+        try {
+            if (durableSeq >= target) {
+                return;
+            }
+            byte[] batch;
+            long upTo;
+            synchronized (this) {
+                batch = pending.toByteArray();
+                upTo = lastSeq;
+            }
+            long start = channel.position();
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(batch);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Cut off whatever part of the batch got written, so the records stay in pending
+                // and the next flush writes them again after the last good frame.
+                try {
+                    channel.truncate(start);
+                    channel.position(start);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // Records appended during the write stay buffered for the next flush.
+                byte[] rest = pending.toByteArray();
+                pending.reset();
+                pending.write(rest, batch.length, rest.length - batch.length);
+            }
+            durableSeq = upTo;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Marks the current end of the log for a snapshot being captured, and restarts the
+     * checkpoint count. Called while Database holds off every writer, so no mutation is half-logged.
+     */
+    synchronized Mark mark() {
+        recordsSinceCheckpoint = 0;
+        return new Mark(lastSeq, appendedBytes);
+    }
+
+    /**
+     * Drops the records up to the mark once a snapshot containing them is safely on disk.
+     * Later records are copied into a fresh log that replaces the old one atomically.
+     */
+    void truncateBefore(Mark mark) throws IOException {
+        syncLock.lock();
+        try {
+            if (mark.offset <= fileBase) {
+                return;  // a later snapshot already compacted past this one
+            }
+            flush();
+            long start = HEADER_SIZE + (mark.offset - fileBase);
+            long end = channel.size();
+            if (start >= end) {
+                channel.truncate(HEADER_SIZE);
+                channel.position(HEADER_SIZE);
+                channel.force(true);
+            } else {
+                Path tmp = Paths.get(path + ".tmp");
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+                    header.flip();
+                    out.write(header);
+                    long copied = 0;
+                    while (copied < end - start) {
+                        copied += channel.transferTo(start + copied, end - start - copied, out);
+                    }
+                    out.force(true);
+                }
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+            fileBase = mark.offset;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    synchronized int getRecordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+
+    int getReplayedCount() {
+        return replayedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            closed = true;
+            commitQueue.add(SHUTDOWN);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            syncLock.lock();
+            try {
+                channel.close();
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
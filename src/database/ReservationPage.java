@@ -0,0 +1,30 @@
+package database;
+
+import reservation.Reservation;
+
+import java.util.List;
+
+/**
+ * One page of reservations from Database.getReservationPage(), and the cursor to pass for the next one.
+ */
+public class ReservationPage {
+
+    private final List<Reservation> reservations;
+    private final String nextCursor;
+
+    ReservationPage(List<Reservation> reservations, String nextCursor) {
+        this.reservations = reservations;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Reservation> getReservations() {
+        return reservations;
+    }
+
+    /**
+     * @return the cursor for the following page, or null if this was the last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
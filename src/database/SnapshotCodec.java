@@ -0,0 +1,453 @@
+package database;
+
+import database.DatabaseSnapshot.MovieRecord;
+import database.DatabaseSnapshot.ReservationRecord;
+import database.DatabaseSnapshot.ShowtimeRecord;
+import database.DatabaseSnapshot.UserRecord;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary encoding of a DatabaseSnapshot.
+ *
+ * Layout (version 2):
+ *   magic "CSNP" | version | journalSeq | nextShowtimeId
+ *   catalog: string table | users | movies | showtimes (with seat bitmaps) | crc32 of all of the above
+ *   reservations: string table | reservations | crc32 of this section
+ *
+ * Version 1 files (one string table, no seat bitmaps, a single trailing crc32) are still read.
+ *
+ * Notes:
+ * - Integers are unsigned LEB128 varints (zig-zag for values that may be negative), doubles are
+ *   8 raw bytes and every string is an index into its section's string table (0 = null), so
+ *   repeated values such as usernames, genres and auditorium names are stored once.
+ * - Records refer to each other by key instead of nesting: a showtime names its movie by
+ *   title, a reservation names its user and showtime by username and showtime ID.
+ * - Booking IDs that are canonical UUIDs are stored as 16 bytes.
+ * - The reservation section comes last and has its own strings and checksum, so read() can
+ *   stop after the catalog and hand back a source that reads the reservations on demand.
+ * - The reader rejects files with an unknown version, a bad checksum or implausible lengths.
+ */
+final class SnapshotCodec {
+
+    static final int MAGIC = 0x43534E50; // "CSNP"
+    static final int VERSION = 2;
+    private static final int MAX_LENGTH = 1 << 24; // sanity bound so a corrupt length fails cleanly
+
+    private SnapshotCodec() {
+    }
+
+    static void write(DatabaseSnapshot snapshot, OutputStream os) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(os, new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        out.writeInt(MAGIC);
+        writeVarInt(out, VERSION);
+        writeVarLong(out, snapshot.journalSeq);
+        writeVarInt(out, snapshot.nextShowtimeId);
+
+        StringTable strings = new StringTable();
+        for (UserRecord u : snapshot.users) {
+            strings.add(u.username, u.passwordHash, u.email);
+        }
+        for (MovieRecord m : snapshot.movies) {
+            strings.add(m.title, m.genre, m.rating, m.posterPath);
+        }
+        for (ShowtimeRecord s : snapshot.showtimes) {
+            strings.add(s.movie.title, s.movie.genre, s.movie.rating, s.movie.posterPath, s.auditorium);
+        }
+        strings.write(out);
+
+        writeVarInt(out, snapshot.users.size());
+        for (UserRecord u : snapshot.users) {
+            writeVarInt(out, strings.ref(u.username));
+            writeVarInt(out, strings.ref(u.passwordHash));
+            writeVarInt(out, strings.ref(u.email));
+            out.writeBoolean(u.admin);
+        }
+
+        writeVarInt(out, snapshot.movies.size());
+        for (MovieRecord m : snapshot.movies) {
+            writeMovie(out, strings, m);
+        }
+
+        writeVarInt(out, snapshot.showtimes.size());
+        for (ShowtimeRecord s : snapshot.showtimes) {
+            writeVarInt(out, s.id);
+            writeMovie(out, strings, s.movie);
+            writeDateTime(out, s.dateTime);
+            writeVarInt(out, s.rows);
+            writeVarInt(out, s.cols);
+            out.writeDouble(s.basePrice);
+            writeVarInt(out, strings.ref(s.auditorium));
+            long[] booked = s.booked != null ? s.booked : new long[0];
+            writeVarInt(out, booked.length);
+            for (long word : booked) {
+                writeVarLong(out, word);
+            }
+        }
+        out.writeInt((int) checked.getChecksum().getValue());
+
+        checked.getChecksum().reset();
+        StringTable reservationStrings = new StringTable();
+        for (ReservationRecord r : snapshot.reservations) {
+            if (asUuid(r.bookingID) == null) {
+                reservationStrings.add(r.bookingID);
+            }
+            reservationStrings.add(r.username, r.cardNumber, r.expiry, r.cvv);
+        }
+        reservationStrings.write(out);
+        writeVarInt(out, snapshot.reservations.size());
+        for (ReservationRecord r : snapshot.reservations) {
+            writeReservation(out, reservationStrings, r);
+        }
+        out.writeInt((int) checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * Reads the snapshot file. For version 2 only the catalog is read; the returned snapshot
+     * carries a source that reads the reservation section when first asked.
+     *
+     * @return the snapshot, or null if the file is not in the binary format
+     */
+    static DatabaseSnapshot read(Path file) throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CheckedInputStream checked = new CheckedInputStream(counting, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            byte[] magic = in.readNBytes(4);
+            if (magic.length < 4 || ((magic[0] & 0xFF) << 24 | (magic[1] & 0xFF) << 16
+                    | (magic[2] & 0xFF) << 8 | (magic[3] & 0xFF)) != MAGIC) {
+                return null;
+            }
+
+            int version = readVarInt(in);
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long journalSeq = readVarLong(in);
+            int nextShowtimeId = readVarInt(in);
+            String[] strings = readStrings(in);
+
+            ArrayList<UserRecord> users = new ArrayList<>();
+            for (int n = readVarInt(in); n > 0; n--) {
+                users.add(new UserRecord(str(strings, in), str(strings, in), str(strings, in), in.readBoolean()));
+            }
+
+            ArrayList<MovieRecord> movies = new ArrayList<>();
+            for (int n = readVarInt(in); n > 0; n--) {
+                movies.add(readMovie(in, strings));
+            }
+
+            ArrayList<ShowtimeRecord> showtimes = new ArrayList<>();
+            for (int n = readVarInt(in); n > 0; n--) {
+                int id = readVarInt(in);
+                MovieRecord movie = readMovie(in, strings);
+                LocalDateTime dateTime = readDateTime(in);
+                int rows = readVarInt(in);
+                int cols = readVarInt(in);
+                double basePrice = in.readDouble();
+                String auditorium = str(strings, in);
+                long[] booked = null;
+                if (version >= 2) {
+                    booked = new long[readLength(in)];
+                    if (booked.length != ((long) rows * cols + 63) >>> 6) {
+                        throw new IOException("Corrupt snapshot: seat bitmap size");
+                    }
+                    for (int w = 0; w < booked.length; w++) {
+                        booked[w] = readVarLong(in);
+                    }
+                }
+                showtimes.add(new ShowtimeRecord(id, movie, dateTime, rows, cols, basePrice, auditorium, booked));
+            }
+
+            if (version == 1) {
+                ArrayList<ReservationRecord> reservations = readReservations(in, strings);
+                verifyChecksum(checked, in);
+                return new DatabaseSnapshot(journalSeq, nextShowtimeId, users, movies, showtimes, reservations);
+            }
+
+            verifyChecksum(checked, in);
+            long reservationOffset = counting.count;
+            return new DatabaseSnapshot(journalSeq, nextShowtimeId, users, movies, showtimes,
+                    () -> readReservationSection(file, reservationOffset, size, modified));
+        }
+    }
+
+    /**
+     * Reads the reservation section of a version 2 file, which must not have changed since its
+     * catalog was read.
+     */
+    private static List<ReservationRecord> readReservationSection(Path file, long offset, long size,
+                                                                   long modified) throws IOException {
+        if (Files.size(file) != size || Files.getLastModifiedTime(file).toMillis() != modified) {
+            throw new IOException("Snapshot file changed before its reservations were loaded");
+        }
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file))) {
+            raw.skipNBytes(offset);
+            CheckedInputStream checked = new CheckedInputStream(raw, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            List<ReservationRecord> reservations = readReservations(in, readStrings(in));
+            verifyChecksum(checked, in);
+            return reservations;
+        }
+    }
+
+    private static ArrayList<ReservationRecord> readReservations(DataInputStream in, String[] strings) throws IOException {
+        ArrayList<ReservationRecord> reservations = new ArrayList<>();
+        for (int n = readVarInt(in); n > 0; n--) {
+            String bookingID = in.readBoolean()
+                    ? new UUID(in.readLong(), in.readLong()).toString()
+                    : str(strings, in);
+            LocalDateTime bookingTime = readDateTime(in);
+            String username = str(strings, in);
+            int showtimeId = readVarInt(in);
+            int seatCount = readLength(in);
+            boolean uniformPrice = in.readBoolean();
+            int[] rows = new int[seatCount];
+            int[] cols = new int[seatCount];
+            double[] prices = new double[seatCount];
+            for (int i = 0; i < seatCount; i++) {
+                rows[i] = readVarInt(in);
+                cols[i] = readVarInt(in);
+                if (!uniformPrice) {
+                    prices[i] = in.readDouble();
+                }
+            }
+            if (uniformPrice && seatCount > 0) {
+                Arrays.fill(prices, in.readDouble());
+            }
+            reservations.add(new ReservationRecord(bookingID, bookingTime, username, showtimeId, rows, cols,
+                    prices, str(strings, in), str(strings, in), str(strings, in)));
+        }
+        return reservations;
+    }
+
+    private static void writeReservation(DataOutputStream out, StringTable strings, ReservationRecord r) throws IOException {
+        UUID uuid = asUuid(r.bookingID);
+        if (uuid != null) {
+            out.writeBoolean(true);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeBoolean(false);
+            writeVarInt(out, strings.ref(r.bookingID));
+        }
+        writeDateTime(out, r.bookingTime);
+        writeVarInt(out, strings.ref(r.username));
+        writeVarInt(out, r.showtimeId);
+        writeVarInt(out, r.rows.length);
+        boolean uniformPrice = true;
+        for (int i = 1; i < r.prices.length; i++) {
+            uniformPrice &= r.prices[i] == r.prices[0];
+        }
+        out.writeBoolean(uniformPrice);
+        for (int i = 0; i < r.rows.length; i++) {
+            writeVarInt(out, r.rows[i]);
+            writeVarInt(out, r.cols[i]);
+            if (!uniformPrice) {
+                out.writeDouble(r.prices[i]);
+            }
+        }
+        if (uniformPrice && r.prices.length > 0) {
+            out.writeDouble(r.prices[0]);
+        }
+        writeVarInt(out, strings.ref(r.cardNumber));
+        writeVarInt(out, strings.ref(r.expiry));
+        writeVarInt(out, strings.ref(r.cvv));
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[readLength(in)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readLength(in)];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void verifyChecksum(CheckedInputStream checked, DataInputStream in) throws IOException {
+        int expected = (int) checked.getChecksum().getValue();
+        if (in.readInt() != expected) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+    }
+
+    private static void writeMovie(DataOutputStream out, StringTable strings, MovieRecord m) throws IOException {
+        writeVarInt(out, strings.ref(m.title));
+        writeVarInt(out, strings.ref(m.genre));
+        writeVarInt(out, strings.ref(m.rating));
+        writeVarInt(out, m.runtime);
+        writeVarInt(out, strings.ref(m.posterPath));
+    }
+
+    private static MovieRecord readMovie(DataInputStream in, String[] strings) throws IOException {
+        return new MovieRecord(str(strings, in), str(strings, in), str(strings, in), readVarInt(in), str(strings, in));
+    }
+
+    private static void writeDateTime(DataOutputStream out, LocalDateTime dt) throws IOException {
+        writeVarLong(out, zigZag(dt.toEpochSecond(ZoneOffset.UTC)));
+        writeVarInt(out, dt.getNano());
+    }
+
+    private static LocalDateTime readDateTime(DataInputStream in) throws IOException {
+        long seconds = unZigZag(readVarLong(in));
+        return LocalDateTime.ofEpochSecond(seconds, readVarInt(in), ZoneOffset.UTC);
+    }
+
+    private static UUID asUuid(String id) {
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    private static String str(String[] strings, DataInputStream in) throws IOException {
+        int ref = readVarInt(in);
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > strings.length) {
+            throw new IOException("String reference out of range: " + ref);
+        }
+        return strings[ref - 1];
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("Corrupt snapshot: length " + length);
+        }
+        return length;
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Varint too large");
+        }
+        return (int) value;
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Distinct strings in first-seen order; ref() is the 1-based index, 0 for null.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        void add(String... strings) {
+            for (String s : strings) {
+                if (s != null && !index.containsKey(s)) {
+                    index.put(s, values.size() + 1);
+                    values.add(s);
+                }
+            }
+        }
+
+        int ref(String s) {
+            return s == null ? 0 : index.get(s);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeVarInt(out, values.size());
+            for (String s : values) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, to find where the reservation section starts.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -11,17 +11,19 @@ import java.util.List;
 
 public interface IDatabase {
     void addUser(User u);                         // Adds a user to the database
-    void removeUser(String username);             // Removes a user by username
+    void removeUser(String username);             // Removes a user by username, cancelling their bookings
     User findUser(String username);               // Finds and returns a user by username
     List<User> getUsers();                        // Returns all registered users
 
     void addMovie(Movie m);                       // Adds a new movie
     void removeMovie(String title);               // Removes a movie by its title
     List<Movie> getMovies();                      // Returns all available movies
+    Movie findMovie(String title);                // Finds a movie by its title
 
     void addShowtime(Showtime s);                 // Adds a showtime to the list
     Showtime findShowtime(Movie m, LocalDateTime dt); // Finds a showtime for given movie and time
     List<Showtime> getShowtimes();                // Returns all showtimes
+    Showtime findShowtimeById(int id);            // Finds a showtime by the ID assigned in addShowtime
 
     void addReservation(Reservation r);
     void removeReservation(String bookingID); // Removes reservation by booking ID
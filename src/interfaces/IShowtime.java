@@ -22,6 +22,13 @@ import java.time.LocalDateTime;
  */
 public interface IShowtime {
 
+    /**
+     * Returns the stable numeric ID of this showtime, or a negative value if it
+     * has not been added to a database yet.
+     * @return showtime ID
+     */
+    int getId();
+
     /**
      * Returns the Movie shown at this showtime.
      * @return non-null Movie instance
@@ -59,6 +66,23 @@ public interface IShowtime {
      */
     boolean bookSeat(int row, int col);
 
+    /**
+     * Books several seats all-or-nothing. Either every listed seat was free and is
+     * now booked by the caller, or nothing is changed and false is returned (also
+     * when the same seat is listed twice).
+     *
+     * @param rows zero-based row index of each seat
+     * @param cols zero-based column index of each seat (same length as rows)
+     * @return true if all seats were booked
+     */
+    boolean tryBookSeats(int[] rows, int[] cols);
+
+    /**
+     * Same as tryBookSeats(rows, cols) for the first count entries of the arrays, so callers
+     * can reuse larger arrays across bookings.
+     */
+    boolean tryBookSeats(int[] rows, int[] cols, int count);
+
     /**
      * Attempts to cancel the booking for the seat at the specified position.
      *
@@ -80,6 +104,25 @@ public interface IShowtime {
      */
     boolean isSeatAvailable(int row, int col);
 
+    /**
+     * Returns the seat-map version, which increases every time a seat is booked
+     * or cancelled.
+     * @return current seat-map version
+     */
+    long getSeatVersion();
+
+    /**
+     * Returns the seats changed after version since, up to and including
+     * version upTo (normally a value just read from getSeatVersion()), as
+     * distinct indices row * getColCount() + col in ascending order.
+     *
+     * @param since version the caller last saw
+     * @param upTo  newest version to include
+     * @return changed seat indices, or null if the changes are no longer
+     *         tracked and the caller should read the whole seat map instead
+     */
+    int[] getChangedSeatsSince(long since, long upTo);
+
     /**
      * Returns the number of currently unbooked seats for this showtime.
      *
@@ -16,7 +16,7 @@ public class Reservation implements IReservation, Serializable {
     private final String bookingID;
     private final User user;
     private final Showtime showtime;
-    private final ArrayList<Seat> bookedSeats;
+    private volatile ArrayList<Seat> bookedSeats; // replaced, never modified, once the reservation is cancelled
     private final LocalDateTime bookingTime;
     private String cardNumber;
     private String expiry;
@@ -24,6 +24,39 @@ public class Reservation implements IReservation, Serializable {
 
 
     public Reservation(User user, Showtime showtime, ArrayList<Seat> seats, String cardNumber, String expiry, String cvv) {
+        this(UUID.randomUUID().toString(), LocalDateTime.now(), user, showtime, seats, cardNumber, expiry, cvv);
+    }
+
+    /**
+     * Recreates a reservation with a known booking ID and time (used when replaying the database journal).
+     * Seats are booked on the showtime exactly like the regular constructor.
+     */
+    public Reservation(String bookingID, LocalDateTime bookingTime, User user, Showtime showtime,
+                       ArrayList<Seat> seats, String cardNumber, String expiry, String cvv) {
+        this(bookingID, bookingTime, user, showtime, seats, cardNumber, expiry, cvv, true);
+    }
+
+    /**
+     * Creates a reservation for seats the caller has already booked on the showtime
+     * (e.g. through Showtime.tryBookSeats), so the seats are not booked a second time.
+     */
+    public static Reservation forHeldSeats(User user, Showtime showtime, ArrayList<Seat> seats,
+                                           String cardNumber, String expiry, String cvv) {
+        return new Reservation(UUID.randomUUID().toString(), LocalDateTime.now(), user, showtime, seats,
+                cardNumber, expiry, cvv, false);
+    }
+
+    /**
+     * Recreates a stored reservation whose seats are already marked booked on the showtime
+     * (e.g. restored from a snapshot that carries seat bitmaps).
+     */
+    public static Reservation restoreHeld(String bookingID, LocalDateTime bookingTime, User user, Showtime showtime,
+                                          ArrayList<Seat> seats, String cardNumber, String expiry, String cvv) {
+        return new Reservation(bookingID, bookingTime, user, showtime, seats, cardNumber, expiry, cvv, false);
+    }
+
+    private Reservation(String bookingID, LocalDateTime bookingTime, User user, Showtime showtime,
+                        ArrayList<Seat> seats, String cardNumber, String expiry, String cvv, boolean bookSeats) {
         this.user = user;
         this.showtime = showtime;
         this.bookedSeats = seats;
@@ -32,13 +65,15 @@ public class Reservation implements IReservation, Serializable {
         this.expiry = expiry;
         this.cvv = cvv;
 
-        this.bookingTime = LocalDateTime.now();
+        this.bookingTime = bookingTime;
 
-        this.bookingID =  UUID.randomUUID().toString();
+        this.bookingID = bookingID;
 
-        for(int i = 0; i < bookedSeats.size(); i++) {
-            Seat seat = bookedSeats.get(i);
-            this.showtime.bookSeat(seat.getRow(), seat.getNumber());
+        if (bookSeats) {
+            for(int i = 0; i < bookedSeats.size(); i++) {
+                Seat seat = bookedSeats.get(i);
+                this.showtime.bookSeat(seat.getRow(), seat.getNumber());
+            }
         }
     }
 
@@ -69,21 +104,27 @@ public class Reservation implements IReservation, Serializable {
 
     @Override
     public double getTotalPrice() {
+        ArrayList<Seat> seats = this.bookedSeats;
         double total = 0.0;
-        for(int i = 0; i < bookedSeats.size(); i++) {
-            total += bookedSeats.get(i).getPrice();
+        for(int i = 0; i < seats.size(); i++) {
+            total += seats.get(i).getPrice();
         }
         return total;
     }
 
+    /**
+     * Frees the seats and empties the seat list. The list is swapped for an empty one rather than
+     * cleared, so a thread still formatting this booking from getBookedSeats() sees a stable list.
+     */
     @Override
     public void cancelAllSeats() {
-        if (this.bookedSeats != null) {
-            for (int i = 0; i < this.bookedSeats.size(); i++) {
-                Seat seat = this.bookedSeats.get(i);
+        ArrayList<Seat> seats = this.bookedSeats;
+        if (seats != null) {
+            for (int i = 0; i < seats.size(); i++) {
+                Seat seat = seats.get(i);
                 this.showtime.cancelSeat(seat.getRow(), seat.getNumber());
             }
-            this.bookedSeats.clear();
+            this.bookedSeats = new ArrayList<>();
         }
     }
 
@@ -95,10 +136,11 @@ public class Reservation implements IReservation, Serializable {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy 'at' hh:mma");
         String formattedDateTime = showtime.getDateTime().format(formatter);
 
+        ArrayList<Seat> seats = this.bookedSeats;
         String seatList = "";
-        for(int i = 0; i < bookedSeats.size(); i++) {
-            seatList += bookedSeats.get(i).getSeatLabel();
-            if(i != bookedSeats.size() - 1) {
+        for(int i = 0; i < seats.size(); i++) {
+            seatList += seats.get(i).getSeatLabel();
+            if(i != seats.size() - 1) {
                 seatList += ", ";
             }
         }
@@ -0,0 +1,443 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of the text protocol, used after a client sends BINARY and gets SUCCESS|BINARY.
+ *
+ * Every protocol line travels as one frame: [varint payload length][opcode byte][fields...].
+ * The opcode replaces the command or response name, and the fields are the values between the
+ * delimiters, each [type byte][data]: a string (varint byte count, UTF-8), an integer (zig-zag
+ * varint) or a bitmap (varint byte count, bits LSB first). A full seat map is a single SEAT_MAP
+ * frame with rows, cols, the optional version and one bit per seat (set = available) instead of a
+ * ROW line per row.
+ *
+ * Notes:
+ * - Decoding turns frames back into exactly the text lines they were made from, so FrameReader
+ *   and FrameWriter can be put under the existing line-based code on both ends.
+ * - Only integers written canonically (no leading zeros, no "-0") become varints; anything else
+ *   stays a string, which keeps the round trip exact.
+ * - Lines whose first field is not a known name (e.g. tagged "#id|..." lines) are sent whole as
+ *   a RAW frame.
+ */
+public final class BinaryProtocol {
+
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    static final int RAW = 0;
+    static final int SEAT_MAP = 0x7F;
+
+    private static final char DELIMITER = Protocol.DELIMITER.charAt(0);
+    private static final int FIELD_STRING = 0;
+    private static final int FIELD_INT = 1;
+    private static final int FIELD_BITMAP = 2;
+
+    /** Opcode i stands for NAMES[i]. Append only: the numbers are part of the wire format. */
+    private static final String[] NAMES = {
+            null, // RAW
+            Protocol.LOGIN, Protocol.REGISTER, Protocol.LOGOUT, Protocol.DELETE_ACCOUNT,
+            Protocol.LIST_MOVIES, Protocol.LIST_SHOWTIMES, Protocol.VIEW_SEATS, Protocol.BOOK,
+            Protocol.CANCEL, Protocol.MY_BOOKINGS, Protocol.ADMIN_ADD_MOVIE, Protocol.ADMIN_ADD_SHOWTIME,
+            Protocol.ADMIN_PROMOTE, Protocol.ADMIN_VIEW_ALL_BOOKINGS, Protocol.ADMIN_VIEW_ARCHIVE,
+            Protocol.SUBSCRIBE_SEATS, Protocol.UNSUBSCRIBE_SEATS, Protocol.BINARY,
+            Protocol.SUCCESS, Protocol.ERROR, Protocol.CONNECTED, Protocol.MOVIE, Protocol.SHOWTIME,
+            Protocol.BOOKING, Protocol.BOOKING_DETAIL, Protocol.ROW, Protocol.SEAT_DELTA, Protocol.SEAT,
+            Protocol.SEAT_UPDATE, Protocol.END_LIST, Protocol.END_SEATS, Protocol.END_RESPONSE
+    };
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+
+    static {
+        for (int i = 1; i < NAMES.length; i++) {
+            OPCODES.put(NAMES[i], i);
+        }
+    }
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Reads frames from a stream and returns them as protocol text lines.
+     */
+    public static final class FrameReader extends Reader {
+        private final InputStream in;
+        private final StringBuilder text = new StringBuilder();
+        private int pos;
+
+        public FrameReader(InputStream in) {
+            this.in = new BufferedInputStream(in);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos == text.length() && !readFrame()) {
+                return -1;
+            }
+            int n = Math.min(len, text.length() - pos);
+            text.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+            return n;
+        }
+
+        private boolean readFrame() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            int length = checkLength(readVarint(in, first));
+            byte[] payload = in.readNBytes(length);
+            if (payload.length < length) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            text.setLength(0);
+            pos = 0;
+            decode(payload, 0, length, text);
+            return true;
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            return pos < text.length() || in.available() > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Turns every protocol line written to it into a frame. Frames are sent on flush().
+     */
+    public static final class FrameWriter extends Writer {
+        private final OutputStream out;
+        private final StringBuilder line = new StringBuilder();
+        private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+        public FrameWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                char c = cbuf[i];
+                if (c == '\n') {
+                    int end = line.length();
+                    if (end > 0 && line.charAt(end - 1) == '\r') {
+                        line.setLength(end - 1);
+                    }
+                    encodeLine(line);
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+
+        private void encodeLine(CharSequence text) {
+            payload.reset();
+            int end = indexOf(text, 0);
+            Integer opcode = OPCODES.get(text.subSequence(0, end).toString());
+            if (opcode == null) {
+                payload.write(RAW);
+                writeString(payload, text, 0, text.length());
+            } else {
+                payload.write(opcode);
+                while (end < text.length()) {
+                    int start = end + 1;
+                    end = indexOf(text, start);
+                    writeField(payload, text, start, end);
+                }
+            }
+            writeFrame();
+        }
+
+        /**
+         * Writes a full seat map (the reply to VIEW_SEATS) as one SEAT_MAP frame.
+         *
+         * @param version the seat version to include, or -1 to leave it out
+         * @param available bit row * cols + col is set for every available seat
+         */
+        public void writeSeatMap(int rows, int cols, long version, BitSet available) {
+            payload.reset();
+            payload.write(SEAT_MAP);
+            writeInt(payload, rows);
+            writeInt(payload, cols);
+            if (version >= 0) {
+                writeInt(payload, version);
+            }
+            byte[] bits = available.toByteArray();
+            payload.write(FIELD_BITMAP);
+            writeVarint(payload, bits.length);
+            payload.write(bits, 0, bits.length);
+            writeFrame();
+        }
+
+        private void writeFrame() {
+            writeVarint(frames, payload.size());
+            frames.writeBytes(payload.toByteArray());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (frames.size() > 0) {
+                frames.writeTo(out);
+                frames.reset();
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            out.close();
+        }
+    }
+
+    /**
+     * Decodes every complete frame in buf[0, len) into text lines.
+     *
+     * @return the number of bytes consumed; a trailing partial frame is left for the next call
+     */
+    static int decodeFrames(byte[] buf, int len, List<String> lines) throws IOException {
+        int pos = 0;
+        StringBuilder text = new StringBuilder();
+        while (pos < len) {
+            long length = 0;
+            int shift = 0;
+            int p = pos;
+            boolean complete = false;
+            while (p < len) {
+                byte b = buf[p++];
+                length |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    complete = true;
+                    break;
+                }
+                shift += 7;
+                if (shift > 28) {
+                    throw new IOException("Malformed frame length");
+                }
+            }
+            if (!complete) {
+                break;
+            }
+            int payloadLength = checkLength(length);
+            if (len - p < payloadLength) {
+                break;
+            }
+            text.setLength(0);
+            decode(buf, p, payloadLength, text);
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    lines.add(text.substring(start, i));
+                    start = i + 1;
+                }
+            }
+            pos = p + payloadLength;
+        }
+        return pos;
+    }
+
+    private static int checkLength(long length) throws IOException {
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Appends the text line(s) a frame payload stands for, each ending with '\n'.
+     */
+    private static void decode(byte[] buf, int off, int len, StringBuilder text) throws IOException {
+        int[] pos = {off};
+        int end = off + len;
+        int opcode = buf[pos[0]++] & 0xFF;
+        if (opcode == SEAT_MAP) {
+            decodeSeatMap(buf, pos, end, text);
+            return;
+        }
+        if (opcode == RAW) {
+            if (readType(buf, pos, end) != FIELD_STRING) {
+                throw new IOException("Malformed raw frame");
+            }
+            text.append(readString(buf, pos, end)).append('\n');
+            return;
+        }
+        if (opcode >= NAMES.length) {
+            throw new IOException("Unknown opcode " + opcode);
+        }
+        text.append(NAMES[opcode]);
+        while (pos[0] < end) {
+            int type = readType(buf, pos, end);
+            text.append(Protocol.DELIMITER);
+            if (type == FIELD_STRING) {
+                text.append(readString(buf, pos, end));
+            } else if (type == FIELD_INT) {
+                text.append(unzigzag(readVarint(buf, pos, end)));
+            } else {
+                throw new IOException("Unexpected field type " + type);
+            }
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Expands a SEAT_MAP frame to the text reply: SUCCESS|rows|cols[|version], ROW lines, END_SEATS.
+     */
+    private static void decodeSeatMap(byte[] buf, int[] pos, int end, StringBuilder text) throws IOException {
+        text.append(Protocol.SUCCESS);
+        long[] header = new long[3];
+        int count = 0;
+        int type;
+        while ((type = readType(buf, pos, end)) == FIELD_INT && count < header.length) {
+            header[count++] = unzigzag(readVarint(buf, pos, end));
+            text.append(Protocol.DELIMITER).append(header[count - 1]);
+        }
+        if (type != FIELD_BITMAP || count < 2 || header[0] < 0 || header[1] < 0
+                || header[0] * header[1] > 8L * MAX_FRAME_LENGTH) {
+            throw new IOException("Malformed seat map");
+        }
+        int byteCount = (int) readVarint(buf, pos, end);
+        if (byteCount > end - pos[0]) {
+            throw new IOException("Malformed seat map");
+        }
+        BitSet available = BitSet.valueOf(ByteBuffer.wrap(buf, pos[0], byteCount));
+        pos[0] += byteCount;
+        text.append('\n');
+        int rows = (int) header[0];
+        int cols = (int) header[1];
+        for (int r = 0; r < rows; r++) {
+            text.append(Protocol.ROW).append(Protocol.DELIMITER).append(r + 1);
+            for (int c = 0; c < cols; c++) {
+                text.append(Protocol.DELIMITER).append(available.get(r * cols + c) ? '1' : '0');
+            }
+            text.append('\n');
+        }
+        text.append(Protocol.END_SEATS).append('\n');
+    }
+
+    private static int readType(byte[] buf, int[] pos, int end) throws IOException {
+        if (pos[0] >= end) {
+            throw new IOException("Truncated frame");
+        }
+        return buf[pos[0]++];
+    }
+
+    private static String readString(byte[] buf, int[] pos, int end) throws IOException {
+        int length = (int) readVarint(buf, pos, end);
+        if (length < 0 || length > end - pos[0]) {
+            throw new IOException("Malformed string field");
+        }
+        String s = new String(buf, pos[0], length, StandardCharsets.UTF_8);
+        pos[0] += length;
+        return s;
+    }
+
+    private static void writeField(ByteArrayOutputStream out, CharSequence text, int start, int end) {
+        if (isCanonicalInteger(text, start, end)) {
+            writeInt(out, Long.parseLong(text.subSequence(start, end).toString()));
+        } else {
+            writeString(out, text, start, end);
+        }
+    }
+
+    private static boolean isCanonicalInteger(CharSequence text, int start, int end) {
+        int digits = start < end && text.charAt(start) == '-' ? start + 1 : start;
+        if (digits == end || end - digits > 18) {
+            return false;
+        }
+        if (text.charAt(digits) == '0') {
+            return end - digits == 1 && digits == start; // "0", but not "00" or "-0"
+        }
+        for (int i = digits; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        out.write(FIELD_INT);
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, CharSequence text, int start, int end) {
+        byte[] bytes = text.subSequence(start, end).toString().getBytes(StandardCharsets.UTF_8);
+        out.write(FIELD_STRING);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] buf, int[] pos, int end) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= end) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = buf[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long readVarint(InputStream in, int first) throws IOException {
+        long value = first & 0x7F;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 28) {
+                throw new IOException("Malformed frame length");
+            }
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            value |= (long) (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int indexOf(CharSequence text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == DELIMITER) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+}
@@ -1,6 +1,9 @@
 package server;
 
+import database.Archive;
 import database.Database;
+import database.ReservationPage;
+import user.PasswordHasher;
 import user.User;
 import movie.Movie;
 import showtime.Showtime;
@@ -10,16 +13,41 @@ import interfaces.IClientHandler;
 
 import java.io.*;
 import java.net.Socket;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
  * ClientHandler manages communication with a single connected client.
  * Runs in its own thread and processes all client commands according to the protocol.
+ * With the NIO engine the handler has no socket or thread of its own; the engine feeds it
+ * complete lines through processLine() and ships whatever it writes to out.
+ *
+ * Notes:
+ * - A client may pipeline: send "#id|COMMAND|..." lines without waiting for replies. Every line of
+ *   the reply to a tagged command starts with "#id|" and the reply ends with "#id|END_RESPONSE";
+ *   replies come back in request order. Untagged commands get exactly the old replies.
+ * - out is not auto-flushing: it encodes into a ResponseWriter buffer, which is written out once
+ *   the commands already received are answered (no complete line is left in the LineReader, or
+ *   the NIO engine has run out of complete lines). A multi-line response, or a pipelined batch of
+ *   them, costs one write instead of one per line.
+ * - LOGIN and REGISTER hash passwords on PasswordHasher's pool. With the NIO engine the worker
+ *   does not wait for it: the command is suspended and the engine resumes the connection once
+ *   the hash is done (see afterHashing()).
+ * - After BINARY the connection speaks BinaryProtocol frames in both directions. The frames carry
+ *   the same lines, so only the stream setup and the full seat map (one bitmap frame) differ.
  */
 public class ClientHandler implements Runnable, IClientHandler {
 
@@ -27,8 +55,23 @@ public class ClientHandler implements Runnable, IClientHandler {
     private final Server server;
     private final Database db;
 
-    private BufferedReader in;
+    private LineReader in;
     private PrintWriter out;
+    private OutputStream rawOut;  // what out encodes to; frames are written here after BINARY
+    private ResponseWriter responseWriter; // under out in text mode, for pre-encoded bytes; null after BINARY
+    private BinaryProtocol.FrameWriter frameOut; // non-null once BINARY was negotiated
+    private final Runnable binaryInput; // NIO: tells the engine to read frames instead of lines
+    private final ReentrantLock outputLock = new ReentrantLock(); // keeps pushed lines out of a response
+    private volatile SeatSubscriptions.Subscriber seatSubscriber; // created by the first SUBSCRIBE_SEATS
+    private final Runnable pushWakeup; // NIO: has the engine drain this connection; null with a socket thread
+    private final Semaphore pushSignal = new Semaphore(0); // socket: wakes pushWriter
+    private Thread pushWriter; // socket: writes queued seat updates; started by the first SUBSCRIBE_SEATS
+    private volatile boolean closed;
+    private String responseTag; // "#id|" while answering a tagged command, else null
+    private final SeatSelection seatSelection = new SeatSelection(); // reused by every BOOK
+    private final boolean suspendForHashing; // NIO: workers must not wait on the hashing pool
+    private CompletableFuture<Runnable> suspended; // NIO: rest of the current command, once hashed
+    private String suspendedTag; // responseTag of the suspended command
 
     private User currentUser = null;
     private boolean isAuthenticated = false;
@@ -40,12 +83,34 @@ public class ClientHandler implements Runnable, IClientHandler {
     private static final Pattern EMAIL_PATTERN = Pattern.compile("^[^@]+@[^@]+\\.[^@]+$");
     private static final DateTimeFormatter DATE_TIME_FORMATTER =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    static final String SHOWTIME_ID_PREFIX = "ST_";
+    private static final int MAX_BOOKINGS_PAGE = 1000;
 
 
     public ClientHandler(Socket socket, Server server) {
         this.socket = socket;
         this.server = server;
         this.db = server.getDatabase();
+        this.binaryInput = null;
+        this.pushWakeup = null;
+        this.suspendForHashing = false;
+    }
+
+    /**
+     * Creates a handler for a connection owned by the NIO engine, which ships what is flushed to
+     * out, switches its input to frames when binaryInput runs, and has a worker call
+     * writePendingPushes() when pushWakeup runs.
+     */
+    ClientHandler(Server server, OutputStream out, Runnable binaryInput, Runnable pushWakeup) {
+        this.socket = null;
+        this.server = server;
+        this.db = server.getDatabase();
+        this.rawOut = out;
+        this.responseWriter = new ResponseWriter(out);
+        this.out = new PrintWriter(responseWriter, false);
+        this.binaryInput = binaryInput;
+        this.pushWakeup = pushWakeup;
+        this.suspendForHashing = true;
     }
 
 
@@ -53,28 +118,13 @@ public class ClientHandler implements Runnable, IClientHandler {
     public void run() {
         try {
             setupStreams();
-            send(Protocol.CONNECTED + Protocol.DELIMITER + "Welcome to Cinema Booking System");
+            greet();
 
             String input;
             while ((input = in.readLine()) != null) {
-                if (input.trim().isEmpty()) {
-                    continue;
-                }
-
-                // Check for inactivity timeout
-                if (isAuthenticated && checkInactivityTimeout()) {
-                    sendError("Session expired due to inactivity. Please log in again.");
-                    handleLogout();
-                    continue;
-                }
-
-                try {
-                    handleCommand(input);
-                    // Update last activity time after successful command
-                    lastActivityTime = System.currentTimeMillis();
-                } catch (Exception e) {
-                    sendError("An error occurred: " + e.getMessage());
-                    e.printStackTrace();
+                processLine(input);
+                if (!in.hasLine()) {
+                    flush();
                 }
             }
 
@@ -85,12 +135,164 @@ public class ClientHandler implements Runnable, IClientHandler {
         }
     }
 
+    /**
+     * Sends the welcome line every client expects right after connecting.
+     */
+    void greet() {
+        outputLock.lock();
+        try {
+            send(Protocol.CONNECTED + Protocol.DELIMITER + "Welcome to Cinema Booking System");
+            out.flush();
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * Processes one line received from the client: session timeout check, then the command itself.
+     */
+    void processLine(String input) {
+        if (input.trim().isEmpty()) {
+            return;
+        }
+
+        outputLock.lock();
+        try {
+            if (input.startsWith(Protocol.REQUEST_TAG_PREFIX)) {
+                processTagged(input);
+            } else {
+                processCommand(input);
+            }
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * Answers "#id|COMMAND|..." with every line prefixed by "#id|", then "#id|END_RESPONSE".
+     */
+    private void processTagged(String input) {
+        int end = input.indexOf(Protocol.DELIMITER);
+        String tag = end < 0 ? "" : input.substring(Protocol.REQUEST_TAG_PREFIX.length(), end);
+        if (tag.isEmpty() || tag.length() > Protocol.MAX_REQUEST_TAG_LENGTH || tag.contains(" ")) {
+            sendError(Protocol.ERROR_INVALID_FORMAT);
+            return;
+        }
+        responseTag = input.substring(0, end + 1);
+        try {
+            processCommand(input.substring(end + 1));
+            if (suspended == null) {
+                send(Protocol.END_RESPONSE); // else resumeHashing() ends the reply
+            }
+        } finally {
+            responseTag = null;
+        }
+    }
+
+    /**
+     * Hashing work the current command is waiting for, or null. The NIO engine processes no
+     * further lines of this connection until it completes, then calls resumeHashing().
+     */
+    CompletableFuture<?> suspendedOnHashing() {
+        return suspended;
+    }
+
+    /**
+     * Finishes the command suspended by afterHashing() and ends its reply.
+     */
+    void resumeHashing() {
+        outputLock.lock();
+        try {
+            CompletableFuture<Runnable> rest = suspended;
+            suspended = null;
+            responseTag = suspendedTag;
+            suspendedTag = null;
+            try {
+                rest.join().run();
+                lastActivityTime = System.currentTimeMillis();
+            } catch (Exception e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                sendError("An error occurred: " + cause.getMessage());
+                cause.printStackTrace();
+            }
+            if (responseTag != null && suspended == null) {
+                send(Protocol.END_RESPONSE);
+            }
+        } finally {
+            responseTag = null;
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * Writes out whatever replies are buffered. Called once a batch of commands is answered.
+     */
+    void flush() {
+        outputLock.lock();
+        try {
+            if (out != null) {
+                out.flush();
+            }
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    private void processCommand(String input) {
+        // Check for inactivity timeout
+        if (isAuthenticated && checkInactivityTimeout()) {
+            sendError("Session expired due to inactivity. Please log in again.");
+            handleLogout();
+            return;
+        }
+
+        try {
+            handleCommand(input);
+            // Update last activity time after successful command
+            lastActivityTime = System.currentTimeMillis();
+        } catch (Exception e) {
+            sendError("An error occurred: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs task on the password hashing pool, then hands its result to then as part of the
+     * current command. A socket thread just waits. An NIO worker must not (a login burst would
+     * park every worker), so the command is suspended instead and finished by resumeHashing().
+     * Replies SERVER_BUSY if the pool's queue is full.
+     */
+    private <T> void afterHashing(Callable<T> task, Consumer<T> then) {
+        if (!suspendForHashing) {
+            T result;
+            try {
+                result = PasswordHasher.onHashingPool(task);
+            } catch (RejectedExecutionException e) {
+                sendError(Protocol.ERROR_SERVER_BUSY);
+                return;
+            }
+            then.accept(result);
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = PasswordHasher.submit(task);
+        } catch (RejectedExecutionException e) {
+            sendError(Protocol.ERROR_SERVER_BUSY);
+            return;
+        }
+        suspendedTag = responseTag;
+        suspended = future.thenApply(result -> () -> then.accept(result));
+    }
+
     /**
      * Initialize input and output streams
      */
     private void setupStreams() throws IOException {
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(socket.getOutputStream(), true);
+        in = new LineReader(new InputStreamReader(socket.getInputStream()));
+        rawOut = socket.getOutputStream();
+        responseWriter = new ResponseWriter(rawOut);
+        out = new PrintWriter(responseWriter, false);
     }
 
     /**
@@ -102,10 +304,80 @@ public class ClientHandler implements Runnable, IClientHandler {
         return (currentTime - lastActivityTime) > INACTIVITY_TIMEOUT;
     }
 
+    /**
+     * Drops this connection's seat subscriptions. Called when the connection closes.
+     */
+    void connectionClosed() {
+        SeatSubscriptions.Subscriber subscriber = seatSubscriber;
+        if (subscriber != null) {
+            server.getSeatSubscriptions().unsubscribeAll(subscriber);
+        }
+    }
+
+    /**
+     * Called by SeatSubscriptions on its notifier thread when updates are queued; never blocks.
+     */
+    private void pushesQueued() {
+        if (pushWakeup != null) {
+            pushWakeup.run();
+        } else {
+            pushSignal.release();
+        }
+    }
+
+    /**
+     * Whether seat updates are waiting for writePendingPushes().
+     */
+    boolean hasPendingPushes() {
+        SeatSubscriptions.Subscriber subscriber = seatSubscriber;
+        return subscriber != null && subscriber.hasPending();
+    }
+
+    /**
+     * Writes the queued seat updates between responses, never inside one. Like replies, they go
+     * out on the next flush.
+     */
+    void writePendingPushes() {
+        SeatSubscriptions.Subscriber subscriber = seatSubscriber;
+        if (subscriber == null) {
+            return;
+        }
+        outputLock.lock();
+        try {
+            if (out != null) {
+                subscriber.drain(out::println);
+            }
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * Socket connections: writes seat updates as they are queued, so a client that stops reading
+     * only ever blocks this thread.
+     */
+    private void writePushes() {
+        try {
+            while (!closed) {
+                pushSignal.acquire();
+                pushSignal.drainPermits();
+                writePendingPushes();
+                flush();
+            }
+        } catch (InterruptedException e) {
+            // connection closed
+        }
+    }
+
     /**
      * Clean up all resources
      */
     private void closeEverything() {
+        closed = true;
+        if (pushWriter != null) {
+            pushWriter.interrupt();
+        }
+        connectionClosed();
         try {
             if (in != null) {
                 in.close();
@@ -129,6 +401,9 @@ public class ClientHandler implements Runnable, IClientHandler {
 
 
     private void send(String message) {
+        if (responseTag != null) {
+            out.print(responseTag);
+        }
         out.println(message);
     }
 
@@ -143,74 +418,89 @@ public class ClientHandler implements Runnable, IClientHandler {
 
 
     private void handleCommand(String input) {
-        String[] parts = input.split("\\" + Protocol.DELIMITER, -1);
-
-        if (parts.length == 0) {
-            sendError(Protocol.ERROR_INVALID_FORMAT);
+        CommandTokenizer.Command command = CommandTokenizer.command(input);
+        if (command == null) {
+            sendError(Protocol.ERROR_INVALID_COMMAND);
             return;
         }
-
-        String command = parts[0].toUpperCase();
+        String[] parts = CommandTokenizer.split(input, command);
 
         switch (command) {
-            case Protocol.LOGIN:
+            case LOGIN:
                 handleLogin(parts);
                 break;
 
-            case Protocol.REGISTER:
+            case REGISTER:
                 handleRegister(parts);
                 break;
 
-            case Protocol.LOGOUT:
+            case LOGOUT:
                 handleLogout();
                 break;
 
-            case Protocol.DELETE_ACCOUNT:
+            case DELETE_ACCOUNT:
                 handleDeleteAccount();
                 break;
 
-            case Protocol.LIST_MOVIES:
+            case BINARY:
+                handleBinary();
+                break;
+
+            case LIST_MOVIES:
                 handleListMovies();
                 break;
 
-            case Protocol.LIST_SHOWTIMES:
+            case LIST_SHOWTIMES:
                 handleListShowtimes(parts);
                 break;
 
-            case Protocol.VIEW_SEATS:
+            case VIEW_SEATS:
                 handleViewSeats(parts);
                 break;
 
-            case Protocol.BOOK:
+            case SUBSCRIBE_SEATS:
+                handleSubscribeSeats(parts);
+                break;
+
+            case UNSUBSCRIBE_SEATS:
+                handleUnsubscribeSeats(parts);
+                break;
+
+            case BOOK:
                 handleBookSeats(parts);
                 break;
 
-            case Protocol.CANCEL:
+            case CANCEL:
                 handleCancelReservation(parts);
                 break;
 
-            case Protocol.MY_BOOKINGS:
+            case MY_BOOKINGS:
                 handleMyBookings();
                 break;
 
-            case Protocol.ADMIN_ADD_MOVIE:
+            case ADMIN_ADD_MOVIE:
                 handleAdminAddMovie(parts);
                 break;
 
-            case Protocol.ADMIN_ADD_SHOWTIME:
+            case ADMIN_ADD_SHOWTIME:
                 handleAdminAddShowtime(parts);
                 break;
 
-            case Protocol.ADMIN_PROMOTE:
+            case ADMIN_PROMOTE:
                 handleAdminPromoteUser(parts);
                 break;
 
-            case Protocol.ADMIN_VIEW_ALL_BOOKINGS:
-                handleAdminViewAllBookings();
+            case ADMIN_VIEW_ALL_BOOKINGS:
+                handleAdminViewAllBookings(parts);
+                break;
+
+            case ADMIN_VIEW_ARCHIVE:
+                handleAdminViewArchive();
                 break;
 
             default:
                 sendError(Protocol.ERROR_INVALID_COMMAND);
+                break;
         }
     }
 
@@ -226,19 +516,35 @@ public class ClientHandler implements Runnable, IClientHandler {
         String username = parts[1];
         String password = parts[2];
 
-        synchronized (db) {
-            User user = db.findUser(username);
+        User user = db.findUser(username);
 
-            if (user == null || !user.verifyPassword(password)) {
+        // One hashing task verifies the password and, for an old MD5 or cheaper hash, makes its
+        // replacement now that the password is known. It yields the hash to keep, or null if the
+        // password is wrong; an unknown user costs the same KDF run as a known one.
+        afterHashing(() -> {
+            if (user == null) {
+                PasswordHasher.verifyMissing(password);
+                return null;
+            }
+            String stored = user.getPasswordHash();
+            if (!user.verifyPassword(password)) {
+                return null;
+            }
+            return PasswordHasher.needsRehash(stored) ? PasswordHasher.hash(password) : stored;
+        }, hash -> {
+            if (hash == null) {
                 sendError("Invalid credentials");
                 return;
             }
+            if (!hash.equals(user.getPasswordHash())) {
+                db.updatePasswordHash(username, hash);
+            }
 
             this.currentUser = user;
             this.isAuthenticated = true;
             this.lastActivityTime = System.currentTimeMillis(); // Reset activity timer on login
             sendSuccess("Welcome " + username + "!" + Protocol.DELIMITER + user.isAdmin());
-        }
+        });
     }
 
 
@@ -270,22 +576,26 @@ public class ClientHandler implements Runnable, IClientHandler {
             return;
         }
 
-        synchronized (db) {
-            if (db.findUser(username) != null) {
+        // Checked first so a taken name costs no password hash; addUserIfAbsent settles races.
+        if (db.usernameExists(username)) {
+            sendError("Username already exists");
+            return;
+        }
+        afterHashing(() -> new User(username, password, email, false), user -> {
+            if (!db.addUserIfAbsent(user)) {
                 sendError("Username already exists");
                 return;
             }
 
-
-            User newUser = new User(username, password, email, false);
-            db.addUser(newUser);
             try {
-                db.saveDatabase();
+                db.commit();
             } catch (IOException e) {
                 e.printStackTrace();
+                sendError(Protocol.ERROR_DATABASE_ERROR);
+                return;
             }
             sendSuccess("Account created successfully");
-        }
+        });
     }
 
 
@@ -303,58 +613,86 @@ public class ClientHandler implements Runnable, IClientHandler {
 
         String usernameToDelete = currentUser.getUsername();
 
-        synchronized (db) {
-            // Cancel all reservations for this user
-            List<Reservation> userReservations = new ArrayList<>(currentUser.getReservations());
-            for (Reservation res : userReservations) {
-                res.cancelAllSeats();
-                db.removeReservation(res.getBookingID());
-            }
+        // Remove the user from the database, cancelling all their reservations
+        db.removeUser(usernameToDelete);
 
-            // Remove the user from the database
-            db.removeUser(usernameToDelete);
+        try {
+            db.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+            sendError("Failed to delete account");
+            return;
+        }
 
-            try {
-                db.saveDatabase();
-            } catch (IOException e) {
-                e.printStackTrace();
-                sendError("Failed to delete account");
-                return;
-            }
+        // Log out the user
+        this.currentUser = null;
+        this.isAuthenticated = false;
+
+        sendSuccess("Account deleted successfully");
+    }
 
-            // Log out the user
-            this.currentUser = null;
-            this.isAuthenticated = false;
 
-            sendSuccess("Account deleted successfully");
+
+    /**
+     * BINARY replies SUCCESS|BINARY in text; every line after that, in both directions, is a
+     * BinaryProtocol frame. The client must wait for the reply before sending frames.
+     */
+    private void handleBinary() {
+        if (frameOut != null || responseTag != null) {
+            sendError("Binary mode must be requested once, untagged");
+            return;
         }
+        try {
+            if (socket != null) {
+                in = new LineReader(new BinaryProtocol.FrameReader(socket.getInputStream()));
+            } else {
+                binaryInput.run(); // before the reply goes out, so no frame is read as a line
+            }
+        } catch (IOException e) {
+            sendError("Could not switch to binary mode");
+            return;
+        }
+        sendSuccess(Protocol.BINARY);
+        out.flush();
+        frameOut = new BinaryProtocol.FrameWriter(rawOut);
+        out = new PrintWriter(frameOut, false);
+        responseWriter = null;
     }
 
 
-
+    /**
+     * Copies the cached, pre-encoded movie list into the reply; see MovieListCache. A tagged
+     * request gets its tag before each cached line. In binary mode the cached lines are framed.
+     */
     private void handleListMovies() {
-        synchronized (db) {
-            List<Movie> movies = db.getMovies();
-            send(Protocol.SUCCESS + Protocol.DELIMITER + movies.size());
-
-            for (Movie movie : movies) {
-
-                String movieData = String.join(Protocol.DELIMITER,
-                        Protocol.MOVIE,
-                        movie.getTitle(), // Using title as ID
-                        movie.getTitle(),
-                        movie.getGenre() != null ? movie.getGenre() : "",
-                        movie.getRating() != null ? movie.getRating() : "",
-                        String.valueOf(movie.getRuntime())
-                );
-                send(movieData);
+        MovieListCache.Entry response = server.getMovieListCache().get();
+        if (responseWriter == null) { // frames are built from text lines
+            for (String line : response.lines) {
+                send(line);
             }
-
-            send(Protocol.END_LIST);
+            return;
+        }
+        try {
+            if (responseTag == null) {
+                responseWriter.writeEncoded(response.encoded, 0, response.encoded.length);
+                return;
+            }
+            int[] starts = response.lineStarts;
+            for (int i = 0; i < response.lines.length; i++) {
+                out.print(responseTag);
+                responseWriter.writeEncoded(response.encoded, starts[i], starts[i + 1] - starts[i]);
+            }
+        } catch (IOException e) {
+            // ignore, like PrintWriter does: the read loop ends once the connection is gone
         }
     }
 
 
+    /**
+     * LIST_SHOWTIMES|title lists the movie's whole schedule, earliest first.
+     * LIST_SHOWTIMES|title|days lists only showtimes that have not started and begin within the
+     * next given number of days.
+     */
     private void handleListShowtimes(String[] parts) {
         if (parts.length < 2) {
             sendError(Protocol.ERROR_INVALID_FORMAT);
@@ -362,51 +700,61 @@ public class ClientHandler implements Runnable, IClientHandler {
         }
 
         String movieTitle = parts[1];
-
-        synchronized (db) {
-            List<Showtime> allShowtimes = db.getShowtimes();
-            List<Integer> indicesForMovie = new ArrayList<Integer>();
-
-            for (int i = 0; i < allShowtimes.size(); i++) {
-                Showtime st = allShowtimes.get(i);
-                if (st.getMovie().getTitle().equals(movieTitle)) {
-                    indicesForMovie.add(Integer.valueOf(i));
-                }
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        if (parts.length >= 3) {
+            int days;
+            try {
+                days = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                sendError(Protocol.ERROR_INVALID_FORMAT);
+                return;
             }
-
-            int count = indicesForMovie.size();
-
-            send(Protocol.SUCCESS + Protocol.DELIMITER + count);
-
-            if (count == 0) {
-                send(Protocol.END_LIST);
+            if (days < 0) {
+                sendError(Protocol.ERROR_INVALID_FORMAT);
                 return;
             }
+            from = LocalDateTime.now();
+            to = from.plusDays(days);
+        }
 
-            for (int j = 0; j < indicesForMovie.size(); j++) {
-                int idx = indicesForMovie.get(j).intValue();
-                Showtime st = allShowtimes.get(idx);
-
-                int totalSeats = st.getRowCount() * st.getColCount();
-                int availableSeats = st.getAvailableSeatCount();
-
-                String showtimeData = String.join(Protocol.DELIMITER,
-                        Protocol.SHOWTIME,
-                        "ST_" + idx,
-                        st.getDateTime().format(DATE_TIME_FORMATTER),
-                        String.valueOf(availableSeats),
-                        String.valueOf(totalSeats),
-                        String.format("%.2f", st.getDynamicPrice()),
-                        st.getAuditoriumName() != null ? st.getAuditoriumName() : ""
-                );
-                send(showtimeData);
-            }
+        List<Showtime> showtimesForMovie = db.getShowtimesForMovie(movieTitle, from, to);
+
+        int count = showtimesForMovie.size();
 
+        send(Protocol.SUCCESS + Protocol.DELIMITER + count);
+
+        if (count == 0) {
             send(Protocol.END_LIST);
+            return;
         }
+
+        for (Showtime st : showtimesForMovie) {
+            int totalSeats = st.getRowCount() * st.getColCount();
+            int availableSeats = st.getAvailableSeatCount();
+
+            String showtimeData = String.join(Protocol.DELIMITER,
+                    Protocol.SHOWTIME,
+                    SHOWTIME_ID_PREFIX + st.getId(),
+                    st.getDateTime().format(DATE_TIME_FORMATTER),
+                    String.valueOf(availableSeats),
+                    String.valueOf(totalSeats),
+                    String.format("%.2f", st.getDynamicPrice()),
+                    st.getAuditoriumName() != null ? st.getAuditoriumName() : ""
+            );
+            send(showtimeData);
+        }
+
+        send(Protocol.END_LIST);
     }
 
 
+    /**
+     * VIEW_SEATS|id sends the full seat map. VIEW_SEATS|id|sinceVersion asks for changes only:
+     * SEAT_DELTA|version|count followed by one SEAT|row:col|available line per changed seat, or,
+     * if those changes are no longer tracked, the full map with the version appended to the
+     * SUCCESS line. Either reply ends with END_SEATS.
+     */
     private void handleViewSeats(String[] parts) {
         if (parts.length < 2) {
             sendError(Protocol.ERROR_INVALID_FORMAT);
@@ -414,6 +762,16 @@ public class ClientHandler implements Runnable, IClientHandler {
         }
 
         String showtimeId = parts[1];
+        long since = -1;
+        if (parts.length >= 3) {
+            try {
+                since = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                sendError(Protocol.ERROR_INVALID_FORMAT);
+                return;
+            }
+        }
+
         Showtime showtime = findShowtimeById(showtimeId);
 
         if (showtime == null) {
@@ -421,26 +779,126 @@ public class ClientHandler implements Runnable, IClientHandler {
             return;
         }
 
-        synchronized (showtime) {
-            int rows = showtime.getRowCount();
-            int cols = showtime.getColCount();
-
-            send(Protocol.SUCCESS + Protocol.DELIMITER + rows + Protocol.DELIMITER + cols);
+        int rows = showtime.getRowCount();
+        int cols = showtime.getColCount();
+        // Read before the seats, so every change up to this version is reflected in what is sent.
+        long version = showtime.getSeatVersion();
+
+        if (since >= 0) {
+            int[] changed = showtime.getChangedSeatsSince(since, version);
+            if (changed != null && changed.length < rows * cols) {
+                send(Protocol.SEAT_DELTA + Protocol.DELIMITER + version + Protocol.DELIMITER + changed.length);
+                for (int seat : changed) {
+                    int r = seat / cols;
+                    int c = seat % cols;
+                    send(Protocol.SEAT + Protocol.DELIMITER + (r + 1) + Protocol.SEAT_DELIMITER + (c + 1)
+                            + Protocol.DELIMITER + (showtime.isSeatAvailable(r, c) ? "1" : "0"));
+                }
+                send(Protocol.END_SEATS);
+                return;
+            }
+        }
 
+        if (frameOut != null && responseTag == null) {
+            BitSet available = new BitSet(rows * cols);
             for (int r = 0; r < rows; r++) {
-                StringBuilder rowData = new StringBuilder();
-                rowData.append(Protocol.ROW).append(Protocol.DELIMITER).append(r + 1);
-
                 for (int c = 0; c < cols; c++) {
-                    rowData.append(Protocol.DELIMITER);
-                    rowData.append(showtime.isSeatAvailable(r, c) ? "1" : "0");
+                    if (showtime.isSeatAvailable(r, c)) {
+                        available.set(r * cols + c);
+                    }
                 }
+            }
+            frameOut.writeSeatMap(rows, cols, since >= 0 ? version : -1, available);
+            return;
+        }
+
+        if (since >= 0) {
+            send(Protocol.SUCCESS + Protocol.DELIMITER + rows + Protocol.DELIMITER + cols
+                    + Protocol.DELIMITER + version);
+        } else {
+            send(Protocol.SUCCESS + Protocol.DELIMITER + rows + Protocol.DELIMITER + cols);
+        }
+
+        for (int r = 0; r < rows; r++) {
+            StringBuilder rowData = new StringBuilder();
+            rowData.append(Protocol.ROW).append(Protocol.DELIMITER).append(r + 1);
 
-                send(rowData.toString());
+            for (int c = 0; c < cols; c++) {
+                rowData.append(Protocol.DELIMITER);
+                rowData.append(showtime.isSeatAvailable(r, c) ? "1" : "0");
             }
 
-            send(Protocol.END_SEATS);
+            send(rowData.toString());
         }
+
+        send(Protocol.END_SEATS);
+    }
+
+
+    /**
+     * SUBSCRIBE_SEATS|id[|sinceVersion] replies SUCCESS|id|version and from then on pushes
+     * SEAT_UPDATE|id|version|row:col:available,... lines whenever seats of that showtime change.
+     * With sinceVersion (from an earlier VIEW_SEATS) changes made after it are pushed right away.
+     */
+    private void handleSubscribeSeats(String[] parts) {
+        if (parts.length < 2) {
+            sendError(Protocol.ERROR_INVALID_FORMAT);
+            return;
+        }
+
+        Showtime showtime = findShowtimeById(parts[1]);
+        if (showtime == null) {
+            sendError("Showtime not found");
+            return;
+        }
+
+        long version = showtime.getSeatVersion();
+        long since = version;
+        if (parts.length >= 3) {
+            try {
+                since = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                sendError(Protocol.ERROR_INVALID_FORMAT);
+                return;
+            }
+            since = Math.min(since, version);
+        }
+
+        SeatSubscriptions subscriptions = server.getSeatSubscriptions();
+        if (seatSubscriber == null) {
+            seatSubscriber = subscriptions.newSubscriber(this::pushesQueued);
+            if (pushWakeup == null) {
+                pushWriter = new Thread(this::writePushes, "seat-push-writer");
+                pushWriter.setDaemon(true);
+                pushWriter.start();
+            }
+        }
+        // subscribe() may queue a push at once; the outputLock held here keeps it behind the reply.
+        if (!subscriptions.subscribe(seatSubscriber, showtime, since)) {
+            sendError("Too many seat subscriptions");
+            return;
+        }
+        send(Protocol.SUCCESS + Protocol.DELIMITER + SHOWTIME_ID_PREFIX + showtime.getId()
+                + Protocol.DELIMITER + version);
+    }
+
+
+    private void handleUnsubscribeSeats(String[] parts) {
+        if (parts.length < 2) {
+            sendError(Protocol.ERROR_INVALID_FORMAT);
+            return;
+        }
+
+        Showtime showtime = findShowtimeById(parts[1]);
+        if (showtime == null) {
+            sendError("Showtime not found");
+            return;
+        }
+
+        if (seatSubscriber != null) {
+            server.getSeatSubscriptions().unsubscribe(seatSubscriber, showtime.getId());
+        }
+        sendSuccess("Unsubscribed");
     }
 
 
@@ -489,91 +947,61 @@ public class ClientHandler implements Runnable, IClientHandler {
 
         // *** End of phase 3 addition ***
 
-        List<int[]> seatPositions = new ArrayList<>();
-        for (int i = 3; i < 3 + seatCount; i++) {
-            String[] rowCol = parts[i].split(Protocol.SEAT_DELIMITER);
-            if (rowCol.length != 2) {
-                sendError("Invalid seat format (expected row:col)");
-                return;
-            }
-
-            try {
-                int userRow = Integer.parseInt(rowCol[0]);
-                int userCol = Integer.parseInt(rowCol[1]);
-
-
-                int row = userRow - 1;
-                int col = userCol - 1;
-
-                seatPositions.add(new int[]{row, col});
-            } catch (NumberFormatException e) {
-                sendError("Invalid numeric seat coordinates");
-                return;
-            }
+        String seatError = seatSelection.parse(parts, 3, seatCount, showtime.getRowCount(), showtime.getColCount());
+        if (seatError != null) {
+            sendError(seatError);
+            return;
         }
+        int[] rowIndices = seatSelection.rows();
+        int[] colIndices = seatSelection.cols();
 
+        // Price is taken at the occupancy seen before this booking, as before.
+        double seatPrice = showtime.getDynamicPrice();
 
-        for (int i = 0; i < seatPositions.size(); i++) {
-            for (int j = i + 1; j < seatPositions.size(); j++) {
-                int[] a = seatPositions.get(i);
-                int[] b = seatPositions.get(j);
-                if (a[0] == b[0] && a[1] == b[1]) {
-                    sendError("Duplicate seat selection detected");
-                    return;
-                }
-            }
+        // All-or-nothing, lock-free: no showtime lock is held across the db update or commit below.
+        if (!showtime.tryBookSeats(rowIndices, colIndices, seatCount)) {
+            sendError("One or more selected seats are already booked");
+            return;
         }
 
-        synchronized (showtime) {
-
-
-            for (int[] pos : seatPositions) {
-                int row = pos[0];
-                int col = pos[1];
-
-                if (row < 0 || row >= showtime.getRowCount() ||
-                        col < 0 || col >= showtime.getColCount()) {
-                    sendError("Seat out of range");
-                    return;
-                }
+        ArrayList<Seat> bookedSeats = new ArrayList<>(seatCount);
+        for (int i = 0; i < seatCount; i++) {
+            bookedSeats.add(new Seat(rowIndices[i], colIndices[i], seatPrice));
+        }
+        String cardNumber = parts[parts.length - 3];
+        String expiry = parts[parts.length - 2];
+        String cvv = parts[parts.length - 1];
 
-                if (!showtime.isSeatAvailable(row, col)) {
-                    sendError("One or more selected seats are already booked");
-                    return;
-                }
-            }
+        Reservation reservation = Reservation.forHeldSeats(currentUser, showtime, bookedSeats, cardNumber, expiry, cvv);
 
+        try {
+            db.addReservation(reservation);
+        } catch (RuntimeException e) {
+            // Nothing refers to the seats held above (e.g. the account was deleted meanwhile): free them.
+            e.printStackTrace();
+            reservation.cancelAllSeats();
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
+        }
 
-            ArrayList<Seat> bookedSeats = new ArrayList<>();
-            for (int[] pos : seatPositions) {
-                Seat seat = new Seat(pos[0], pos[1], showtime.getDynamicPrice());
-                bookedSeats.add(seat);
-            }
-            String cardNumber = parts[parts.length - 3];
-            String expiry = parts[parts.length - 2];
-            String cvv = parts[parts.length - 1];
-
-            Reservation reservation = new Reservation (currentUser, showtime, bookedSeats, cardNumber, expiry, cvv);
-
-            synchronized (db) {
-                db.addReservation(reservation);
-                currentUser.addReservation(reservation);
-                try {
-                    db.saveDatabase();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        try {
+            db.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // Not durable, so not confirmed: give the seats back (the cancellation is journaled too).
+            db.cancelReservation(reservation.getBookingID());
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
+        }
 
-            double totalCost = reservation.getTotalPrice();
-            String bookingId = reservation.getBookingID();
+        double totalCost = reservation.getTotalPrice();
+        String bookingId = reservation.getBookingID();
 
-            sendSuccess(
-                    bookingId + Protocol.DELIMITER +
-                            String.format("%.2f", totalCost) + Protocol.DELIMITER +
-                            "Booking confirmed"
-            );
-        }
+        sendSuccess(
+                bookingId + Protocol.DELIMITER +
+                        String.format("%.2f", totalCost) + Protocol.DELIMITER +
+                        "Booking confirmed"
+        );
     }
 
 
@@ -590,32 +1018,34 @@ public class ClientHandler implements Runnable, IClientHandler {
 
         String bookingId = parts[1];
 
-        synchronized (db) {
-            Reservation reservation = db.findReservation(bookingId);
+        Reservation reservation = db.findReservation(bookingId);
 
-            if (reservation == null) {
-                sendError("Booking not found");
-                return;
-            }
+        if (reservation == null) {
+            sendError("Booking not found");
+            return;
+        }
 
 
-            if (!reservation.getUser().getUsername().equals(currentUser.getUsername())) {
-                sendError("Not authorized to cancel this booking");
-                return;
-            }
+        if (!reservation.getUser().getUsername().equals(currentUser.getUsername())) {
+            sendError("Not authorized to cancel this booking");
+            return;
+        }
 
 
-            reservation.cancelAllSeats();
-            db.removeReservation(bookingId);
-            currentUser.removeReservation(bookingId);
-            try {
-                db.saveDatabase();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        // Null if another connection of this user cancelled it since the lookup.
+        if (db.cancelReservation(bookingId) == null) {
+            sendError("Booking not found");
+            return;
+        }
 
-            sendSuccess("Reservation cancelled");
+        try {
+            db.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
         }
+        sendSuccess("Reservation cancelled");
     }
 
 
@@ -625,36 +1055,54 @@ public class ClientHandler implements Runnable, IClientHandler {
             return;
         }
 
-        synchronized (db) {
-            List<Reservation> userReservations = currentUser.getReservations();
-            send(Protocol.SUCCESS + Protocol.DELIMITER + userReservations.size());
+        // Bookings of screenings that have ended live in the archive, not on the user.
+        List<Archive.ArchivedBooking> archived;
+        try {
+            archived = db.getArchivedBookings(currentUser.getUsername());
+        } catch (IOException e) {
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
+        }
+        // A copy of the user's list, so no lock is needed; a booking cancelled meanwhile may be listed without seats.
+        List<Reservation> userReservations = currentUser.getReservations();
+        send(Protocol.SUCCESS + Protocol.DELIMITER + (archived.size() + userReservations.size()));
+
+        for (Archive.ArchivedBooking booking : archived) {
+            send(String.join(Protocol.DELIMITER,
+                    Protocol.BOOKING,
+                    booking.getBookingID(),
+                    booking.getMovieTitle(),
+                    booking.getDateTime().format(DATE_TIME_FORMATTER),
+                    String.join(Protocol.SEAT_SEPARATOR, booking.getSeatLabels()),
+                    String.format("%.2f", booking.getTotalPrice())
+            ));
+        }
 
-            for (int i = 0; i < userReservations.size(); i++) {
-                Reservation res = userReservations.get(i);
+        for (int i = 0; i < userReservations.size(); i++) {
+            Reservation res = userReservations.get(i);
 
-                StringBuilder seatList = new StringBuilder();
-                ArrayList<Seat> seats = res.getBookedSeats();
-                for (int j = 0; j < seats.size(); j++) {
-                    if (j > 0) {
-                        seatList.append(Protocol.SEAT_SEPARATOR);
-                    }
-                    seatList.append(seats.get(j).getSeatLabel());
+            StringBuilder seatList = new StringBuilder();
+            ArrayList<Seat> seats = res.getBookedSeats();
+            for (int j = 0; j < seats.size(); j++) {
+                if (j > 0) {
+                    seatList.append(Protocol.SEAT_SEPARATOR);
                 }
-
-
-                String bookingData = String.join(Protocol.DELIMITER,
-                        Protocol.BOOKING,
-                        res.getBookingID(),
-                        res.getShowtime().getMovie().getTitle(),
-                        res.getShowtime().getDateTime().format(DATE_TIME_FORMATTER),
-                        seatList.toString(),
-                        String.format("%.2f", res.getTotalPrice())
-                );
-                send(bookingData);
+                seatList.append(seats.get(j).getSeatLabel());
             }
 
-            send(Protocol.END_LIST);
+
+            String bookingData = String.join(Protocol.DELIMITER,
+                    Protocol.BOOKING,
+                    res.getBookingID(),
+                    res.getShowtime().getMovie().getTitle(),
+                    res.getShowtime().getDateTime().format(DATE_TIME_FORMATTER),
+                    seatList.toString(),
+                    String.format("%.2f", res.getTotalPrice())
+            );
+            send(bookingData);
         }
+
+        send(Protocol.END_LIST);
     }
 
 
@@ -686,21 +1134,19 @@ public class ClientHandler implements Runnable, IClientHandler {
             return;
         }
 
-        synchronized (db) {
-            if (db.movieExists(title)) {
-                sendError("Movie already exists");
-                return;
-            }
+        if (!db.addMovieIfAbsent(new Movie(title, genre, rating, runtime, null))) {
+            sendError("Movie already exists");
+            return;
+        }
 
-            Movie newMovie = new Movie(title, genre, rating, runtime, null);
-            db.addMovie(newMovie);
-            try {
-                db.saveDatabase();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            sendSuccess("Movie added with ID: " + title);
+        try {
+            db.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
         }
+        sendSuccess("Movie added with ID: " + title);
     }
 
 
@@ -744,40 +1190,30 @@ public class ClientHandler implements Runnable, IClientHandler {
             return;
         }
 
-        synchronized (db) {
-            Movie movie = null;
-            List<Movie> allMovies = db.getMovies();
-            for (int i = 0; i < allMovies.size(); i++) {
-                Movie m = allMovies.get(i);
-                if (m.getTitle().equals(movieTitle)) {
-                    movie = m;
-                    break;
-                }
-            }
-
-            if (movie == null) {
-                sendError("Movie not found");
-                return;
-            }
+        Movie movie = db.findMovie(movieTitle);
 
+        if (movie == null) {
+            sendError("Movie not found");
+            return;
+        }
 
-            if (db.isShowtimeConflict(movie, dateTime)) {
-                sendError("Time conflict detected for this movie and time");
-                return;
-            }
 
-            Showtime newShowtime = new Showtime(movie, dateTime, rows, cols, basePrice, auditorium);
-            db.addShowtime(newShowtime);
-            try {
-                db.saveDatabase();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        Showtime newShowtime = new Showtime(movie, dateTime, rows, cols, basePrice, auditorium);
+        if (!db.addShowtimeIfAbsent(newShowtime)) {
+            sendError("Time conflict detected for this movie and time");
+            return;
+        }
 
+        int newId = newShowtime.getId();
 
-            int newIndex = db.getShowtimes().size() - 1;
-            sendSuccess("Showtime added with ID: ST_" + newIndex);
+        try {
+            db.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
         }
+        sendSuccess("Showtime added with ID: " + SHOWTIME_ID_PREFIX + newId);
     }
 
 
@@ -799,33 +1235,51 @@ public class ClientHandler implements Runnable, IClientHandler {
 
         String username = parts[1];
 
-        synchronized (db) {
-            User user = db.findUser(username);
-
-            if (user == null) {
-                sendError("User not found");
-                return;
-            }
+        User user = db.findUser(username);
 
-            if (user.isAdmin()) {
-                sendError("User is already an admin");
-                return;
-            }
+        if (user == null) {
+            sendError("User not found");
+            return;
+        }
 
-            // Actually promote the user and persist
-            db.promoteUserToAdmin(username);
+        if (user.isAdmin()) {
+            sendError("User is already an admin");
+            return;
+        }
 
-            // If the current user just promoted themselves, update flag
-            if (currentUser.getUsername().equals(username)) {
-                currentUser.setAdmin(true);
-            }
+        // Actually promote the user and persist
+        db.promoteUserToAdmin(username);
+        // Already committed inside; this returns at once unless that flush failed.
+        try {
+            db.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
+        }
 
-            sendSuccess("User promoted to admin");
+        // If the current user just promoted themselves, update flag
+        if (currentUser.getUsername().equals(username)) {
+            currentUser.setAdmin(true);
         }
+
+        sendSuccess("User promoted to admin");
     }
 
 
-    private void handleAdminViewAllBookings() {
+    /**
+     * ADMIN_VIEW_ALL_BOOKINGS lists every reservation. With paging parameters,
+     * ADMIN_VIEW_ALL_BOOKINGS|cursor|limit[|movie|fromDate|toDate|username] lists at most limit
+     * reservations in booking order after the cursor (empty for the first page) and replies
+     * SUCCESS|count|nextCursor, where nextCursor is empty after the last page. Empty filters match
+     * everything; the dates (yyyy-MM-dd, inclusive) apply to the showtime.
+     */
+    private void handleAdminViewAllBookings(String[] parts) {
+        if (parts.length == 1) {
+            handleAdminViewAllBookings();
+            return;
+        }
+
         if (!isAuthenticated) {
             sendError(Protocol.ERROR_AUTH_REQUIRED);
             return;
@@ -836,58 +1290,152 @@ public class ClientHandler implements Runnable, IClientHandler {
             return;
         }
 
-        synchronized (db) {
-            List<Reservation> allReservations = db.getReservations();
-            send(Protocol.SUCCESS + Protocol.DELIMITER + allReservations.size());
+        if (parts.length < 3 || parts.length > 7) {
+            sendError(Protocol.ERROR_INVALID_FORMAT);
+            return;
+        }
 
-            for (int i = 0; i < allReservations.size(); i++) {
-                Reservation res = allReservations.get(i);
+        String cursor = parts[1].isEmpty() ? null : parts[1];
+        int limit;
+        LocalDate from;
+        LocalDate to;
+        try {
+            limit = Integer.parseInt(parts[2]);
+            from = parts.length > 4 && !parts[4].isEmpty() ? LocalDate.parse(parts[4]) : null;
+            to = parts.length > 5 && !parts[5].isEmpty() ? LocalDate.parse(parts[5]) : null;
+        } catch (NumberFormatException | DateTimeParseException e) {
+            sendError(Protocol.ERROR_INVALID_FORMAT);
+            return;
+        }
+        if (limit <= 0 || limit > MAX_BOOKINGS_PAGE) {
+            sendError("Page size must be between 1 and " + MAX_BOOKINGS_PAGE);
+            return;
+        }
+        String movie = parts.length > 3 && !parts[3].isEmpty() ? parts[3] : null;
+        String username = parts.length > 6 && !parts[6].isEmpty() ? parts[6] : null;
 
+        ReservationPage page;
+        try {
+            page = db.getReservationPage(cursor, limit, res -> {
+                LocalDate day = res.getShowtime().getDateTime().toLocalDate();
+                return (movie == null || movie.equals(res.getShowtime().getMovie().getTitle()))
+                        && (username == null || username.equals(res.getUser().getUsername()))
+                        && (from == null || !day.isBefore(from))
+                        && (to == null || !day.isAfter(to));
+            });
+        } catch (IllegalArgumentException e) {
+            sendError(Protocol.ERROR_INVALID_FORMAT);
+            return;
+        }
 
-                StringBuilder seatList = new StringBuilder();
-                ArrayList<Seat> seats = res.getBookedSeats();
-                for (int j = 0; j < seats.size(); j++) {
-                    if (j > 0) {
-                        seatList.append(Protocol.SEAT_SEPARATOR);
-                    }
-                    seatList.append(seats.get(j).getSeatLabel());
-                }
+        // The page is a copy read without locks; it is formatted and sent as is.
+        List<Reservation> reservations = page.getReservations();
+        String next = page.getNextCursor();
+        send(Protocol.SUCCESS + Protocol.DELIMITER + reservations.size() + Protocol.DELIMITER
+                + (next != null ? next : ""));
+        for (Reservation res : reservations) {
+            send(bookingDetail(res));
+        }
+        send(Protocol.END_LIST);
+    }
 
+    /**
+     * Lists every reservation. The list is copied without locks and sent as is.
+     */
+    private void handleAdminViewAllBookings() {
+        if (!isAuthenticated) {
+            sendError(Protocol.ERROR_AUTH_REQUIRED);
+            return;
+        }
 
-                String bookingData = String.join(Protocol.DELIMITER,
-                        Protocol.BOOKING_DETAIL,
-                        res.getBookingID(),
-                        res.getUser().getUsername(),
-                        res.getShowtime().getMovie().getTitle(),
-                        res.getShowtime().getDateTime().format(DATE_TIME_FORMATTER),
-                        seatList.toString(),
-                        String.format("%.2f", res.getTotalPrice())
-                );
-                send(bookingData);
+        if (!currentUser.isAdmin()) {
+            sendError(Protocol.ERROR_ADMIN_REQUIRED);
+            return;
+        }
+
+        List<Reservation> allReservations = db.getReservations();
+        send(Protocol.SUCCESS + Protocol.DELIMITER + allReservations.size());
+        for (Reservation res : allReservations) {
+            send(bookingDetail(res));
+        }
+        send(Protocol.END_LIST);
+    }
+
+    private static String bookingDetail(Reservation res) {
+        StringBuilder seatList = new StringBuilder();
+        ArrayList<Seat> seats = res.getBookedSeats();
+        for (int j = 0; j < seats.size(); j++) {
+            if (j > 0) {
+                seatList.append(Protocol.SEAT_SEPARATOR);
             }
+            seatList.append(seats.get(j).getSeatLabel());
+        }
 
-            send(Protocol.END_LIST);
+        return String.join(Protocol.DELIMITER,
+                Protocol.BOOKING_DETAIL,
+                res.getBookingID(),
+                res.getUser().getUsername(),
+                res.getShowtime().getMovie().getTitle(),
+                res.getShowtime().getDateTime().format(DATE_TIME_FORMATTER),
+                seatList.toString(),
+                String.format("%.2f", res.getTotalPrice())
+        );
+    }
+
+
+    /**
+     * Lists the bookings of archived (past) showtimes, in the same format as ADMIN_VIEW_ALL_BOOKINGS.
+     * Reads the archive file without holding any database lock.
+     */
+    private void handleAdminViewArchive() {
+        if (!isAuthenticated) {
+            sendError(Protocol.ERROR_AUTH_REQUIRED);
+            return;
+        }
+
+        if (!currentUser.isAdmin()) {
+            sendError(Protocol.ERROR_ADMIN_REQUIRED);
+            return;
         }
+
+        List<Archive.ArchivedBooking> archived;
+        try {
+            archived = db.getArchivedBookings();
+        } catch (IOException e) {
+            e.printStackTrace();
+            sendError(Protocol.ERROR_DATABASE_ERROR);
+            return;
+        }
+
+        send(Protocol.SUCCESS + Protocol.DELIMITER + archived.size());
+        for (Archive.ArchivedBooking booking : archived) {
+            send(String.join(Protocol.DELIMITER,
+                    Protocol.BOOKING_DETAIL,
+                    booking.getBookingID(),
+                    booking.getUsername(),
+                    booking.getMovieTitle(),
+                    booking.getDateTime().format(DATE_TIME_FORMATTER),
+                    String.join(Protocol.SEAT_SEPARATOR, booking.getSeatLabels()),
+                    String.format("%.2f", booking.getTotalPrice())
+            ));
+        }
+        send(Protocol.END_LIST);
     }
 
 
+    /**
+     * Resolves a protocol showtime ID ("ST_" + numeric ID) with a single index lookup.
+     */
     private Showtime findShowtimeById(String showtimeId) {
-        if (!showtimeId.startsWith("ST_")) {
+        if (!showtimeId.startsWith(SHOWTIME_ID_PREFIX)) {
             return null;
         }
 
         try {
-            int index = Integer.parseInt(showtimeId.substring(3));
-            synchronized (db) {
-                List<Showtime> showtimes = db.getShowtimes();
-                if (index >= 0 && index < showtimes.size()) {
-                    return showtimes.get(index);
-                }
-            }
+            int id = Integer.parseInt(showtimeId.substring(SHOWTIME_ID_PREFIX.length()));
+            return db.findShowtimeById(id);
         } catch (NumberFormatException e) {
             return null;
         }
-
-        return null;
     }
 }
@@ -0,0 +1,107 @@
+package server;
+
+/**
+ * Splits protocol lines and recognizes their command without regexes or case conversion.
+ *
+ * Notes:
+ * - The command name is looked up case-insensitively in a precomputed open-addressing table,
+ *   straight from the characters of the line, so no upper-cased copy is made.
+ * - split() scans the line once to size the array and once to cut it. parts[0] is the canonical
+ *   command name (a shared constant) when the command is known; the other tokens are substrings,
+ *   with empty tokens kept, as String.split(regex, -1) did.
+ */
+final class CommandTokenizer {
+
+    enum Command {
+        LOGIN(Protocol.LOGIN),
+        REGISTER(Protocol.REGISTER),
+        LOGOUT(Protocol.LOGOUT),
+        DELETE_ACCOUNT(Protocol.DELETE_ACCOUNT),
+        BINARY(Protocol.BINARY),
+        LIST_MOVIES(Protocol.LIST_MOVIES),
+        LIST_SHOWTIMES(Protocol.LIST_SHOWTIMES),
+        VIEW_SEATS(Protocol.VIEW_SEATS),
+        SUBSCRIBE_SEATS(Protocol.SUBSCRIBE_SEATS),
+        UNSUBSCRIBE_SEATS(Protocol.UNSUBSCRIBE_SEATS),
+        BOOK(Protocol.BOOK),
+        CANCEL(Protocol.CANCEL),
+        MY_BOOKINGS(Protocol.MY_BOOKINGS),
+        ADMIN_ADD_MOVIE(Protocol.ADMIN_ADD_MOVIE),
+        ADMIN_ADD_SHOWTIME(Protocol.ADMIN_ADD_SHOWTIME),
+        ADMIN_PROMOTE(Protocol.ADMIN_PROMOTE),
+        ADMIN_VIEW_ALL_BOOKINGS(Protocol.ADMIN_VIEW_ALL_BOOKINGS),
+        ADMIN_VIEW_ARCHIVE(Protocol.ADMIN_VIEW_ARCHIVE);
+
+        final String wireName;
+
+        Command(String wireName) {
+            this.wireName = wireName;
+        }
+    }
+
+    private static final char DELIMITER = Protocol.DELIMITER.charAt(0);
+    private static final int TABLE_SIZE = 64; // power of two, well above twice the command count
+    private static final Command[] TABLE = new Command[TABLE_SIZE];
+
+    static {
+        for (Command command : Command.values()) {
+            String name = command.wireName;
+            int slot = hash(name, 0, name.length()) & (TABLE_SIZE - 1);
+            while (TABLE[slot] != null) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            TABLE[slot] = command;
+        }
+    }
+
+    private CommandTokenizer() {
+    }
+
+    /**
+     * Returns the command the line starts with (in any letter case), or null if it is unknown.
+     */
+    static Command command(String line) {
+        int end = line.indexOf(DELIMITER);
+        if (end < 0) {
+            end = line.length();
+        }
+        int slot = hash(line, 0, end) & (TABLE_SIZE - 1);
+        Command command;
+        while ((command = TABLE[slot]) != null) {
+            String name = command.wireName;
+            if (name.length() == end && name.regionMatches(true, 0, line, 0, end)) {
+                return command;
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Splits the line at every delimiter.
+     *
+     * @param command the line's command from command(line), or null
+     */
+    static String[] split(String line, Command command) {
+        int count = 1;
+        for (int i = line.indexOf(DELIMITER); i >= 0; i = line.indexOf(DELIMITER, i + 1)) {
+            count++;
+        }
+        String[] parts = new String[count];
+        int start = 0;
+        for (int n = 0; n < count; n++) {
+            int end = n == count - 1 ? line.length() : line.indexOf(DELIMITER, start);
+            parts[n] = n == 0 && command != null ? command.wireName : line.substring(start, end);
+            start = end + 1;
+        }
+        return parts;
+    }
+
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toUpperCase(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,100 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a connection's input into protocol lines and tells whether a complete line is already
+ * buffered, so the handler knows when the commands received so far are all answered.
+ *
+ * Notes:
+ * - Reader.ready() cannot tell that: after "CMD1\nCMD2-part" it is true while the rest of CMD2
+ *   is still on its way, and a reply flushed only when it is false would wait for that.
+ * - Lines end at '\n' and a '\r' before it is dropped, as in the NIO engine. Text left at the end
+ *   of the stream is returned as a last line, like BufferedReader does.
+ * - The buffer grows to hold the longest line seen; each read takes whatever the underlying
+ *   reader has, so a pipelined batch usually arrives in one go.
+ */
+final class LineReader implements Closeable {
+
+    static final int INITIAL_BUFFER = 8 * 1024;
+
+    private final Reader in;
+    private char[] buf = new char[INITIAL_BUFFER];
+    private int start;    // first char not yet returned
+    private int end;      // end of the chars read so far
+    private int scanned;  // chars after start already known to hold no '\n'
+
+    LineReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the next line without its terminator, or null at the end of the stream. Blocks
+     * only when no complete line is buffered.
+     */
+    String readLine() throws IOException {
+        int newline;
+        while ((newline = findNewline()) < 0) {
+            if (!fill()) {
+                if (start == end) {
+                    return null;
+                }
+                String last = new String(buf, start, end - start);
+                start = end;
+                scanned = 0;
+                return last;
+            }
+        }
+        int len = newline - start;
+        if (len > 0 && buf[newline - 1] == '\r') {
+            len--;
+        }
+        String line = new String(buf, start, len);
+        start = newline + 1;
+        scanned = 0;
+        return line;
+    }
+
+    /**
+     * True if readLine() can return a line without reading from the stream.
+     */
+    boolean hasLine() {
+        return findNewline() >= 0;
+    }
+
+    private int findNewline() {
+        for (int i = start + scanned; i < end; i++) {
+            if (buf[i] == '\n') {
+                return i;
+            }
+        }
+        scanned = end - start;
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buf.length) {
+            char[] larger = new char[buf.length * 2];
+            System.arraycopy(buf, 0, larger, 0, end);
+            buf = larger;
+        }
+        int n = in.read(buf, end, buf.length - end);
+        if (n < 0) {
+            return false;
+        }
+        end += n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
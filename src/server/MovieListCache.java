@@ -0,0 +1,86 @@
+package server;
+
+import database.Database;
+import movie.Movie;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Pre-rendered LIST_MOVIES response.
+ *
+ * The whole reply (SUCCESS count, every MOVIE line and END_LIST) is kept already encoded to UTF-8,
+ * tagged with the catalog version it was built from. A request whose version still matches is
+ * served by copying those bytes, without taking the movies lock or encoding anything; adding or
+ * removing a movie bumps the version, and the next request rebuilds the reply.
+ *
+ * Notes:
+ * - lineStarts marks where each line begins in the bytes, so a tagged request copies the lines
+ *   one by one after its tag instead of splitting the text again.
+ * - The lines are also kept as strings for binary mode, whose frames are built from text lines.
+ */
+class MovieListCache {
+
+    private final Database db;
+    private volatile Entry entry;
+
+    static final class Entry {
+        final long version;
+        final String[] lines;     // without line separators
+        final byte[] encoded;     // every line in UTF-8, each followed by the line separator
+        final int[] lineStarts;   // offset of line i in encoded; one more entry for the end
+
+        private Entry(long version, String[] lines) {
+            this.version = version;
+            this.lines = lines;
+            byte[] newline = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + lines.length * 64);
+            lineStarts = new int[lines.length + 1];
+            for (int i = 0; i < lines.length; i++) {
+                lineStarts[i] = bytes.size();
+                bytes.writeBytes(lines[i].getBytes(StandardCharsets.UTF_8));
+                bytes.writeBytes(newline);
+            }
+            lineStarts[lines.length] = bytes.size();
+            encoded = bytes.toByteArray();
+        }
+    }
+
+    MovieListCache(Database db) {
+        this.db = db;
+    }
+
+    /**
+     * Returns the response for the current catalog.
+     */
+    Entry get() {
+        Entry current = entry;
+        if (current != null && current.version == db.getCatalogVersion()) {
+            return current;
+        }
+        // The version is read before the list, so the list is at least that new: an entry may be
+        // rebuilt once more than needed, but is never tagged with a version newer than its list.
+        long version = db.getCatalogVersion();
+        current = new Entry(version, render(db.getMovies()));
+        entry = current;
+        return current;
+    }
+
+    private static String[] render(List<Movie> movies) {
+        String[] lines = new String[movies.size() + 2];
+        lines[0] = Protocol.SUCCESS + Protocol.DELIMITER + movies.size();
+        int i = 1;
+        for (Movie movie : movies) {
+            lines[i++] = String.join(Protocol.DELIMITER,
+                    Protocol.MOVIE,
+                    movie.getTitle(), // Using title as ID
+                    movie.getTitle(),
+                    movie.getGenre() != null ? movie.getGenre() : "",
+                    movie.getRating() != null ? movie.getRating() : "",
+                    String.valueOf(movie.getRuntime()));
+        }
+        lines[i] = Protocol.END_LIST;
+        return lines;
+    }
+}
@@ -0,0 +1,426 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking server engine: one selector thread owns every socket and a fixed pool of
+ * workers runs the commands.
+ *
+ * Idle clients cost a buffer and a selection key instead of a blocked thread. Incoming bytes
+ * are split into protocol lines and queued on the connection; at most one worker drains a
+ * connection at a time, so its commands still run in the order they were sent, exactly as
+ * with a dedicated ClientHandler thread. The replies to all lines drained in one go are queued
+ * as one buffer and written by the selector thread when the socket is writable. A command that
+ * waits for password hashing releases its worker and is resumed on one when the hash is done.
+ *
+ * A client that sends faster than it reads its replies is pushed back on instead of buffered:
+ * while a connection has MAX_PENDING_LINES lines waiting or OUTBOUND_HIGH_WATER bytes of
+ * replies unsent, the selector stops reading from it (and workers stop running its lines)
+ * until the replies drain below OUTBOUND_LOW_WATER. What is held per connection is then
+ * bounded by those limits plus one read buffer and one batch of replies.
+ */
+public class NioServerEngine implements Runnable {
+
+    /** Lines longer than this are not part of the protocol; the connection is dropped. */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_PENDING_LINES = 128;
+    private static final long OUTBOUND_HIGH_WATER = 1024 * 1024;
+    private static final long OUTBOUND_LOW_WATER = 256 * 1024;
+
+    private final Server server;
+    private final int port;
+    private final ExecutorService workers;
+    private final Queue<Connection> interestUpdates = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+
+    public NioServerEngine(Server server, int port, int workerThreads) {
+        this.server = server;
+        this.port = port;
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+    }
+
+    @Override
+    public void run() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Server running on port " + port + " (NIO)");
+
+            ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (running) {
+                selector.select();
+                updateInterestOps();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key, readBuffer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() != null) {
+                            System.out.println("Client disconnected: " + e.getMessage());
+                            close((Connection) key.attachment());
+                        }
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // stop() closed the selector
+        } catch (IOException e) {
+            if (running) {
+                System.out.println("Failed to start server: " + e.getMessage());
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes every open one and lets in-flight commands finish.
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void shutdown() {
+        try {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Error closing server socket: " + e.getMessage());
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Connection conn = new Connection(channel);
+        conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+        conn.handler.greet();
+    }
+
+    private void read(SelectionKey key, ByteBuffer buffer) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        buffer.clear();
+        int n = conn.channel.read(buffer);
+        if (n < 0) {
+            close(conn);
+            return;
+        }
+        buffer.flip();
+        if (conn.binary) {
+            readFrames(conn, buffer);
+            return;
+        }
+        int added = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                conn.pendingLines.add(conn.takeLine());
+                added++;
+            } else if (conn.lineBuffer.size() >= MAX_LINE_LENGTH) {
+                System.out.println("Client sent an oversized line, disconnecting.");
+                close(conn);
+                return;
+            } else {
+                conn.lineBuffer.write(b);
+            }
+        }
+        if (added > 0) {
+            conn.pendingCount.addAndGet(added);
+            schedule(conn);
+            updateInterest(conn);
+        }
+    }
+
+    /**
+     * Queues every complete BinaryProtocol frame received so far, decoded to its protocol line.
+     * A partial frame stays in lineBuffer until the rest arrives.
+     */
+    private void readFrames(Connection conn, ByteBuffer buffer) throws IOException {
+        conn.lineBuffer.write(buffer.array(), buffer.position(), buffer.remaining());
+        byte[] bytes = conn.lineBuffer.toByteArray();
+        List<String> lines = new ArrayList<>();
+        int consumed = BinaryProtocol.decodeFrames(bytes, bytes.length, lines);
+        conn.lineBuffer.reset();
+        conn.lineBuffer.write(bytes, consumed, bytes.length - consumed);
+        if (!lines.isEmpty()) {
+            conn.pendingLines.addAll(lines);
+            conn.pendingCount.addAndGet(lines.size());
+            schedule(conn);
+            updateInterest(conn);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        ByteBuffer next;
+        while ((next = conn.outbound.peek()) != null) {
+            conn.outboundBytes.addAndGet(-conn.channel.write(next));
+            if (next.hasRemaining()) {
+                break;  // socket buffer full, wait for the next OP_WRITE
+            }
+            conn.outbound.poll();
+        }
+        updateInterest(conn);
+        if (conn.outboundBytes.get() < OUTBOUND_LOW_WATER && !conn.pendingLines.isEmpty()) {
+            schedule(conn); // lines a worker left queued while the replies were backed up
+        }
+    }
+
+    /**
+     * Applies the interest changes connections asked for since the last select: queued output,
+     * or lines drained while reading was paused.
+     */
+    private void updateInterestOps() {
+        Connection conn;
+        while ((conn = interestUpdates.poll()) != null) {
+            updateInterest(conn);
+        }
+    }
+
+    /**
+     * Sets OP_WRITE while output is queued and OP_READ unless the connection is backed up.
+     * Interest ops are only changed on the selector thread.
+     */
+    private void updateInterest(Connection conn) {
+        SelectionKey key = conn.key;
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        long unsent = conn.outboundBytes.get();
+        boolean paused = conn.pendingCount.get() >= MAX_PENDING_LINES
+                || unsent >= (conn.readPaused ? OUTBOUND_LOW_WATER : OUTBOUND_HIGH_WATER);
+        conn.readPaused = paused;
+        key.interestOps((paused ? 0 : SelectionKey.OP_READ)
+                | (conn.outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    /**
+     * Hands a connection to the worker pool unless a worker is already draining it.
+     */
+    private void schedule(Connection conn) {
+        if (conn.scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(() -> drain(conn));
+            } catch (RejectedExecutionException e) {
+                conn.scheduled.set(false);
+            }
+        }
+    }
+
+    private void drain(Connection conn) {
+        do {
+            String line;
+            while (!conn.backedUp() && (line = conn.pendingLines.poll()) != null) {
+                conn.pendingCount.decrementAndGet();
+                if (conn.closed) {
+                    conn.pendingLines.clear();
+                    break;
+                }
+                conn.handler.processLine(line);
+                CompletableFuture<?> hashing = conn.handler.suspendedOnHashing();
+                if (hashing != null) {
+                    // Keep the connection claimed (scheduled stays set) but free this worker;
+                    // the rest of the command and of the batch runs once the hash is done.
+                    conn.handler.flush();
+                    hashing.whenComplete((ignored, e) -> resume(conn));
+                    return;
+                }
+            }
+            conn.handler.writePendingPushes();
+            conn.handler.flush(); // one write for the whole batch of replies
+            conn.scheduled.set(false);
+            if (conn.readPaused) {
+                conn.requestInterestUpdate(); // reading may resume now that the lines are done
+            }
+            // A line or seat update may have arrived between the last poll and releasing the flag.
+            // Lines left while backed up are rescheduled by write() once the replies drain.
+        } while (((!conn.pendingLines.isEmpty() && !conn.backedUp()) || conn.handler.hasPendingPushes())
+                && conn.scheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Finishes a command that was waiting for the hashing pool, then drains the lines queued
+     * behind it. The connection is still claimed by the suspended drain.
+     */
+    private void resume(Connection conn) {
+        try {
+            workers.execute(() -> {
+                conn.handler.resumeHashing();
+                drain(conn);
+            });
+        } catch (RejectedExecutionException e) {
+            conn.scheduled.set(false); // shutting down
+        }
+    }
+
+    private void close(Connection conn) {
+        conn.closed = true;
+        conn.handler.connectionClosed();
+        if (conn.key != null) {
+            conn.key.cancel();
+        }
+        try {
+            conn.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Per-socket state: partial input line, queued lines and queued output.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ChannelOutputStream output = new ChannelOutputStream(this);
+        private final ClientHandler handler;
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+        private final Queue<String> pendingLines = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger(); // size of pendingLines
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicLong outboundBytes = new AtomicLong(); // unsent bytes in outbound
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile boolean binary; // set by the handler on BINARY: input is frames from then on
+        private volatile boolean readPaused; // written by the selector thread only
+        private SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.handler = new ClientHandler(server, output, () -> binary = true, () -> schedule(this));
+        }
+
+        /** Replies queued or still being collected are over the high-water mark. */
+        private boolean backedUp() {
+            return outboundBytes.get() + output.size() >= OUTBOUND_HIGH_WATER;
+        }
+
+        private String takeLine() {
+            byte[] bytes = lineBuffer.toByteArray();
+            lineBuffer.reset();
+            int len = bytes.length;
+            if (len > 0 && bytes[len - 1] == '\r') {
+                len--;
+            }
+            return new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+
+        private void enqueue(ByteBuffer bytes) {
+            if (closed) {
+                return;
+            }
+            outboundBytes.addAndGet(bytes.remaining());
+            outbound.add(bytes);
+            requestInterestUpdate();
+        }
+
+        private void requestInterestUpdate() {
+            interestUpdates.add(this);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Collects what the handler writes and queues it on the connection each time the handler
+     * flushes: once per batch of lines (and seat updates) a worker drains.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+        private final Connection conn;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        ChannelOutputStream(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void write(int b) {
+            pending.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            pending.write(b, off, len);
+        }
+
+        /** Bytes written since the last flush. */
+        int size() {
+            return pending.size();
+        }
+
+        @Override
+        public void flush() {
+            if (pending.size() == 0) {
+                return;
+            }
+            byte[] bytes = pending.toByteArray();
+            pending.reset();
+            conn.enqueue(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
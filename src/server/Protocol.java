@@ -24,6 +24,10 @@ public class Protocol {
     public static final String ADMIN_ADD_SHOWTIME = "ADMIN_ADD_SHOWTIME";
     public static final String ADMIN_PROMOTE = "ADMIN_PROMOTE";
     public static final String ADMIN_VIEW_ALL_BOOKINGS = "ADMIN_VIEW_ALL_BOOKINGS";
+    public static final String ADMIN_VIEW_ARCHIVE = "ADMIN_VIEW_ARCHIVE";
+    public static final String SUBSCRIBE_SEATS = "SUBSCRIBE_SEATS";
+    public static final String UNSUBSCRIBE_SEATS = "UNSUBSCRIBE_SEATS";
+    public static final String BINARY = "BINARY"; // switch to BinaryProtocol frames
 
     // Response Types
     public static final String SUCCESS = "SUCCESS";
@@ -34,8 +38,12 @@ public class Protocol {
     public static final String BOOKING = "BOOKING";
     public static final String BOOKING_DETAIL = "BOOKING_DETAIL";
     public static final String ROW = "ROW";
+    public static final String SEAT_DELTA = "SEAT_DELTA";
+    public static final String SEAT = "SEAT";
+    public static final String SEAT_UPDATE = "SEAT_UPDATE"; // pushed, not a reply
     public static final String END_LIST = "END_LIST";
     public static final String END_SEATS = "END_SEATS";
+    public static final String END_RESPONSE = "END_RESPONSE"; // last line of a reply to a tagged request
 
     // Error Messages
     public static final String ERROR_AUTH_REQUIRED = "AUTH_REQUIRED";
@@ -44,6 +52,11 @@ public class Protocol {
     public static final String ERROR_INVALID_FORMAT = "INVALID_FORMAT";
     public static final String ERROR_DATABASE_ERROR = "DATABASE_ERROR";
     public static final String ERROR_TIMEOUT = "TIMEOUT";
+    public static final String ERROR_SERVER_BUSY = "SERVER_BUSY";
+
+    // Pipelining: "#id|COMMAND|..." gets every reply line prefixed with "#id|"
+    public static final String REQUEST_TAG_PREFIX = "#";
+    public static final int MAX_REQUEST_TAG_LENGTH = 32;
 
     // Delimiters
     public static final String DELIMITER = "|";
@@ -0,0 +1,157 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writer under a connection's PrintWriter that encodes replies to UTF-8 in one reusable byte
+ * buffer and hands them to the socket only on flush().
+ *
+ * Notes:
+ * - The handler flushes once the commands already received are answered, so a whole response
+ *   (header, items and END_LIST / END_SEATS) normally leaves in a single write instead of one per
+ *   line, or one per 8 KB as with a BufferedWriter and an encoder buffer in between.
+ * - A response larger than MAX_BUFFER goes out in MAX_BUFFER chunks without flushing the stream,
+ *   so a large admin dump does not grow the buffer without bound.
+ * - After a flush, a buffer that grew past RETAINED_BUFFER is replaced by a small one, so idle
+ *   connections do not keep a large array alive.
+ * - Unpaired surrogates are written as '?', like OutputStreamWriter does.
+ * - writeEncoded() takes bytes that are already UTF-8, so a cached response is only copied.
+ */
+final class ResponseWriter extends Writer {
+
+    static final int INITIAL_BUFFER = 8 * 1024;
+    static final int RETAINED_BUFFER = 64 * 1024;
+    static final int MAX_BUFFER = 256 * 1024;
+
+    private final OutputStream out;
+    private byte[] buf = new byte[INITIAL_BUFFER];
+    private int count;
+    private char highSurrogate; // first half of a pair split across write calls, or 0
+
+    ResponseWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = cbuf[i];
+            if (c < 0x80 && count < buf.length && highSurrogate == 0) {
+                buf[count++] = (byte) c;
+            } else {
+                put(c);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80 && count < buf.length && highSurrogate == 0) {
+                buf[count++] = (byte) c;
+            } else {
+                put(c);
+            }
+        }
+    }
+
+    /**
+     * Appends bytes that are already UTF-8, such as a cached response, without encoding them
+     * again. A block larger than the buffer goes straight to the stream.
+     */
+    void writeEncoded(byte[] bytes, int off, int len) throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            put('?');
+        }
+        ensure(len);
+        if (len <= buf.length - count) {
+            System.arraycopy(bytes, off, buf, count, len);
+            count += len;
+        } else {
+            out.write(bytes, off, len); // ensure() has written out everything before it
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                ensure(4);
+                buf[count++] = (byte) (0xF0 | (cp >> 18));
+                buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            put('?');
+        }
+        if (c < 0x80) {
+            ensure(1);
+            buf[count++] = (byte) c;
+        } else if (c < 0x800) {
+            ensure(2);
+            buf[count++] = (byte) (0xC0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            put('?');
+        } else {
+            ensure(3);
+            buf[count++] = (byte) (0xE0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Makes room for n more bytes: grows the buffer up to MAX_BUFFER, then writes it out.
+     */
+    private void ensure(int n) throws IOException {
+        if (count + n <= buf.length) {
+            return;
+        }
+        if (buf.length < MAX_BUFFER) {
+            byte[] bigger = new byte[Math.min(MAX_BUFFER, Math.max(buf.length * 2, count + n))];
+            System.arraycopy(buf, 0, bigger, 0, count);
+            buf = bigger;
+            if (count + n <= buf.length) {
+                return;
+            }
+        }
+        out.write(buf, 0, count);
+        count = 0;
+    }
+
+    /**
+     * Writes the buffered response with one write() and flushes the stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+        out.flush();
+        if (buf.length > RETAINED_BUFFER) {
+            buf = new byte[INITIAL_BUFFER];
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+}
@@ -0,0 +1,105 @@
+package server;
+
+/**
+ * Parses the row:col tokens of a BOOK command into zero-based seat arrays that each connection
+ * reuses from one booking to the next.
+ *
+ * Notes:
+ * - Coordinates are parsed in place from the tokens; no per-seat arrays or substrings are made.
+ * - Repeated seats are found with a bitset over the auditorium (bit row * cols + col). Only the bits
+ *   a parse set are cleared afterwards, so a booking costs O(seats) however large the hall is.
+ * - Not thread-safe: a handler runs one command at a time.
+ */
+final class SeatSelection {
+
+    static final String INVALID_FORMAT = "Invalid seat format (expected row:col)";
+    static final String INVALID_NUMBER = "Invalid numeric seat coordinates";
+    static final String DUPLICATE = "Duplicate seat selection detected";
+    static final String OUT_OF_RANGE = "Seat out of range";
+
+    private static final char SEAT_DELIMITER = Protocol.SEAT_DELIMITER.charAt(0);
+
+    private int[] rows = new int[8];
+    private int[] cols = new int[8];
+    private long[] taken = new long[0];
+    private int count;
+
+    /**
+     * Parses parts[from, from + seatCount) for a hall of the given size.
+     *
+     * @return null on success, otherwise the error message to send
+     */
+    String parse(String[] parts, int from, int seatCount, int rowCount, int colCount) {
+        count = 0;
+        if (rows.length < seatCount) {
+            rows = new int[seatCount];
+            cols = new int[seatCount];
+        }
+        int seatsInHall = rowCount * colCount;
+        if (taken.length * 64 < seatsInHall) {
+            taken = new long[(seatsInHall + 63) >>> 6];
+        }
+
+        String error = null;
+        boolean outOfRange = false;
+        for (int i = 0; i < seatCount; i++) {
+            String token = parts[from + i];
+            int colon = token.indexOf(SEAT_DELIMITER);
+            if (colon < 0 || token.indexOf(SEAT_DELIMITER, colon + 1) >= 0) {
+                error = INVALID_FORMAT;
+                break;
+            }
+            int row;
+            int col;
+            try {
+                row = Integer.parseInt(token, 0, colon, 10) - 1;
+                col = Integer.parseInt(token, colon + 1, token.length(), 10) - 1;
+            } catch (NumberFormatException e) {
+                error = INVALID_NUMBER;
+                break;
+            }
+            rows[count] = row;
+            cols[count] = col;
+            count++;
+
+            if (row < 0 || row >= rowCount || col < 0 || col >= colCount) {
+                outOfRange = true;
+                continue;
+            }
+            int bit = row * colCount + col;
+            long mask = 1L << bit;
+            if ((taken[bit >>> 6] & mask) != 0) {
+                error = DUPLICATE;
+                break;
+            }
+            taken[bit >>> 6] |= mask;
+        }
+
+        clearTaken(rowCount, colCount);
+        if (error == null && outOfRange) {
+            error = OUT_OF_RANGE;
+        }
+        return error;
+    }
+
+    private void clearTaken(int rowCount, int colCount) {
+        for (int i = 0; i < count; i++) {
+            if (rows[i] >= 0 && rows[i] < rowCount && cols[i] >= 0 && cols[i] < colCount) {
+                int bit = rows[i] * colCount + cols[i];
+                taken[bit >>> 6] &= ~(1L << bit);
+            }
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    int[] rows() {
+        return rows;
+    }
+
+    int[] cols() {
+        return cols;
+    }
+}
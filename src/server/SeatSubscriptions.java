@@ -0,0 +1,228 @@
+package server;
+
+import showtime.Showtime;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Pushes seat changes to connections that sent SUBSCRIBE_SEATS.
+ *
+ * Notes:
+ * - A booking only pays for a flag check: the first seat change of a showtime schedules a publish
+ *   COALESCE_MS later on the notifier thread, and further changes until then ride along with it.
+ * - Publishing queues the showtime on each subscriber's bounded outbound queue and wakes the
+ *   connection; it never touches a socket. The queue holds each showtime at most once, so changes
+ *   made while an update waits are coalesced into it and the queue cannot overflow.
+ * - The connection's own writer then calls drain(), which builds each SEAT_UPDATE line from the
+ *   version that subscriber last received. A slow client only holds up its own writer, never the
+ *   booking threads, the notifier or other subscribers.
+ * - A subscriber is told about every change: if it fell more than the showtime's change ring
+ *   behind, its update lists every seat instead of the changed ones.
+ * - A showtime's topic is dropped, and its seat change listener removed, once its last subscriber
+ *   leaves or the showtime is archived (retainShowtimes()).
+ */
+class SeatSubscriptions {
+
+    static final int MAX_SUBSCRIPTIONS_PER_CONNECTION = 16;
+    private static final long COALESCE_MS = 50;
+
+    private final Map<Integer, Topic> topics = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService notifier = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "seat-notifier");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Subscribers of one showtime.
+     */
+    private final class Topic {
+        private final Showtime showtime;
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Topic(Showtime showtime) {
+            this.showtime = showtime;
+        }
+
+        /** Runs on the booking thread. */
+        void changed() {
+            if (!subscribers.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    notifier.schedule(this::publish, COALESCE_MS, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        void publish() {
+            scheduled.set(false);
+            for (Subscriber s : subscribers) {
+                s.enqueue(this);
+            }
+        }
+    }
+
+    /**
+     * One connection's subscriptions and outbound queue. wakeup asks the connection's writer to
+     * call drain(); it runs on the notifier thread and must not block.
+     */
+    final class Subscriber {
+        private final Runnable wakeup;
+        private final Map<Integer, Long> sentVersions = new ConcurrentHashMap<>();
+        private final ArrayBlockingQueue<Topic> outbound = new ArrayBlockingQueue<>(MAX_SUBSCRIPTIONS_PER_CONNECTION);
+        private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+
+        Subscriber(Runnable wakeup) {
+            this.wakeup = wakeup;
+        }
+
+        int size() {
+            return sentVersions.size();
+        }
+
+        private void enqueue(Topic topic) {
+            int id = topic.showtime.getId();
+            if (!queued.add(id)) {
+                return; // already waiting; the update it becomes will include this change
+            }
+            if (!outbound.offer(topic)) {
+                queued.remove(id); // only if subscriptions raced past the limit; the change is dropped
+                return;
+            }
+            wakeup.run();
+        }
+
+        boolean hasPending() {
+            return !outbound.isEmpty();
+        }
+
+        /**
+         * Hands every queued update to sink. Called by the connection's writer, one at a time.
+         */
+        void drain(Consumer<String> sink) {
+            Topic topic;
+            while ((topic = outbound.poll()) != null) {
+                queued.remove(topic.showtime.getId());
+                String line = update(topic.showtime);
+                if (line != null) {
+                    sink.accept(line);
+                }
+            }
+        }
+
+        /**
+         * Builds SEAT_UPDATE|ST_id|version|row:col:available,... for the changes this subscriber
+         * has not seen, or returns null if there are none (or it unsubscribed meanwhile).
+         */
+        private String update(Showtime st) {
+            Long since = sentVersions.get(st.getId());
+            long version = st.getSeatVersion();
+            if (since == null || since == version) {
+                return null;
+            }
+            int cols = st.getColCount();
+            int[] changed = st.getChangedSeatsSince(since, version);
+            StringBuilder line = new StringBuilder();
+            line.append(Protocol.SEAT_UPDATE).append(Protocol.DELIMITER)
+                    .append(ClientHandler.SHOWTIME_ID_PREFIX).append(st.getId()).append(Protocol.DELIMITER)
+                    .append(version).append(Protocol.DELIMITER);
+            int count = changed != null ? changed.length : st.getRowCount() * cols;
+            for (int i = 0; i < count; i++) {
+                int seat = changed != null ? changed[i] : i;
+                int r = seat / cols;
+                int c = seat % cols;
+                if (i > 0) {
+                    line.append(Protocol.SEAT_SEPARATOR);
+                }
+                line.append(r + 1).append(Protocol.SEAT_DELIMITER).append(c + 1)
+                        .append(Protocol.SEAT_DELIMITER).append(st.isSeatAvailable(r, c) ? '1' : '0');
+            }
+            // Only this subscriber's writer updates its versions.
+            sentVersions.replace(st.getId(), version);
+            return line.toString();
+        }
+    }
+
+    Subscriber newSubscriber(Runnable wakeup) {
+        return new Subscriber(wakeup);
+    }
+
+    /**
+     * Subscribes to a showtime's seat changes from the given version on; changes after it that
+     * already happened are pushed right away.
+     *
+     * @return false if the connection already has the maximum number of subscriptions
+     */
+    boolean subscribe(Subscriber subscriber, Showtime showtime, long sinceVersion) {
+        if (!subscriber.sentVersions.containsKey(showtime.getId())
+                && subscriber.size() >= MAX_SUBSCRIPTIONS_PER_CONNECTION) {
+            return false;
+        }
+        subscriber.sentVersions.put(showtime.getId(), sinceVersion);
+        // compute() is atomic per showtime, so a topic is never dropped while being joined.
+        Topic topic = topics.compute(showtime.getId(), (id, t) -> {
+            if (t == null) {
+                t = new Topic(showtime);
+                showtime.setSeatChangeListener(t::changed);
+            }
+            t.subscribers.add(subscriber);
+            return t;
+        });
+        if (sinceVersion != showtime.getSeatVersion()) {
+            subscriber.enqueue(topic);
+        }
+        return true;
+    }
+
+    void unsubscribe(Subscriber subscriber, int showtimeId) {
+        subscriber.sentVersions.remove(showtimeId);
+        topics.computeIfPresent(showtimeId, (id, topic) -> {
+            topic.subscribers.remove(subscriber);
+            if (!topic.subscribers.isEmpty()) {
+                return topic;
+            }
+            topic.showtime.setSeatChangeListener(null);
+            return null;
+        });
+    }
+
+    void unsubscribeAll(Subscriber subscriber) {
+        for (Integer id : subscriber.sentVersions.keySet()) {
+            unsubscribe(subscriber, id);
+        }
+    }
+
+    /**
+     * Drops the topics of showtimes that are no longer live (e.g. archived), unsubscribing
+     * everyone from them.
+     */
+    void retainShowtimes(Predicate<Showtime> live) {
+        for (Topic topic : topics.values()) {
+            if (!live.test(topic.showtime)) {
+                for (Subscriber s : topic.subscribers) {
+                    unsubscribe(s, topic.showtime.getId());
+                }
+            }
+        }
+    }
+
+    int topicCount() {
+        return topics.size();
+    }
+
+    void shutdown() {
+        notifier.shutdownNow();
+    }
+}
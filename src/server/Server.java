@@ -5,16 +5,41 @@ import user.User;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import interfaces.IServer;
 
 public class Server implements Runnable, IServer {
 
+    /**
+     * How connections are served: a dedicated platform thread per client, a virtual thread per
+     * client, or the NIO selector engine with a fixed pool of command workers.
+     */
+    public enum ExecutionMode { THREAD_PER_CONNECTION, VIRTUAL, NIO }
+
     private static final int PORT = 4242;
+    private static final int NIO_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int ARCHIVE_INTERVAL_MINUTES = 5;
+    private final int port;
+    private final ExecutionMode mode;
     private ServerSocket serverSocket;
+    private volatile NioServerEngine nioEngine;
     private volatile boolean running;
+    private volatile ScheduledExecutorService archiver;
+    private volatile MovieListCache movieListCache;
+    private final SeatSubscriptions seatSubscriptions = new SeatSubscriptions();
     private final Database database;
 
     public Server() {
+        this(PORT, ExecutionMode.THREAD_PER_CONNECTION);
+    }
+
+    public Server(int port, ExecutionMode mode) {
+        this.port = port;
+        this.mode = mode;
         Database loadedDb = null;
         try {
             loadedDb = (Database) new Database().loadDatabase();
@@ -23,6 +48,24 @@ public class Server implements Runnable, IServer {
             System.out.println("No existing database found, starting fresh.");
             loadedDb = new Database();
         }
+
+        // Replay mutations logged since the last snapshot; from here on they are journaled.
+        try {
+            int replayed = loadedDb.openJournal();
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " journal entries.");
+            }
+        } catch (IOException e) {
+            System.out.println("Journal unavailable, saving full snapshots instead: " + e.getMessage());
+        }
+        // -Dcinema.mappedSeats=true keeps seat state in a memory-mapped file instead of on the heap.
+        if (Boolean.getBoolean("cinema.mappedSeats")) {
+            try {
+                loadedDb.openSeatStore();
+            } catch (IOException e) {
+                System.out.println("Seat store unavailable, keeping seats on the heap: " + e.getMessage());
+            }
+        }
         this.database = loadedDb;
         this.running = true;
         initializeDefaultAdmin();
@@ -39,7 +82,7 @@ public class Server implements Runnable, IServer {
             User adminUser = new User("admin", "admin123", "admin@cinema.com", true);
             database.addUser(adminUser);
             try {
-                database.saveDatabase();
+                database.commit();
             } catch (IOException e) {
                 System.out.println("Error saving database after creating admin: " + e.getMessage());
             }
@@ -53,17 +96,51 @@ public class Server implements Runnable, IServer {
         return database;
     }
 
+    /**
+     * Returns the pre-rendered LIST_MOVIES response cache for getDatabase(). Created on first use;
+     * threads racing to create it build equivalent caches, so no lock is needed.
+     */
+    MovieListCache getMovieListCache() {
+        MovieListCache cache = movieListCache;
+        if (cache == null) {
+            cache = new MovieListCache(getDatabase());
+            movieListCache = cache;
+        }
+        return cache;
+    }
+
+    SeatSubscriptions getSeatSubscriptions() {
+        return seatSubscriptions;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return mode;
+    }
+
     @Override
     public void run() {
+        startArchiver();
+        if (mode == ExecutionMode.NIO) {
+            nioEngine = new NioServerEngine(this, port, NIO_WORKERS);
+            if (running) {
+                nioEngine.run();
+            }
+            return;
+        }
+        ExecutorService clientExecutor = mode == ExecutionMode.VIRTUAL ? newVirtualThreadExecutor() : null;
         try {
-            serverSocket = new ServerSocket(PORT);
-            System.out.println("Server running on port " + PORT);
+            serverSocket = new ServerSocket(port);
+            System.out.println("Server running on port " + port);
 
             while (running) {
                 try {
                     Socket clientSocket = serverSocket.accept();
                     ClientHandler handler = new ClientHandler(clientSocket, this);
-                    new Thread(handler).start();
+                    if (clientExecutor != null) {
+                        clientExecutor.execute(handler);
+                    } else {
+                        new Thread(handler).start();
+                    }
                 }
                 catch (IOException e) {
                     if (!running) break;
@@ -75,6 +152,9 @@ public class Server implements Runnable, IServer {
             System.out.println("Failed to start server: " + e.getMessage());
 
         } finally {
+            if (clientExecutor != null) {
+                clientExecutor.shutdown();
+            }
             try {
                 if (serverSocket != null && !serverSocket.isClosed())
                     serverSocket.close();
@@ -84,18 +164,84 @@ public class Server implements Runnable, IServer {
         }
     }
 
+    /**
+     * Periodically moves showtimes that have ended, and their reservations, out of the live
+     * database into the archive file.
+     */
+    private void startArchiver() {
+        archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "showtime-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        archiver.scheduleWithFixedDelay(() -> {
+            try {
+                int archived = database.archiveEndedShowtimes(LocalDateTime.now());
+                if (archived > 0) {
+                    System.out.println("Archived " + archived + " past showtimes.");
+                    seatSubscriptions.retainShowtimes(s -> database.findShowtimeById(s.getId()) == s);
+                }
+            } catch (Exception e) {
+                System.out.println("Error archiving showtimes: " + e.getMessage());
+            }
+        }, 0, ARCHIVE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor. It is looked up reflectively so the server
+     * still builds and runs on Java 17, where it falls back to a cached platform thread pool.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads need Java 21+, using a cached thread pool instead.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
     public void stop() {
         running = false;
+        if (archiver != null) {
+            // Not shutdownNow(): interrupting a FileChannel write would close the archive.
+            archiver.shutdown();
+            try {
+                archiver.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         try {
             if (serverSocket != null)
                 serverSocket.close();
         } catch (IOException e) {
             System.out.println("Error stopping server: " + e.getMessage());
         }
+        if (nioEngine != null) {
+            nioEngine.stop();
+        }
+        seatSubscriptions.shutdown();
+        try {
+            database.close();
+        } catch (IOException e) {
+            System.out.println("Error writing final snapshot: " + e.getMessage());
+        }
     }
 
+    /**
+     * Starts the server. Pass "virtual" to run each client on a virtual thread,
+     * or "nio" to use the selector engine instead of a thread per client.
+     */
     public static void main(String[] args) {
-        Server s = new Server();
+        ExecutionMode mode = ExecutionMode.THREAD_PER_CONNECTION;
+        if (args.length > 0) {
+            try {
+                mode = ExecutionMode.valueOf(args[0].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown execution mode " + args[0] + ", using " + mode);
+            }
+        }
+        Server s = new Server(PORT, mode);
         new Thread(s).start();
     }
 }
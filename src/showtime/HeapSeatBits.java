@@ -0,0 +1,57 @@
+package showtime;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Seat bits kept on the heap in atomic long words. The default for every showtime.
+ */
+final class HeapSeatBits implements SeatBits, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicLongArray words;
+    private final AtomicInteger count = new AtomicInteger();
+
+    HeapSeatBits(int wordCount) {
+        this.words = new AtomicLongArray(wordCount);
+    }
+
+    /**
+     * Copies the current state of other.
+     */
+    static HeapSeatBits copyOf(SeatBits other) {
+        HeapSeatBits copy = new HeapSeatBits(other.wordCount());
+        for (int i = 0; i < other.wordCount(); i++) {
+            copy.words.set(i, other.word(i));
+        }
+        copy.count.set(other.count());
+        return copy;
+    }
+
+    @Override
+    public long word(int index) {
+        return words.get(index);
+    }
+
+    @Override
+    public boolean compareAndSetWord(int index, long expected, long updated) {
+        return words.compareAndSet(index, expected, updated);
+    }
+
+    @Override
+    public int count() {
+        return count.get();
+    }
+
+    @Override
+    public void addCount(int delta) {
+        count.addAndGet(delta);
+    }
+
+    @Override
+    public int wordCount() {
+        return words.length();
+    }
+}
@@ -0,0 +1,64 @@
+package showtime;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Seat bits living in a region of a MappedSeatStore file.
+ *
+ * Region layout: [int booked count][int layout][int showtime ID][int unused][long words...], all
+ * 8-byte aligned so the VarHandle views can compare-and-set them directly in the mapped memory.
+ * Not serializable: Showtime writes a heap copy instead, since the mapping cannot leave this process.
+ */
+final class MappedSeatBits implements SeatBits {
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    static final int COUNT_OFFSET = 0;
+    static final int LAYOUT_OFFSET = 4;
+    static final int ID_OFFSET = 8;
+    static final int WORDS_OFFSET = 16;
+
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int wordCount;
+
+    MappedSeatBits(ByteBuffer buffer, int base, int wordCount) {
+        this.buffer = buffer;
+        this.base = base;
+        this.wordCount = wordCount;
+    }
+
+    @Override
+    public long word(int index) {
+        return (long) LONGS.getVolatile(buffer, wordOffset(index));
+    }
+
+    @Override
+    public boolean compareAndSetWord(int index, long expected, long updated) {
+        return LONGS.compareAndSet(buffer, wordOffset(index), expected, updated);
+    }
+
+    @Override
+    public int count() {
+        return (int) INTS.getVolatile(buffer, base + COUNT_OFFSET);
+    }
+
+    @Override
+    public void addCount(int delta) {
+        INTS.getAndAdd(buffer, base + COUNT_OFFSET, delta);
+    }
+
+    @Override
+    public int wordCount() {
+        return wordCount;
+    }
+
+    private int wordOffset(int index) {
+        if (index < 0 || index >= wordCount) throw new IndexOutOfBoundsException("word " + index);
+        return base + WORDS_OFFSET + (index << 3);
+    }
+}
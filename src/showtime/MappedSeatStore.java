@@ -0,0 +1,175 @@
+package showtime;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap seat state for showtimes, kept in a memory-mapped file.
+ *
+ * Notes:
+ * - The file holds one fixed-size region per showtime, addressed by showtime ID, so a
+ *   showtime's region never moves and the file only grows as IDs grow. Regions are mapped
+ *   in segments of REGIONS_PER_SEGMENT as they are first used.
+ * - Attaching a showtime moves its seat bits into its region; bookSeat/cancelSeat/
+ *   isSeatAvailable then compare-and-set the mapped memory directly and the heap copy built
+ *   while loading the snapshot is dropped, so attached showtimes keep no seat bits on the heap.
+ * - The file header records whether the store was closed cleanly and the database state
+ *   version (journal sequence) its regions match. open() clears the flag before any seat
+ *   changes, so after a crash every region is rewritten from the snapshot and journal.
+ * - After a clean close, a region whose showtime ID and seating chart match is taken over
+ *   as is on attach; any other region is overwritten with the showtime's recovered seats.
+ * - Showtimes with more than MAX_SEATS seats or without an ID stay on the heap.
+ * - The mapped pages are written back by the OS; force() flushes them explicitly. The
+ *   database journal remains the durable record of bookings.
+ */
+public final class MappedSeatStore implements Closeable {
+
+    public static final int MAX_SEATS = 4096;
+
+    private static final int MAGIC = 0x43535354; // "CSST"
+    private static final int FILE_HEADER = 64;
+    private static final int CLEAN_OFFSET = 8;      // int, 1 after markClean()
+    private static final int VERSION_OFFSET = 16;   // long, state version passed to markClean()
+    private static final int REGION_BYTES = MappedSeatBits.WORDS_OFFSET + MAX_SEATS / 8;
+    private static final int REGIONS_PER_SEGMENT = 1024;
+    private static final long SEGMENT_BYTES = (long) REGION_BYTES * REGIONS_PER_SEGMENT;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final boolean reusable;   // regions still match the state being attached
+
+    private MappedSeatStore(FileChannel channel, boolean reusable) {
+        this.channel = channel;
+        this.reusable = reusable;
+    }
+
+    /**
+     * Opens (or creates) the seat-state file at the given path.
+     *
+     * @param stateVersion version of the recovered database state (its journal sequence);
+     *                     regions are only reused if the file was cleanly closed at this version
+     */
+    public static MappedSeatStore open(String path, long stateVersion) throws IOException {
+        Path p = Paths.get(path);
+        FileChannel channel = FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean reusable = false;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() >= FILE_HEADER) {
+                channel.read(header, 0);
+                header.flip();
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a seat store: " + path);
+                }
+                if (header.getInt(4) == REGION_BYTES) {
+                    reusable = header.getInt(CLEAN_OFFSET) == 1 && header.getLong(VERSION_OFFSET) == stateVersion;
+                } else {
+                    channel.truncate(0); // written with another region layout; start over
+                }
+            }
+            // Not clean from here on: a crash while seats change must not leave regions to reuse.
+            header.clear();
+            header.putInt(0, MAGIC).putInt(4, REGION_BYTES).putInt(CLEAN_OFFSET, 0).putLong(VERSION_OFFSET, 0);
+            channel.write(header, 0);
+            channel.force(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new MappedSeatStore(channel, reusable);
+    }
+
+    /**
+     * Moves the showtime's seat state into its region of the file.
+     *
+     * @return false if the showtime has no ID or too many seats and stays on the heap
+     */
+    public synchronized boolean attach(Showtime showtime) throws IOException {
+        int id = showtime.getId();
+        int rows = showtime.getRowCount();
+        int cols = showtime.getColCount();
+        if (id < 0 || (long) rows * cols > MAX_SEATS) {
+            return false;
+        }
+        SeatBits current = showtime.bits();
+        if (current instanceof MappedSeatBits) {
+            return true;
+        }
+
+        MappedByteBuffer segment = segment(id / REGIONS_PER_SEGMENT);
+        int base = (id % REGIONS_PER_SEGMENT) * REGION_BYTES;
+        int words = Showtime.wordCount(rows, cols);
+        int layout = rows << 16 | cols;
+
+        MappedSeatBits mapped = new MappedSeatBits(segment, base, words);
+        if (reusable
+                && (int) MappedSeatBits.INTS.getVolatile(segment, base + MappedSeatBits.ID_OFFSET) == id
+                && (int) MappedSeatBits.INTS.getVolatile(segment, base + MappedSeatBits.LAYOUT_OFFSET) == layout) {
+            showtime.replaceBits(mapped);
+            return true;
+        }
+
+        // The region belongs to another showtime or may predate the journal (pages never
+        // written back, or a crash), so it is rewritten from the recovered showtime.
+        MappedSeatBits.INTS.setVolatile(segment, base + MappedSeatBits.ID_OFFSET, id);
+        MappedSeatBits.INTS.setVolatile(segment, base + MappedSeatBits.LAYOUT_OFFSET, layout);
+        int count = 0;
+        for (int i = 0; i < words; i++) {
+            long word = current.word(i);
+            MappedSeatBits.LONGS.setVolatile(segment, base + MappedSeatBits.WORDS_OFFSET + (i << 3), word);
+            count += Long.bitCount(word);
+        }
+        MappedSeatBits.INTS.setVolatile(segment, base + MappedSeatBits.COUNT_OFFSET, count);
+        showtime.replaceBits(mapped);
+        return true;
+    }
+
+    private MappedByteBuffer segment(int index) throws IOException {
+        while (segments.size() <= index) {
+            long offset = FILE_HEADER + segments.size() * SEGMENT_BYTES;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, SEGMENT_BYTES));
+        }
+        return segments.get(index);
+    }
+
+    /**
+     * Writes all mapped pages back to the file.
+     */
+    public synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flushes every region and records that they match the given state version, so the next
+     * open() at that version can reuse them. Call only once no seat will change any more.
+     */
+    public synchronized void markClean(long stateVersion) throws IOException {
+        force();
+        ByteBuffer flag = ByteBuffer.allocate(FILE_HEADER - CLEAN_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        flag.putInt(0, 1).putLong(VERSION_OFFSET - CLEAN_OFFSET, stateVersion);
+        channel.write(flag, CLEAN_OFFSET);
+        channel.force(false);
+    }
+
+    /**
+     * Flushes and closes the file. Attached showtimes must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        segments.clear();
+        channel.close();
+    }
+}
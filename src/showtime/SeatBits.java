@@ -0,0 +1,20 @@
+package showtime;
+
+/**
+ * Storage for a showtime's booked-seat bitset and booked count.
+ *
+ * Implementations must make word updates atomic (compare-and-set) and keep the count in step
+ * with the bits; Showtime does the bit arithmetic on top.
+ */
+interface SeatBits {
+
+    long word(int index);
+
+    boolean compareAndSetWord(int index, long expected, long updated);
+
+    int count();
+
+    void addCount(int delta);
+
+    int wordCount();
+}
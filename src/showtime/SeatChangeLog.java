@@ -0,0 +1,63 @@
+package showtime;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring of the most recent seat changes of one showtime, numbered by a monotonically increasing
+ * version.
+ *
+ * Notes:
+ * - record() is called after a seat's bit has flipped, so every change up to current() is
+ *   already visible in the seat bits. Writers never block each other: each takes the next version
+ *   and publishes its seat in that version's slot, marking the slot while it writes.
+ * - Only the last CAPACITY changes are kept. changesSince() returns null when the requested
+ *   range is no longer (or not yet completely) in the ring; callers then send the full map.
+ * - Versions start from the process start time, so a version a client got before a server
+ *   restart is older than every version handed out after it and never yields a wrong delta.
+ */
+final class SeatChangeLog {
+
+    static final int CAPACITY = 256; // power of two
+    private static final long VERSION_BASE = System.currentTimeMillis() << 16;
+
+    private final AtomicLong version = new AtomicLong(VERSION_BASE);
+    private final AtomicLongArray versions = new AtomicLongArray(CAPACITY);
+    private final AtomicIntegerArray seats = new AtomicIntegerArray(CAPACITY);
+
+    /**
+     * Records a change of the seat with the given bit index.
+     */
+    void record(int bit) {
+        long v = version.incrementAndGet();
+        int slot = (int) v & (CAPACITY - 1);
+        versions.set(slot, -v); // being written
+        seats.set(slot, bit);
+        versions.set(slot, v);
+    }
+
+    long current() {
+        return version.get();
+    }
+
+    /**
+     * Returns the bit indices changed after since, up to and including upTo (repeats possible),
+     * or null if that range cannot be served from the ring.
+     */
+    int[] changesSince(long since, long upTo) {
+        if (since > upTo || since < VERSION_BASE || upTo - since > CAPACITY) {
+            return null;
+        }
+        int[] changed = new int[(int) (upTo - since)];
+        for (long v = since + 1; v <= upTo; v++) {
+            int slot = (int) v & (CAPACITY - 1);
+            if (versions.get(slot) != v) {
+                return null;
+            }
+            changed[(int) (v - since - 1)] = seats.get(slot);
+        }
+        // A writer CAPACITY versions later could have reused a slot while it was read.
+        return version.get() <= since + CAPACITY ? changed : null;
+    }
+}
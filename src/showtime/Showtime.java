@@ -4,26 +4,44 @@ import interfaces.IShowtime;
 import movie.Movie;
 import seat.Seat;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
- * Implementation of IShowtime that keeps a seating chart and a parallel booked[][] matrix.
+ * Implementation of IShowtime that tracks seat state in a packed bitset.
  *
  * Notes:
- * - Booking/cancellation/read methods that rely on booking state are synchronized to ensure thread-safety.
- * - Seat objects are stored (if provided) but booking state is tracked in booked[][]. This avoids
- *   depending on any particular Seat implementation's internal synchronization.
+ * - Booking state is one bit per seat (bit row * cols + col) in atomic long words, with a running count
+ *   of booked seats, so availability counts and dynamic pricing are constant time. The words live on the
+ *   heap unless the showtime is attached to a MappedSeatStore, which moves them into a mapped file.
+ * - Booking and cancellation are lock-free: each seat flips with a compare-and-set on its word, so
+ *   bookings for different seats of the same showtime never wait on each other. tryBookSeats() books
+ *   several seats all-or-nothing by rolling back the seats it already took when it hits a conflict.
+ * - Every successful book or cancel bumps a seat-map version and is recorded in a SeatChangeLog, so
+ *   clients that already hold the map can fetch only the seats changed since the version they saw.
+ * - Seat objects are stored only if provided. Without them no Seat[][] is allocated until getSeats()
+ *   is called, since most auditoriums never attach Seat objects.
  * - Row/col parameters are zero-based. IndexOutOfBoundsException is thrown for invalid coordinates.
  */
 public class Showtime implements IShowtime, Serializable {
 
+    public static final int UNASSIGNED_ID = -1;
+
+    private int id = UNASSIGNED_ID;    // stable ID, assigned once by the Database that stores this showtime
     private final Movie movie;
     private final LocalDateTime dateTime;
-    private final Seat[][] seats;      // may contain nulls if Seat objects are not provided
-    private final boolean[][] booked;  // true means booked
+    private final int rows;
+    private final int cols;
+    private Seat[][] seats;            // null until Seat objects are provided or getSeats() is called
+    private transient volatile SeatBits booked; // bit (row * cols + col) set means booked; serialized as a heap copy
+    private transient SeatChangeLog changes = new SeatChangeLog();
+    private transient volatile Runnable seatChangeListener; // run after every seat change; must not block
     private double basePrice;
     private String auditoriumName;
 
@@ -44,13 +62,21 @@ public class Showtime implements IShowtime, Serializable {
 
         this.movie = movie;
         this.dateTime = dateTime;
-        this.seats = new Seat[seats.length][];
-        for (int r = 0; r < seats.length; r++) {
+        this.rows = seats.length;
+        this.cols = seats.length == 0 || seats[0] == null ? 0 : seats[0].length;
+        boolean anySeat = false;
+        Seat[][] copy = new Seat[rows][];
+        for (int r = 0; r < rows; r++) {
             if (seats[r] == null) throw new IllegalArgumentException("seat row cannot be null");
-            this.seats[r] = new Seat[seats[r].length];
-            System.arraycopy(seats[r], 0, this.seats[r], 0, seats[r].length);
+            if (seats[r].length != cols) throw new IllegalArgumentException("seat rows must all have the same length");
+            copy[r] = new Seat[cols];
+            for (int c = 0; c < cols; c++) {
+                copy[r][c] = seats[r][c];
+                anySeat |= seats[r][c] != null;
+            }
         }
-        this.booked = new boolean[this.seats.length][this.getColCount()];
+        this.seats = anySeat ? copy : null;
+        this.booked = new HeapSeatBits(wordCount(rows, cols));
         this.basePrice = basePrice;
         this.auditoriumName = auditoriumName;
     }
@@ -58,7 +84,8 @@ public class Showtime implements IShowtime, Serializable {
     /**
      * Convenience constructor to create an empty seating chart of the given size.
      * Seat objects will be null; callers can provide Seat objects later by modifying the array returned by getSeats()
-     * (if they choose to). getSeat() will return null for positions with no Seat provided.
+     * (if they choose to), which is only allocated on that first call. getSeat() will return null for positions
+     * with no Seat provided.
      *
      * @param movie     non-null Movie
      * @param dateTime  non-null LocalDateTime
@@ -68,16 +95,46 @@ public class Showtime implements IShowtime, Serializable {
      */
     public Showtime(Movie movie, LocalDateTime dateTime, int rows, int cols, double basePrice, String auditoriumName) {
         if (rows <= 0 || cols <= 0) throw new IllegalArgumentException("rows and cols must be positive");
-        Seat[][] s = new Seat[rows][cols];
         this.movie = Objects.requireNonNull(movie, "movie cannot be null");
         this.dateTime = Objects.requireNonNull(dateTime, "dateTime cannot be null");
-        this.seats = s;
-        this.booked = new boolean[rows][cols];
+        this.rows = rows;
+        this.cols = cols;
+        this.seats = null;
+        this.booked = new HeapSeatBits(wordCount(rows, cols));
         if (basePrice < 0) throw new IllegalArgumentException("basePrice cannot be negative");
         this.basePrice = basePrice;
         this.auditoriumName = auditoriumName;
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        SeatBits bits = booked;
+        out.writeObject(bits instanceof HeapSeatBits ? bits : HeapSeatBits.copyOf(bits));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        booked = (HeapSeatBits) in.readObject();
+        changes = new SeatChangeLog();
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Assigns the stable ID of this showtime. IDs are handed out by Database.addShowtime and never change.
+     *
+     * @param id non-negative showtime ID
+     * @throws IllegalStateException if an ID was already assigned
+     */
+    public void assignId(int id) {
+        if (id < 0) throw new IllegalArgumentException("id cannot be negative");
+        if (this.id != UNASSIGNED_ID) throw new IllegalStateException("showtime already has id " + this.id);
+        this.id = id;
+    }
+
     @Override
     public Movie getMovie() {
         return movie;
@@ -88,50 +145,161 @@ public class Showtime implements IShowtime, Serializable {
         return dateTime;
     }
 
+    static int wordCount(int rows, int cols) {
+        return (rows * cols + 63) >>> 6;
+    }
+
     private void validateIndices(int row, int col) {
-        if (row < 0 || row >= seats.length) throw new IndexOutOfBoundsException("row out of bounds: " + row);
-        if (col < 0 || col >= seats[row].length) throw new IndexOutOfBoundsException("col out of bounds: " + col);
+        if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("row out of bounds: " + row);
+        if (col < 0 || col >= cols) throw new IndexOutOfBoundsException("col out of bounds: " + col);
     }
 
     @Override
-    public Seat getSeat(int row, int col) {
+    public synchronized Seat getSeat(int row, int col) {
         validateIndices(row, col);
-        return seats[row][col];
+        return seats == null ? null : seats[row][col];
+    }
+
+    SeatBits bits() {
+        return booked;
+    }
+
+    /**
+     * Swaps in another seat-bit storage holding the same state. Only done before the showtime is shared
+     * between threads (MappedSeatStore attaches showtimes at startup and when they are added).
+     */
+    void replaceBits(SeatBits bits) {
+        if (bits.wordCount() != wordCount(rows, cols)) {
+            throw new IllegalArgumentException("seat bits do not match the seating chart");
+        }
+        this.booked = bits;
+    }
+
+    /**
+     * Atomically sets the seat's bit.
+     * @return true if this call flipped it from free to booked
+     */
+    private boolean setBit(int bit) {
+        SeatBits b = booked;
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long current = b.word(word);
+            if ((current & mask) != 0) return false;
+            if (b.compareAndSetWord(word, current, current | mask)) {
+                b.addCount(1);
+                seatChanged(bit);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Atomically clears the seat's bit.
+     * @return true if this call flipped it from booked to free
+     */
+    private boolean clearBit(int bit) {
+        SeatBits b = booked;
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long current = b.word(word);
+            if ((current & mask) == 0) return false;
+            if (b.compareAndSetWord(word, current, current & ~mask)) {
+                b.addCount(-1);
+                seatChanged(bit);
+                return true;
+            }
+        }
+    }
+
+    private void seatChanged(int bit) {
+        changes.record(bit);
+        Runnable listener = seatChangeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Sets a callback run on the booking thread after every seat change (null to remove it).
+     * It must only hand the work off, since bookings wait for it.
+     */
+    public void setSeatChangeListener(Runnable listener) {
+        this.seatChangeListener = listener;
     }
 
     @Override
-    public synchronized boolean bookSeat(int row, int col) {
+    public boolean bookSeat(int row, int col) {
         validateIndices(row, col);
-        if (booked[row][col]) return false;
-        booked[row][col] = true;
+        return setBit(row * cols + col);
+    }
+
+    @Override
+    public boolean tryBookSeats(int[] rowIndices, int[] colIndices) {
+        if (rowIndices.length != colIndices.length) {
+            throw new IllegalArgumentException("rows and cols must have the same length");
+        }
+        return tryBookSeats(rowIndices, colIndices, rowIndices.length);
+    }
+
+    @Override
+    public boolean tryBookSeats(int[] rowIndices, int[] colIndices, int count) {
+        if (count > rowIndices.length || count > colIndices.length) {
+            throw new IllegalArgumentException("count exceeds the seat arrays");
+        }
+        for (int i = 0; i < count; i++) {
+            validateIndices(rowIndices[i], colIndices[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            if (!setBit(rowIndices[i] * cols + colIndices[i])) {
+                // Conflict (or a repeated seat): release what this call already took.
+                for (int j = 0; j < i; j++) {
+                    clearBit(rowIndices[j] * cols + colIndices[j]);
+                }
+                return false;
+            }
+        }
         return true;
     }
 
     @Override
-    public synchronized boolean cancelSeat(int row, int col) {
+    public boolean cancelSeat(int row, int col) {
         validateIndices(row, col);
-        if (!booked[row][col]) return false;
-        booked[row][col] = false;
-        return true;
+        return clearBit(row * cols + col);
     }
 
     @Override
-    public synchronized boolean isSeatAvailable(int row, int col) {
+    public boolean isSeatAvailable(int row, int col) {
         validateIndices(row, col);
-        return !booked[row][col];
+        int bit = row * cols + col;
+        return (booked.word(bit >>> 6) & (1L << bit)) == 0;
     }
 
     @Override
-    public synchronized int getAvailableSeatCount() {
-        int rows = seats.length;
-        int cols = rows > 0 ? seats[0].length : 0;
-        int count = 0;
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < seats[r].length; c++) {
-                if (!booked[r][c]) count++;
+    public long getSeatVersion() {
+        return changes.current();
+    }
+
+    @Override
+    public int[] getChangedSeatsSince(long since, long upTo) {
+        int[] changed = changes.changesSince(since, upTo);
+        if (changed == null) {
+            return null;
+        }
+        Arrays.sort(changed);
+        int distinct = 0;
+        for (int i = 0; i < changed.length; i++) {
+            if (i == 0 || changed[i] != changed[i - 1]) {
+                changed[distinct++] = changed[i];
             }
         }
-        return count;
+        return Arrays.copyOf(changed, distinct);
+    }
+
+    @Override
+    public int getAvailableSeatCount() {
+        return rows * cols - booked.count();
     }
 
     @Override
@@ -157,18 +325,21 @@ public class Showtime implements IShowtime, Serializable {
 
     @Override
     public int getRowCount() {
-        return seats.length;
+        return rows;
     }
 
     @Override
     public int getColCount() {
-        return seats.length == 0 ? 0 : seats[0].length;
+        return cols;
     }
 
     @Override
-    public Seat[][] getSeats() {
+    public synchronized Seat[][] getSeats() {
         // Return the internal array reference (interface allows either defensive copy or internal array).
         // If you prefer a defensive copy, create and return a deep copy here.
+        if (seats == null) {
+            seats = new Seat[rows][cols];
+        }
         return seats;
     }
 
@@ -187,11 +358,10 @@ public class Showtime implements IShowtime, Serializable {
     // PHASE 3 ADDITIONS :
     @Override
     public double getDynamicPrice() {
-        int totalSeats = getRowCount() * getColCount();
-        int available = getAvailableSeatCount();
-        int booked = totalSeats - available;
+        int totalSeats = rows * cols;
+        int bookedSeats = booked.count();
 
-        double ratio = (double) booked / totalSeats;
+        double ratio = (double) bookedSeats / totalSeats;
 
         return basePrice * (1 + ratio);   // simple linear scaling
     }
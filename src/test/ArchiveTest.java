@@ -0,0 +1,166 @@
+package test;
+
+import database.Archive;
+import database.Database;
+import movie.Movie;
+import reservation.Reservation;
+import seat.Seat;
+import showtime.Showtime;
+import user.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2030, 6, 1, 12, 0);
+
+    private Database db;
+    private User user;
+    private Movie movie;
+
+    private static void deleteStore() {
+        new File("myDataBase.ser").delete();
+        new File("myDataBase.log").delete();
+        new File("myDataBase.archive").delete();
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        deleteStore();
+        db = new Database();
+        db.openJournal();
+        user = new User("archivist", "secret123", "a@x.com", false);
+        movie = new Movie("Vertigo", "Thriller", "PG", 128, null);
+        db.addUser(user);
+        db.addMovie(movie);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        db.close();
+        deleteStore();
+    }
+
+    private Reservation book(Showtime st, int row, int col) {
+        ArrayList<Seat> seats = new ArrayList<>();
+        seats.add(new Seat(row, col, st.getBasePrice()));
+        Reservation r = new Reservation(user, st, seats, "1234567891011121", "02/27", "123");
+        db.addReservation(r);
+        user.addReservation(r);
+        return r;
+    }
+
+    @Test
+    public void testEndedShowtimesMoveToArchive() throws Exception {
+        Showtime past = new Showtime(movie, NOW.minusDays(1), 3, 3, 10.0, "Aud1");
+        Showtime future = new Showtime(movie, NOW.plusDays(1), 3, 3, 10.0, "Aud1");
+        db.addShowtime(past);
+        db.addShowtime(future);
+        Reservation old = book(past, 0, 1);
+        Reservation upcoming = book(future, 2, 2);
+
+        assertEquals(1, db.archiveEndedShowtimes(NOW));
+
+        assertNull(db.findShowtimeById(past.getId()));
+        assertNull(db.findShowtime(movie, past.getDateTime()));
+        assertNull(db.findReservation(old.getBookingID()));
+        assertFalse(user.hasReservation(old.getBookingID()), "Archived bookings should leave the user's list");
+        assertNotNull(db.findShowtimeById(future.getId()));
+        assertNotNull(db.findReservation(upcoming.getBookingID()));
+
+        List<Archive.ArchivedBooking> archived = db.getArchivedBookings();
+        assertEquals(1, archived.size());
+        Archive.ArchivedBooking booking = archived.get(0);
+        assertEquals(old.getBookingID(), booking.getBookingID());
+        assertEquals("archivist", booking.getUsername());
+        assertEquals("Vertigo", booking.getMovieTitle());
+        assertEquals(past.getDateTime(), booking.getDateTime());
+        assertEquals(List.of(new Seat(0, 1, 10.0).getSeatLabel()), booking.getSeatLabels());
+        assertEquals(10.0, booking.getTotalPrice(), 0.001);
+
+        assertEquals(List.of(old.getBookingID()), bookingIDs(db.getArchivedBookings("archivist")),
+                "The owner should still see the archived booking");
+
+        assertEquals(0, db.archiveEndedShowtimes(NOW), "Nothing left to archive");
+
+        assertEquals(1, db.archiveEndedShowtimes(NOW.plusDays(2)));
+        assertEquals(List.of(old.getBookingID(), upcoming.getBookingID()), bookingIDs(db.getArchivedBookings("archivist")),
+                "Bookings archived after the first lookup should be found too");
+    }
+
+    @Test
+    public void testRunningShowtimeIsNotArchived() throws Exception {
+        Showtime running = new Showtime(movie, NOW.minusMinutes(30), 3, 3, 10.0, "Aud1");
+        db.addShowtime(running);
+        Reservation seated = book(running, 1, 1);
+
+        assertEquals(0, db.archiveEndedShowtimes(NOW), "A screening that has started but not ended stays live");
+        assertNotNull(db.findShowtimeById(running.getId()));
+        assertTrue(user.hasReservation(seated.getBookingID()));
+        assertTrue(db.getArchivedBookings("archivist").isEmpty());
+
+        assertEquals(1, db.archiveEndedShowtimes(NOW.plusMinutes(120)), "It is archived once its runtime has passed");
+        assertNull(db.findReservation(seated.getBookingID()));
+        assertEquals(List.of(seated.getBookingID()), bookingIDs(db.getArchivedBookings("archivist")));
+        assertTrue(db.getArchivedBookings("someoneelse").isEmpty());
+    }
+
+    private static List<String> bookingIDs(List<Archive.ArchivedBooking> bookings) {
+        List<String> ids = new ArrayList<>();
+        for (Archive.ArchivedBooking booking : bookings) {
+            ids.add(booking.getBookingID());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testArchivingSurvivesRestart() throws Exception {
+        Showtime past = new Showtime(movie, NOW.minusHours(3), 2, 2, 8.0, "Aud2");
+        db.addShowtime(past);
+        Reservation old = book(past, 1, 1);
+        db.commit();
+        db.archiveEndedShowtimes(NOW);
+
+        Database recovered = new Database();
+        recovered.openJournal();
+        assertNull(recovered.findShowtimeById(past.getId()), "Replay should drop the archived showtime");
+        assertNull(recovered.findReservation(old.getBookingID()));
+        assertTrue(recovered.findUser("archivist").getReservations().isEmpty());
+        assertEquals(1, recovered.getArchivedBookings().size());
+        assertEquals(List.of(old.getBookingID()), bookingIDs(recovered.getArchivedBookings("archivist")));
+    }
+
+    @Test
+    public void testTornArchiveTailIsIgnored() throws Exception {
+        Showtime past = new Showtime(movie, NOW.minusDays(2), 2, 2, 8.0, "Aud2");
+        db.addShowtime(past);
+        book(past, 0, 0);
+        db.archiveEndedShowtimes(NOW);
+        db.close();
+
+        try (FileOutputStream out = new FileOutputStream("myDataBase.archive", true)) {
+            out.write(new byte[]{0, 0, 0, 42, 1, 2, 3});
+        }
+
+        db = (Database) new Database().loadDatabase();
+        db.openJournal();
+        user = db.findUser("archivist");
+        assertEquals(1, db.getArchivedBookings().size());
+
+        Showtime older = new Showtime(movie, NOW.minusDays(3), 2, 2, 8.0, "Aud2");
+        db.addShowtime(older);
+        book(older, 1, 0);
+        db.archiveEndedShowtimes(NOW);
+        assertEquals(2, db.getArchivedBookings().size(), "Appends after a torn tail should be readable");
+    }
+}
@@ -0,0 +1,181 @@
+package test;
+
+import client.Client;
+import movie.Movie;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import server.BinaryProtocol;
+import server.Server;
+import showtime.Showtime;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that BinaryProtocol frames decode to exactly the lines they were written from, and that
+ * a connection switched with BINARY is served in frames by both engines.
+ */
+class BinaryProtocolTest {
+
+    private Server server;
+    private Showtime showtime;
+    private int port;
+
+    private static void deleteStore() {
+        new File("myDataBase.ser").delete();
+        new File("myDataBase.log").delete();
+    }
+
+    private void startServer(Server.ExecutionMode mode) throws Exception {
+        deleteStore();
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new Server(port, mode);
+        Movie movie = new Movie("Tenet", 150);
+        server.getDatabase().addMovie(movie);
+        showtime = new Showtime(movie, LocalDateTime.now().plusDays(1), 3, 10, 10.0, "Aud1");
+        server.getDatabase().addShowtime(showtime);
+        showtime.bookSeat(1, 9);
+        new Thread(server).start();
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("Server did not start listening");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        deleteStore();
+    }
+
+    private static List<String> readAll(byte[] frames) throws IOException {
+        BufferedReader in = new BufferedReader(new BinaryProtocol.FrameReader(new ByteArrayInputStream(frames)));
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    @DisplayName("Test frames decode to the original lines")
+    void testRoundTrip() throws IOException {
+        List<String> lines = List.of(
+                "LOGIN|alice|secret",
+                "BOOK|ST_12|1:2,1:3|4111111111111111|02/27|007",
+                "SUCCESS|-42|0|-0|00|9223372036854775807|",
+                "SEAT_UPDATE|ST_0|112233445566|1:1:1",
+                "MOVIE|Am\u00e9lie|Am\u00e9lie|Romance||122",
+                "#a|LIST_MOVIES",
+                "unknown|x",
+                "END_LIST");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintWriter out = new PrintWriter(new BinaryProtocol.FrameWriter(bytes));
+        for (String line : lines) {
+            out.println(line);
+        }
+        out.flush();
+
+        assertEquals(lines, readAll(bytes.toByteArray()));
+        int text = String.join("\n", lines).getBytes(StandardCharsets.UTF_8).length + 1;
+        assertTrue(bytes.size() < text, "Frames should be smaller than the text lines");
+    }
+
+    @Test
+    @DisplayName("Test a seat map is one bitmap frame that expands to ROW lines")
+    void testSeatMapFrame() throws IOException {
+        BitSet available = new BitSet();
+        available.set(0, 6);
+        available.clear(4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryProtocol.FrameWriter out = new BinaryProtocol.FrameWriter(bytes);
+        out.writeSeatMap(2, 3, 77, available);
+        out.writeSeatMap(2, 3, -1, new BitSet());
+        out.flush();
+
+        assertEquals(List.of("SUCCESS|2|3|77", "ROW|1|1|1|1", "ROW|2|1|0|1", "END_SEATS",
+                "SUCCESS|2|3", "ROW|1|0|0|0", "ROW|2|0|0|0", "END_SEATS"), readAll(bytes.toByteArray()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Server.ExecutionMode.class, names = {"THREAD_PER_CONNECTION", "NIO"})
+    @DisplayName("Test the client works in binary mode")
+    void testClientInBinaryMode(Server.ExecutionMode mode) throws Exception {
+        startServer(mode);
+        Client client = new Client("localhost", port);
+        client.connect();
+        try {
+            client.switchToBinary();
+            List<List<String>> replies = client.sendPipelined(List.of(
+                    "LIST_MOVIES", "VIEW_SEATS|ST_" + showtime.getId(), "LOGIN|admin|admin123"));
+
+            assertEquals(List.of("SUCCESS|1", "MOVIE|Tenet|Tenet|||150", "END_LIST"), replies.get(0));
+            assertEquals(List.of("SUCCESS|3|10", "ROW|1|1|1|1|1|1|1|1|1|1|1", "ROW|2|1|1|1|1|1|1|1|1|1|0",
+                    "ROW|3|1|1|1|1|1|1|1|1|1|1", "END_SEATS"), replies.get(1));
+            assertTrue(replies.get(2).get(0).startsWith("SUCCESS|"));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test an untagged full seat map arrives as a single frame")
+    void testSeatMapIsOneFrameOnTheWire() throws Exception {
+        startServer(Server.ExecutionMode.NIO);
+        try (Socket s = new Socket("localhost", port)) {
+            s.setSoTimeout(5000);
+            BufferedReader text = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+            assertTrue(text.readLine().startsWith("CONNECTED|"));
+            out.println("BINARY");
+            assertEquals("SUCCESS|BINARY", text.readLine());
+
+            BinaryProtocol.FrameWriter frames = new BinaryProtocol.FrameWriter(s.getOutputStream());
+            frames.write("VIEW_SEATS|ST_" + showtime.getId() + "\n");
+            frames.flush();
+
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            int length = in.readUnsignedByte();
+            assertTrue(length < 0x80, "A 3x10 map fits in a short frame");
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            assertEquals(0x7F, payload[0], "SEAT_MAP opcode");
+            assertEquals(List.of("SUCCESS|3|10", "ROW|1|1|1|1|1|1|1|1|1|1|1", "ROW|2|1|1|1|1|1|1|1|1|1|0",
+                    "ROW|3|1|1|1|1|1|1|1|1|1|1", "END_SEATS"),
+                    readAll(concat(new byte[]{(byte) length}, payload)));
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] all = new byte[a.length + b.length];
+        System.arraycopy(a, 0, all, 0, a.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        return all;
+    }
+}
@@ -7,6 +7,7 @@ import seat.Seat;
 import server.ClientHandler;
 import server.Protocol;
 import server.Server;
+import user.PasswordHasher;
 import showtime.Showtime;
 import user.User;
 
@@ -15,9 +16,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.Socket;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -30,9 +33,14 @@ public class ClientHandlerTest {
 
 
     static class TestDatabase extends Database {
+        boolean failSaves;
+
         @Override
         public synchronized void saveDatabase() throws IOException {
             // no-op: avoid touching myDataBase.ser during tests
+            if (failSaves) {
+                throw new IOException("disk full");
+            }
         }
     }
 
@@ -93,7 +101,7 @@ public class ClientHandlerTest {
 
     private StringWriter outBuffer;
     private PrintWriter outWriter;
-    private BufferedReader inReader;
+    private Object inReader;
 
 
     private static void setField(Object target, String name, Object value) throws Exception {
@@ -102,6 +110,13 @@ public class ClientHandlerTest {
         f.set(target, value);
     }
 
+    /** The handler reads through server.LineReader, which is package-private. */
+    private static Object lineReader(String text) throws Exception {
+        Constructor<?> c = Class.forName("server.LineReader").getDeclaredConstructor(Reader.class);
+        c.setAccessible(true);
+        return c.newInstance(new StringReader(text));
+    }
+
     @SuppressWarnings("unchecked")
     private static <T> T getField(Object target, String name, Class<T> type) throws Exception {
         Field f = target.getClass().getDeclaredField(name);
@@ -136,7 +151,7 @@ public class ClientHandlerTest {
 
         outBuffer = new StringWriter();
         outWriter = new PrintWriter(outBuffer, true);
-        inReader = new BufferedReader(new StringReader(""));
+        inReader = lineReader("");
 
         setField(handler, "out", outWriter);
         setField(handler, "in", inReader);
@@ -164,7 +179,7 @@ public class ClientHandlerTest {
         m.setAccessible(true);
         m.invoke(local);
 
-        BufferedReader in = getField(local, "in", BufferedReader.class);
+        Object in = getField(local, "in", Object.class);
         PrintWriter out = getField(local, "out", PrintWriter.class);
 
         assertNotNull(in, "Input stream should be initialized");
@@ -204,7 +219,7 @@ public class ClientHandlerTest {
 
     @Test
     public void testCloseEverythingClosesSocket() throws Exception {
-        setField(handler, "in", new BufferedReader(new StringReader("")));
+        setField(handler, "in", lineReader(""));
         setField(handler, "out", new PrintWriter(new StringWriter()));
 
         Method close = ClientHandler.class.getDeclaredMethod("closeEverything");
@@ -298,6 +313,25 @@ public class ClientHandlerTest {
         assertTrue(lines[0].startsWith("ERROR|Invalid credentials"));
     }
 
+    @Test
+    public void testHandleLoginUpgradesLegacyHash() throws Exception {
+        StringBuilder md5 = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest("oldpass".getBytes())) {
+            md5.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        User u = User.withPasswordHash("legacy", md5.toString(), "l@x.com", false);
+        db.addUser(u);
+
+        String[] parts = {"LOGIN", "legacy", "oldpass"};
+        invokeHandler("handleLogin", new Class<?>[]{String[].class}, (Object) parts);
+
+        assertTrue(getField(handler, "isAuthenticated", boolean.class));
+        assertTrue(u.getPasswordHash().startsWith("pbkdf2$"), "MD5 hash should be replaced on login");
+        assertFalse(PasswordHasher.needsRehash(u.getPasswordHash()));
+        assertTrue(u.verifyPassword("oldpass"));
+        assertFalse(u.verifyPassword("wrong"));
+    }
+
     @Test
     public void testHandleLogoutResetsAuth() throws Exception {
         User u = new User("user3", "p", "u3@x.com", false);
@@ -333,6 +367,24 @@ public class ClientHandlerTest {
         assertEquals("END_LIST", lines[2]);
     }
 
+    @Test
+    public void testHandleListMoviesRefreshesAfterCatalogChange() throws Exception {
+        db.addMovie(new Movie("Dune", "Sci-Fi", "PG-13", 155, null));
+        invokeHandler("handleListMovies", new Class<?>[]{}, new Object[]{});
+        db.addMovie(new Movie("Arrival", "Sci-Fi", "PG-13", 116, null));
+        invokeHandler("handleListMovies", new Class<?>[]{}, new Object[]{});
+        db.removeMovie("Dune");
+        invokeHandler("handleListMovies", new Class<?>[]{}, new Object[]{});
+
+        String[] lines = outputLines();
+        assertEquals("SUCCESS|1", lines[0]);
+        assertEquals("SUCCESS|2", lines[3]);
+        assertTrue(lines[5].startsWith("MOVIE|Arrival|Arrival"));
+        assertEquals("SUCCESS|1", lines[7], "Removing a movie should invalidate the cached list");
+        assertTrue(lines[8].startsWith("MOVIE|Arrival|Arrival"));
+        assertEquals("END_LIST", lines[9]);
+    }
+
     @Test
     public void testHandleListShowtimesForMovie() throws Exception {
         Movie m = new Movie("Avatar", "Sci-Fi", "PG-13", 160, null);
@@ -351,6 +403,23 @@ public class ClientHandlerTest {
         assertEquals("END_LIST", lines[2]);
     }
 
+    @Test
+    public void testHandleListShowtimesWithinDays() throws Exception {
+        Movie m = new Movie("Avatar", "Sci-Fi", "PG-13", 160, null);
+        db.addMovie(m);
+        db.addShowtime(new Showtime(m, LocalDateTime.now().plusDays(10), 2, 3, 12.5, "Aud2"));
+        db.addShowtime(new Showtime(m, LocalDateTime.now().minusHours(1), 2, 3, 12.5, "Aud2"));
+        db.addShowtime(new Showtime(m, LocalDateTime.now().plusDays(2), 2, 3, 12.5, "Aud2"));
+
+        String[] parts = {"LIST_SHOWTIMES", "Avatar", "7"};
+        invokeHandler("handleListShowtimes", new Class<?>[]{String[].class}, (Object) parts);
+
+        String[] lines = outputLines();
+        assertEquals("SUCCESS|1", lines[0], "Only the showtime in the next 7 days should be listed");
+        assertTrue(lines[1].startsWith("SHOWTIME|ST_2|"));
+        assertEquals("END_LIST", lines[2]);
+    }
+
 
     @Test
     public void testHandleViewSeatsShowsAllAvailable() throws Exception {
@@ -371,6 +440,31 @@ public class ClientHandlerTest {
         assertEquals("END_SEATS", lines[3]);
     }
 
+    @Test
+    public void testHandleViewSeatsSendsOnlyChangesSinceVersion() throws Exception {
+        Movie m = new Movie("Matrix", "Sci-Fi", "R", 140, null);
+        db.addMovie(m);
+        Showtime st = new Showtime(m, LocalDateTime.of(2025, 4, 1, 21, 0), 2, 3, 9.0, "Aud3");
+        db.addShowtime(st);
+
+        invokeHandler("handleViewSeats", new Class<?>[]{String[].class}, (Object) new String[]{"VIEW_SEATS", "ST_0", "0"});
+        String[] full = outputLines();
+        String[] header = full[0].split("\\|");
+        assertEquals(4, header.length, "A versioned request gets the version with the full map");
+        assertEquals("END_SEATS", full[3]);
+        long version = Long.parseLong(header[3]);
+
+        st.bookSeat(1, 2);
+        outBuffer.getBuffer().setLength(0);
+        invokeHandler("handleViewSeats", new Class<?>[]{String[].class},
+                (Object) new String[]{"VIEW_SEATS", "ST_0", String.valueOf(version)});
+
+        String[] lines = outputLines();
+        assertEquals("SEAT_DELTA|" + (version + 1) + "|1", lines[0]);
+        assertEquals("SEAT|2:3|0", lines[1]);
+        assertEquals("END_SEATS", lines[2]);
+    }
+
     private void makeAuthedUser(String username) throws Exception {
         User u = new User(username, "pw12345", username + "@x.com", false);
         db.addUser(u);
@@ -403,6 +497,47 @@ public class ClientHandlerTest {
         assertTrue(lines[0].startsWith("SUCCESS|"), "Booking should succeed");
     }
 
+    @Test
+    public void testHandleBookSeatsReportsFailedCommit() throws Exception {
+        Movie m = new Movie("Alien", "Horror", "R", 117, null);
+        db.addMovie(m);
+        Showtime st = new Showtime(m,
+                LocalDateTime.of(2027, 7, 2, 18, 0),
+                2, 2, 12.0, "Aud6");
+        db.addShowtime(st);
+
+        makeAuthedUser("unlucky");
+        db.failSaves = true;
+
+        String[] parts = {"BOOK", "ST_0", "1", "1:1", "1234567891011121", "02/27", "123"};
+        invokeHandler("handleBookSeats", new Class<?>[]{String[].class}, (Object) parts);
+
+        assertEquals("ERROR|" + Protocol.ERROR_DATABASE_ERROR, outputLines()[0]);
+        assertTrue(st.isSeatAvailable(0, 0), "Seat should be released when the booking is not durable");
+        assertEquals(0, db.getReservations().size());
+    }
+
+    @Test
+    public void testHandleBookSeatsReleasesSeatsWhenNotRecorded() throws Exception {
+        Movie m = new Movie("Solaris", "Sci-Fi", "PG", 167, null);
+        db.addMovie(m);
+        Showtime st = new Showtime(m,
+                LocalDateTime.of(2027, 7, 3, 18, 0),
+                2, 2, 12.0, "Aud7");
+        db.addShowtime(st);
+
+        makeAuthedUser("deleted");
+        db.removeUser("deleted"); // account deleted from another session: addReservation refuses it
+
+        String[] parts = {"BOOK", "ST_0", "2", "1:1", "2:2", "1234567891011121", "02/27", "123"};
+        invokeHandler("handleBookSeats", new Class<?>[]{String[].class}, (Object) parts);
+
+        assertEquals("ERROR|" + Protocol.ERROR_DATABASE_ERROR, outputLines()[0]);
+        assertTrue(st.isSeatAvailable(0, 0), "Seats held for a booking that was not recorded should be released");
+        assertTrue(st.isSeatAvailable(1, 1));
+        assertEquals(0, db.getReservations().size());
+    }
+
     @Test
     public void testHandleBookSeatsRejectsDuplicateSelection() throws Exception {
         Movie m = new Movie("Cars", "Family", "G", 100, null);
@@ -426,6 +561,26 @@ public class ClientHandlerTest {
 
 
 
+    @Test
+    public void testHandleBookSeatsConflictBooksNothing() throws Exception {
+        Movie m = new Movie("Jaws", "Thriller", "PG", 124, null);
+        db.addMovie(m);
+        Showtime st = new Showtime(m,
+                LocalDateTime.of(2027, 6, 1, 18, 0),
+                2, 2, 10.0, "Aud9");
+        db.addShowtime(st);
+        st.bookSeat(0, 1);
+
+        makeAuthedUser("late");
+
+        String[] parts = {"BOOK", "ST_0", "2", "1:1", "1:2", "1234567891011121", "02/27", "123"};
+        invokeHandler("handleBookSeats", new Class<?>[]{String[].class}, (Object) parts);
+
+        assertTrue(st.isSeatAvailable(0, 0), "Free seat should not stay booked when another seat conflicts");
+        assertEquals(0, db.getReservations().size());
+        assertTrue(outputLines()[0].contains("already booked"));
+    }
+
     private Reservation createReservationForUser(User u, Showtime st) {
         ArrayList<Seat> seats = new ArrayList<Seat>();
         seats.add(new Seat(0, 0, st.getBasePrice()));
@@ -574,6 +729,55 @@ public class ClientHandlerTest {
         assertEquals("END_LIST", lines[2]);
     }
 
+    @Test
+    public void testHandleAdminViewAllBookingsPagedAndFiltered() throws Exception {
+        makeAdminUser("boss3");
+
+        Movie a = new Movie("Alpha", 100);
+        Movie b = new Movie("Beta", 100);
+        Showtime stA = new Showtime(a, LocalDateTime.of(2030, 5, 1, 20, 0), 3, 3, 9.0, "Aud1");
+        Showtime stB = new Showtime(b, LocalDateTime.of(2030, 5, 3, 20, 0), 3, 3, 9.0, "Aud2");
+        db.addShowtime(stA);
+        db.addShowtime(stB);
+        User u = new User("cust", "p", "c@x.com", false);
+        db.addUser(u);
+        LocalDateTime t = LocalDateTime.of(2030, 4, 1, 12, 0);
+        for (int i = 0; i < 5; i++) {
+            ArrayList<Seat> seats = new ArrayList<>();
+            seats.add(new Seat(i / 3, i % 3, 9.0));
+            Showtime st = i < 3 ? stA : stB;
+            db.addReservation(new Reservation("R" + i, t.plusMinutes(i), u, st, seats, "1234567891011121", "02/27", "123"));
+        }
+
+        String[] first = {"ADMIN_VIEW_ALL_BOOKINGS", "", "2"};
+        invokeHandler("handleAdminViewAllBookings", new Class<?>[]{String[].class}, (Object) first);
+        String[] lines = outputLines();
+        assertTrue(lines[0].startsWith("SUCCESS|2|"), lines[0]);
+        assertTrue(lines[1].startsWith("BOOKING_DETAIL|R0|"));
+        assertTrue(lines[2].startsWith("BOOKING_DETAIL|R1|"));
+        assertEquals("END_LIST", lines[3]);
+        String cursor = lines[0].split("\\|", -1)[2];
+
+        outBuffer.getBuffer().setLength(0);
+        String[] rest = {"ADMIN_VIEW_ALL_BOOKINGS", cursor, "10"};
+        invokeHandler("handleAdminViewAllBookings", new Class<?>[]{String[].class}, (Object) rest);
+        lines = outputLines();
+        assertEquals("SUCCESS|3|", lines[0], "Last page has no next cursor");
+        assertTrue(lines[1].startsWith("BOOKING_DETAIL|R2|"));
+
+        outBuffer.getBuffer().setLength(0);
+        String[] filtered = {"ADMIN_VIEW_ALL_BOOKINGS", "", "10", "", "2030-05-02", "2030-05-31", "cust"};
+        invokeHandler("handleAdminViewAllBookings", new Class<?>[]{String[].class}, (Object) filtered);
+        lines = outputLines();
+        assertEquals("SUCCESS|2|", lines[0]);
+        assertTrue(lines[1].startsWith("BOOKING_DETAIL|R3|cust|Beta"));
+
+        outBuffer.getBuffer().setLength(0);
+        String[] bad = {"ADMIN_VIEW_ALL_BOOKINGS", "not-a-cursor", "10"};
+        invokeHandler("handleAdminViewAllBookings", new Class<?>[]{String[].class}, (Object) bad);
+        assertEquals("ERROR|" + Protocol.ERROR_INVALID_FORMAT, outputLines()[0]);
+    }
+
     // *** PHASE 3 ADDITIONS
 
     @Test
@@ -599,4 +803,66 @@ public class ClientHandlerTest {
 
         assertTrue(lines[0].contains("Time to book seats has expired"), "Expected error message regarding showtime");
     }
+
+    /** Counts write() calls, standing in for send() syscalls on a socket. */
+    static class CountingOutputStream extends ByteArrayOutputStream {
+        int writes;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            writes++;
+            super.write(b);
+        }
+    }
+
+    @Test
+    public void testMultiLineResponsesLeaveInOneWritePerFlush() throws Exception {
+        CountingOutputStream wire = new CountingOutputStream();
+        ClientHandler local = new ClientHandler(new FakeSocket(new ByteArrayInputStream(new byte[0]), wire), server);
+        Method setup = ClientHandler.class.getDeclaredMethod("setupStreams");
+        setup.setAccessible(true);
+        setup.invoke(local);
+        Method processLine = ClientHandler.class.getDeclaredMethod("processLine", String.class);
+        processLine.setAccessible(true);
+        Method flush = ClientHandler.class.getDeclaredMethod("flush");
+        flush.setAccessible(true);
+
+        Movie m = new Movie("Big Hall", 120);
+        db.addMovie(m);
+        Showtime st = new Showtime(m, LocalDateTime.now().plusDays(1), 100, 100, 9.0, "Aud1");
+        db.addShowtime(st);
+
+        // 50-row seat map: 52 lines, one write.
+        Showtime small = new Showtime(m, LocalDateTime.now().plusDays(2), 50, 30, 9.0, "Aud2");
+        db.addShowtime(small);
+        processLine.invoke(local, "VIEW_SEATS|ST_" + small.getId());
+        flush.invoke(local);
+        assertEquals(52, wire.toString().split("\\R").length);
+        assertEquals(1, wire.writes, "The whole seat map should leave in one write");
+
+        // 10k-entry admin dump: written in chunks of the response buffer, not per line.
+        User admin = new User("dumper", "pwadmin", "d@x.com", true);
+        db.addUser(admin);
+        setField(local, "currentUser", admin);
+        setField(local, "isAuthenticated", true);
+        for (int i = 0; i < 10_000; i++) {
+            ArrayList<Seat> seats = new ArrayList<>();
+            seats.add(new Seat(i / 100, i % 100, 9.0));
+            db.addReservation(new Reservation(admin, st, seats, "1234567891011121", "02/27", "123"));
+        }
+        wire.reset();
+        wire.writes = 0;
+        processLine.invoke(local, "ADMIN_VIEW_ALL_BOOKINGS");
+        flush.invoke(local);
+        int bytes = wire.size();
+        assertEquals(10_002, wire.toString().split("\\R").length);
+        assertTrue(wire.writes <= bytes / (256 * 1024) + 1,
+                wire.writes + " writes for " + bytes + " bytes");
+    }
 }
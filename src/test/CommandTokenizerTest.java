@@ -0,0 +1,60 @@
+package server;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks command lookup, line splitting and seat parsing against what the regex-based code did.
+ */
+class CommandTokenizerTest {
+
+    @Test
+    @DisplayName("Test commands are found in any letter case and unknown ones are not")
+    void testCommandLookup() {
+        for (CommandTokenizer.Command command : CommandTokenizer.Command.values()) {
+            assertSame(command, CommandTokenizer.command(command.wireName + "|x"));
+            assertSame(command, CommandTokenizer.command(command.wireName.toLowerCase()));
+        }
+        assertNull(CommandTokenizer.command("LOGINX|a"));
+        assertNull(CommandTokenizer.command("LOG"));
+        assertNull(CommandTokenizer.command(""));
+    }
+
+    @Test
+    @DisplayName("Test split matches String.split with limit -1")
+    void testSplitMatchesRegexSplit() {
+        String[] lines = {"login|alice|pw", "LIST_MOVIES", "BOOK|ST_1|2|1:1|1:2|4111|02/27|123", "CANCEL||", "x|"};
+        for (String line : lines) {
+            CommandTokenizer.Command command = CommandTokenizer.command(line);
+            String[] expected = line.split("\\|", -1);
+            if (command != null) {
+                expected[0] = command.wireName;
+            }
+            assertArrayEquals(expected, CommandTokenizer.split(line, command), line);
+        }
+    }
+
+    @Test
+    @DisplayName("Test seat tokens are parsed, checked and the selection is reusable")
+    void testSeatSelection() {
+        SeatSelection seats = new SeatSelection();
+        String[] parts = {"BOOK", "ST_0", "3", "1:2", "3:4", "2:1"};
+        assertNull(seats.parse(parts, 3, 3, 3, 4));
+        assertEquals(3, seats.count());
+        assertArrayEquals(new int[]{0, 2, 1}, Arrays.copyOf(seats.rows(), 3));
+        assertArrayEquals(new int[]{1, 3, 0}, Arrays.copyOf(seats.cols(), 3));
+
+        assertEquals(SeatSelection.DUPLICATE, seats.parse(new String[]{"1:2", "2:2", "1:2"}, 0, 3, 3, 4));
+        assertNull(seats.parse(new String[]{"1:2"}, 0, 1, 3, 4), "Bits of earlier parses must be cleared");
+        assertEquals(SeatSelection.OUT_OF_RANGE, seats.parse(new String[]{"4:1", "1:1"}, 0, 2, 3, 4));
+        assertEquals(SeatSelection.INVALID_FORMAT, seats.parse(new String[]{"1-1"}, 0, 1, 3, 4));
+        assertEquals(SeatSelection.INVALID_FORMAT, seats.parse(new String[]{"1:1:1"}, 0, 1, 3, 4));
+        assertEquals(SeatSelection.INVALID_NUMBER, seats.parse(new String[]{"a:1"}, 0, 1, 3, 4));
+        assertNull(seats.parse(new String[]{"1:1", "1:2", "1:3", "1:4", "2:1", "2:2", "2:3", "2:4", "3:1", "3:2"},
+                0, 10, 3, 4), "Arrays grow past their initial size");
+    }
+}
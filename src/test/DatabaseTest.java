@@ -2,6 +2,7 @@ package test;
 
 
 import database.Database;
+import database.ReservationPage;
 import movie.Movie;
 import reservation.Reservation;
 import seat.Seat;
@@ -99,8 +100,98 @@ public class DatabaseTest {
         assertEquals(testShowtime.getDateTime(), found.getDateTime());
     }
 
+    @Test
+    public void testShowtimeIdsAreAssignedOnAdd() {
+        Showtime second = new Showtime(testMovie, LocalDateTime.of(2025, 11, 10, 20, 0), 2, 2, 8.0, "Aud 2");
+        assertEquals(Showtime.UNASSIGNED_ID, testShowtime.getId(), "IDs are only assigned by the database");
+
+        db.addShowtime(testShowtime);
+        db.addShowtime(second);
+
+        assertEquals(0, testShowtime.getId());
+        assertEquals(1, second.getId());
+        assertSame(second, db.findShowtimeById(1));
+        assertNull(db.findShowtimeById(2), "Unknown id should yield null");
+    }
+
+    @Test
+    public void testShowtimeReplacedByIdLeavesNoStaleIndexEntry() {
+        db.addShowtime(testShowtime);
+        LocalDateTime moved = LocalDateTime.of(2025, 11, 12, 18, 0);
+        Showtime replacement = new Showtime(testMovie, moved, 5, 5, 10.0, "Auditorium 2");
+        replacement.assignId(testShowtime.getId());
+        db.addShowtime(replacement);
+
+        assertNull(db.findShowtime(testMovie, testShowtime.getDateTime()), "The replaced showtime should not be found");
+        assertSame(replacement, db.findShowtime(testMovie, moved));
+
+        Showtime sameTime = new Showtime(testMovie, moved, 3, 3, 12.0, "Auditorium 3");
+        sameTime.assignId(testShowtime.getId());
+        db.addShowtime(sameTime);
+        assertSame(sameTime, db.findShowtime(testMovie, moved), "A replacement at the same time should take its place");
+        assertEquals(1, db.getShowtimes().size());
+    }
+
+    @Test
+    public void testShowtimesForMovieAreSortedAndRanged() {
+        LocalDateTime base = LocalDateTime.of(2025, 11, 9, 12, 0);
+        Showtime late = new Showtime(testMovie, base.plusDays(8), 2, 2, 8.0, "Aud 1");
+        Showtime early = new Showtime(testMovie, base.plusHours(2), 2, 2, 8.0, "Aud 1");
+        Showtime sameTime = new Showtime(testMovie, base.plusHours(2), 2, 2, 8.0, "Aud 2");
+        Showtime other = new Showtime(new Movie("Memento", 113), base.plusHours(1), 2, 2, 8.0, "Aud 3");
+        db.addShowtime(late);
+        db.addShowtime(testShowtime); // base + 8h
+        db.addShowtime(early);
+        db.addShowtime(sameTime);
+        db.addShowtime(other);
+
+        assertEquals(List.of(early, sameTime, testShowtime, late), db.getShowtimesForMovie("Inception"));
+        assertEquals(List.of(early, sameTime, testShowtime),
+                db.getShowtimesForMovie("Inception", base, base.plusDays(7)), "Next 7 days");
+        assertEquals(List.of(testShowtime, late),
+                db.getShowtimesForMovie("Inception", base.plusHours(3), null), "Not yet started at base + 3h");
+        assertTrue(db.getShowtimesForMovie("Unknown").isEmpty());
+    }
+
+    @Test
+    public void testReservationPagesFollowBookingOrder() {
+        db.addUser(testUser);
+        LocalDateTime t = LocalDateTime.of(2025, 11, 1, 9, 0);
+        List<Reservation> expected = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ArrayList<Seat> seats = new ArrayList<>();
+            seats.add(new Seat(i / 5, i % 5, 10.0));
+            // Added out of booking order; pages still come back in booking order.
+            Reservation r = new Reservation("B" + i, t.plusMinutes(7 - i), testUser, testShowtime, seats,
+                    "1234567891011121", "02/27", "123");
+            db.addReservation(r);
+            expected.add(0, r);
+        }
+
+        List<Reservation> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ReservationPage page = db.getReservationPage(cursor, 3, null);
+            seen.addAll(page.getReservations());
+            cursor = page.getNextCursor();
+            pages++;
+            if (pages == 1) {
+                db.removeReservation(page.getReservations().get(2).getBookingID()); // cursor entry may go away
+            }
+        } while (cursor != null);
+        assertEquals(expected, seen);
+        assertEquals(3, pages);
+
+        ReservationPage filtered = db.getReservationPage(null, 2, r -> r.getBookingID().equals("B1"));
+        assertEquals(List.of(db.findReservation("B1")), filtered.getReservations());
+        assertNull(filtered.getNextCursor(), "Every remaining reservation was looked at");
+        assertThrows(IllegalArgumentException.class, () -> db.getReservationPage("garbage", 3, null));
+    }
+
     @Test
     public void testAddAndFindReservation() {
+        db.addUser(testUser);
         db.addReservation(testReservation);
         Reservation found = db.findReservation(testReservation.getBookingID());
         assertNotNull(found, "Reservation should be retrievable by booking ID");
@@ -108,11 +199,114 @@ public class DatabaseTest {
     }
 
     public void testRemoveReservation() {
+        db.addUser(testUser);
         db.addReservation(testReservation);
         db.removeReservation(testReservation.getBookingID());
         assertNull(db.findReservation(testReservation.getBookingID()), "Reservation should be removed");
     }
 
+    @Test
+    public void testRemoveReservationsOfUser() {
+        db.addUser(testUser);
+        User other = new User("other", "pw", "other@purdue.edu", false);
+        db.addUser(other);
+        ArrayList<Seat> otherSeats = new ArrayList<>();
+        otherSeats.add(new Seat(1, 0, 10.0));
+        Reservation kept = new Reservation(other, testShowtime, otherSeats, "1234567891011121", "02/27", "123");
+        ArrayList<Seat> moreSeats = new ArrayList<>();
+        moreSeats.add(new Seat(2, 2, 10.0));
+        Reservation second = new Reservation(testUser, testShowtime, moreSeats, "1234567891011121", "02/27", "123");
+        for (Reservation r : new Reservation[]{testReservation, kept, second}) {
+            db.addReservation(r);
+            r.getUser().addReservation(r);
+        }
+
+        assertEquals(2, db.removeReservationsOf(testUser));
+        assertTrue(testUser.getReservations().isEmpty(), "User should have no reservations left");
+        assertNull(db.findReservation(testReservation.getBookingID()));
+        assertNull(db.findReservation(second.getBookingID()));
+        assertEquals(List.of(kept), db.getReservations(), "Other users' reservations must stay");
+        assertEquals(List.of(kept), db.getReservationPage(null, 10, null).getReservations());
+        assertTrue(testShowtime.isSeatAvailable(0, 0), "Seats should be freed");
+        assertTrue(testShowtime.isSeatAvailable(2, 2), "Seats should be freed");
+        assertFalse(testShowtime.isSeatAvailable(1, 0), "Other users' seats must stay booked");
+        assertEquals(0, db.removeReservationsOf(testUser));
+    }
+
+    @Test
+    public void testCheckThenAddMethodsAreAtomic() {
+        assertTrue(db.addUserIfAbsent(testUser));
+        assertFalse(db.addUserIfAbsent(new User("gaurav", "other", "o@x.com", false)));
+        assertEquals("gaurav@purdue.edu", db.findUser("gaurav").getEmail(), "The first user must stay");
+
+        assertTrue(db.addMovieIfAbsent(testMovie));
+        assertFalse(db.addMovieIfAbsent(new Movie("Inception", 90)));
+        assertSame(testMovie, db.findMovie("Inception"));
+
+        assertTrue(db.addShowtimeIfAbsent(testShowtime));
+        Showtime clash = new Showtime(testMovie, testShowtime.getDateTime(), 3, 3, 5.0, "Auditorium 2");
+        assertFalse(db.addShowtimeIfAbsent(clash));
+        assertEquals(Showtime.UNASSIGNED_ID, clash.getId(), "A rejected showtime gets no ID");
+        assertEquals(1, db.getShowtimes().size());
+
+        db.addReservation(testReservation);
+        testUser.addReservation(testReservation);
+        assertSame(testReservation, db.cancelReservation(testReservation.getBookingID()));
+        assertNull(db.cancelReservation(testReservation.getBookingID()), "A booking is cancelled only once");
+        assertTrue(testShowtime.isSeatAvailable(0, 0));
+        assertFalse(testUser.hasReservation(testReservation.getBookingID()));
+    }
+
+    @Test
+    public void testConcurrentWritesStayConsistent() throws Exception {
+        Showtime big = new Showtime(testMovie, LocalDateTime.of(2025, 11, 10, 20, 0), 40, 40, 10.0, "Auditorium 2");
+        db.addMovie(testMovie);
+        db.addShowtime(big);
+        int threads = 8;
+        int perThread = 200;
+        int[] registered = new int[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                User user = new User("user" + id, "password", "u@x.com", false);
+                db.addUser(user);
+                for (int i = 0; i < perThread; i++) {
+                    ArrayList<Seat> seats = new ArrayList<>();
+                    seats.add(new Seat(id * 5 + i / 40, i % 40, 10.0));
+                    Reservation r = new Reservation(user, big, seats, "1234567891011121", "02/27", "123");
+                    db.addReservation(r);
+                    user.addReservation(r);
+                    if (i % 2 == 1) {
+                        assertNotNull(db.cancelReservation(r.getBookingID()));
+                    }
+                    // Every thread races for the same names; only one may win each.
+                    if (db.addUserIfAbsent(User.withPasswordHash("shared" + i, "x", "s@x.com", false))) {
+                        registered[id]++;
+                    }
+                    db.getShowtimesForMovie("Inception");
+                    db.findUser("user" + ((id + 1) % threads));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int won = 0;
+        for (int r : registered) {
+            won += r;
+        }
+        assertEquals(perThread, won, "Each shared name must be registered exactly once");
+        assertEquals(threads * perThread / 2, db.getReservations().size());
+        assertEquals(threads * perThread / 2, db.getReservationPage(null, 1000, null).getReservations().size());
+        for (int t = 0; t < threads; t++) {
+            assertEquals(perThread / 2, db.findUser("user" + t).getReservations().size());
+        }
+        assertEquals(40 * 40 - threads * perThread / 2, big.getAvailableSeatCount());
+    }
+
     @Test
     public void testSaveAndLoadDatabase() throws Exception {
         db.addUser(testUser);
@@ -189,4 +383,36 @@ public class DatabaseTest {
         assertTrue(promoted.isAdmin(), "User should be promoted to the admin.");
     }
 
+    @Test
+    public void testGettersPreserveInsertionOrderAfterRemoval() {
+        db.addUser(new User("first", "password1", "f@x.com", false));
+        db.addUser(new User("second", "password2", "s@x.com", false));
+        db.addUser(new User("third", "password3", "t@x.com", false));
+        db.removeUser("second");
+
+        List<User> users = db.getUsers();
+        assertEquals(2, users.size());
+        assertEquals("first", users.get(0).getUsername());
+        assertEquals("third", users.get(1).getUsername());
+
+        db.addMovie(new Movie("B Movie", 90));
+        db.addMovie(new Movie("A Movie", 95));
+        assertEquals("B Movie", db.getMovies().get(0).getTitle(), "Movies should keep insertion order");
+        assertSame(db.getMovies().get(1), db.findMovie("A Movie"));
+    }
+
+    @Test
+    public void testIndexesStayConsistentOnRemoval() {
+        db.addUser(testUser);
+        db.addReservation(testReservation);
+        db.removeReservation(testReservation.getBookingID());
+        assertNull(db.findReservation(testReservation.getBookingID()), "Removed reservation should not be found");
+        assertTrue(db.getReservations().isEmpty(), "Removed reservation should not be listed");
+
+        db.addMovie(testMovie);
+        db.removeMovie("Inception");
+        assertNull(db.findMovie("Inception"));
+        assertFalse(db.movieExists("Inception"));
+    }
+
 }
@@ -0,0 +1,272 @@
+package test;
+
+import database.Database;
+import movie.Movie;
+import reservation.Reservation;
+import seat.Seat;
+import showtime.Showtime;
+import user.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalTest {
+
+    private Database db;
+
+    private static void deleteStore() {
+        new File("myDataBase.ser").delete();
+        new File("myDataBase.log").delete();
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        deleteStore();
+        db = new Database();
+        db.openJournal();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        db.close();
+        deleteStore();
+    }
+
+    private Reservation book(User u, Showtime st, int row, int col) {
+        ArrayList<Seat> seats = new ArrayList<>();
+        seats.add(new Seat(row, col, st.getBasePrice()));
+        Reservation r = new Reservation(u, st, seats, "1234567891011121", "02/27", "123");
+        db.addReservation(r);
+        u.addReservation(r);
+        return r;
+    }
+
+    @Test
+    public void testReplayRestoresMutations() throws Exception {
+        User u = new User("journaled", "secret123", "j@x.com", false);
+        Movie m = new Movie("Heat", "Crime", "R", 170, null);
+        Showtime st = new Showtime(m, LocalDateTime.of(2030, 1, 1, 20, 0), 3, 3, 10.0, "Aud1");
+        db.addUser(u);
+        db.addMovie(m);
+        db.addShowtime(st);
+        Reservation kept = book(u, st, 0, 0);
+        Reservation cancelled = book(u, st, 1, 1);
+        cancelled.cancelAllSeats();
+        db.removeReservation(cancelled.getBookingID());
+        u.removeReservation(cancelled.getBookingID());
+        db.promoteUserToAdmin("journaled");
+        db.commit();
+
+        assertFalse(new File("myDataBase.ser").exists(), "Commits should not write a full snapshot");
+
+        Database recovered = new Database();
+        assertEquals(7, recovered.openJournal(), "Every logged mutation should be replayed");
+
+        User ru = recovered.findUser("journaled");
+        assertNotNull(ru);
+        assertTrue(ru.isAdmin());
+        assertTrue(ru.verifyPassword("secret123"), "Password hash should survive replay");
+        assertTrue(recovered.movieExists("Heat"));
+
+        Showtime rst = recovered.findShowtime(m, st.getDateTime());
+        assertNotNull(rst);
+        assertFalse(rst.isSeatAvailable(0, 0), "Replayed reservation should book its seat");
+        assertTrue(rst.isSeatAvailable(1, 1), "Replayed cancellation should free its seat");
+
+        assertNotNull(recovered.findReservation(kept.getBookingID()));
+        assertNull(recovered.findReservation(cancelled.getBookingID()));
+        assertEquals(1, ru.getReservations().size());
+    }
+
+    @Test
+    public void testReplayKeepsStoredReservationsDeferred() throws Exception {
+        User u = new User("deferred", "secret123", "d@x.com", false);
+        Movie m = new Movie("Ikiru", 143);
+        Showtime st = new Showtime(m, LocalDateTime.of(2030, 3, 3, 19, 0), 3, 3, 9.0, "Aud1");
+        db.addUser(u);
+        db.addMovie(m);
+        db.addShowtime(st);
+        Reservation old = book(u, st, 0, 0);
+        Reservation oldCancelled = book(u, st, 0, 1);
+        db.saveDatabase();
+        Reservation fresh = book(u, st, 1, 1);
+        Reservation freshCancelled = book(u, st, 2, 2);
+        db.cancelReservation(oldCancelled.getBookingID());
+        db.cancelReservation(freshCancelled.getBookingID());
+        db.commit();
+
+        Database recovered = (Database) new Database().loadDatabase();
+        assertEquals(4, recovered.openJournal());
+        assertEquals(0, recovered.archiveEndedShowtimes(LocalDateTime.of(2029, 1, 1, 0, 0)));
+        assertFalse(recovered.reservationsLoaded(), "Replay and an idle archiver run should leave reservations on disk");
+
+        Showtime rst = recovered.findShowtimeById(st.getId());
+        assertFalse(rst.isSeatAvailable(0, 0));
+        assertTrue(rst.isSeatAvailable(0, 1), "A replayed cancellation should free a deferred booking's seats");
+        assertFalse(rst.isSeatAvailable(1, 1));
+        assertTrue(rst.isSeatAvailable(2, 2));
+        assertEquals(7, rst.getAvailableSeatCount());
+
+        assertEquals(2, recovered.findUser("deferred").getReservations().size());
+        assertTrue(recovered.reservationsLoaded());
+        assertNotNull(recovered.findReservation(old.getBookingID()));
+        assertNotNull(recovered.findReservation(fresh.getBookingID()));
+        assertNull(recovered.findReservation(oldCancelled.getBookingID()));
+        assertNull(recovered.findReservation(freshCancelled.getBookingID()));
+        assertEquals(7, rst.getAvailableSeatCount(), "Paging in must not book or free seats again");
+
+        recovered.commit();
+        assertEquals(4, ((Database) new Database().loadDatabase()).openJournal(),
+                "Paging in must not journal the stored reservations again");
+    }
+
+    @Test
+    public void testSnapshotTruncatesJournal() throws Exception {
+        db.addMovie(new Movie("Alien", 117));
+        db.saveDatabase();
+        db.addMovie(new Movie("Aliens", 137));
+        db.commit();
+
+        Database recovered = (Database) new Database().loadDatabase();
+        assertEquals(1, recovered.openJournal(), "Only records after the snapshot should be replayed");
+        assertTrue(recovered.movieExists("Alien"));
+        assertTrue(recovered.movieExists("Aliens"));
+        assertEquals(2, recovered.getMovies().size());
+    }
+
+    @Test
+    public void testAsyncSnapshotKeepsLaterRecords() throws Exception {
+        db.addMovie(new Movie("Alien", 117));
+        db.commit();
+        CompletableFuture<Void> snapshot = db.saveDatabaseAsync();
+        db.addMovie(new Movie("Aliens", 137));  // logged after the capture
+        db.commit();
+        snapshot.get();
+
+        Database recovered = (Database) new Database().loadDatabase();
+        assertFalse(recovered.movieExists("Aliens"), "Snapshot should only hold state at capture time");
+        assertEquals(1, recovered.openJournal(), "Records after the capture must survive compaction");
+        assertTrue(recovered.movieExists("Alien"));
+        assertTrue(recovered.movieExists("Aliens"));
+    }
+
+    @Test
+    public void testSnapshotRestoresSeatsFromReservations() throws Exception {
+        User u = new User("snapper", "secret123", "s@x.com", false);
+        Movie m = new Movie("Ran", 162);
+        Showtime st = new Showtime(m, LocalDateTime.of(2030, 2, 2, 18, 0), 2, 2, 8.0, "Aud2");
+        db.addUser(u);
+        db.addMovie(m);
+        db.addShowtime(st);
+        Reservation r = book(u, st, 1, 0);
+        db.saveDatabase();
+
+        Database recovered = (Database) new Database().loadDatabase();
+        Showtime rst = recovered.findShowtimeById(st.getId());
+        assertNotNull(rst);
+        assertFalse(rst.isSeatAvailable(1, 0));
+        assertEquals(3, rst.getAvailableSeatCount());
+        assertEquals(1, recovered.findUser("snapper").getReservations().size());
+        assertNotNull(recovered.findReservation(r.getBookingID()));
+    }
+
+    @Test
+    public void testTornTailIsIgnored() throws Exception {
+        db.addMovie(new Movie("Jaws", 124));
+        db.commit();
+
+        try (FileOutputStream out = new FileOutputStream("myDataBase.log", true)) {
+            out.write(new byte[]{0, 0, 0, 42, 1, 2, 3});
+        }
+
+        Database recovered = new Database();
+        assertEquals(1, recovered.openJournal());
+        assertTrue(recovered.movieExists("Jaws"));
+    }
+
+    @Test
+    public void testConcurrentCommitsAreAllDurable() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            final int id = t;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20; i++) {
+                        db.addMovie(new Movie("Movie " + id + "-" + i, 90));
+                        db.commit();
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.isEmpty(), "Commits should not fail: " + errors);
+
+        Database recovered = new Database();
+        assertEquals(320, recovered.openJournal(), "Every committed record should be on disk");
+        assertEquals(320, recovered.getMovies().size());
+    }
+
+    @Test
+    public void testUserRemovedWhileBookingLeavesNoOrphans() throws Exception {
+        User u = new User("leaving", "secret123", "l@x.com", false);
+        Movie m = new Movie("Ran", "Drama", "R", 162, null);
+        Showtime st = new Showtime(m, LocalDateTime.of(2030, 1, 1, 20, 0), 20, 50, 10.0, "Aud1");
+        db.addUser(u);
+        db.addMovie(m);
+        db.addShowtime(st);
+
+        CountDownLatch booking = new CountDownLatch(50);
+        AtomicInteger rejected = new AtomicInteger();
+        Thread booker = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                ArrayList<Seat> seats = new ArrayList<>();
+                seats.add(new Seat(i / 50, i % 50, st.getBasePrice()));
+                Reservation r = new Reservation(u, st, seats, "1234567891011121", "02/27", "123");
+                try {
+                    db.addReservation(r);
+                } catch (IllegalStateException e) {
+                    r.cancelAllSeats(); // what ClientHandler does when the booking is refused
+                    rejected.incrementAndGet();
+                }
+                booking.countDown();
+            }
+        });
+        booker.start();
+        booking.await();
+        db.removeUser("leaving");
+        booker.join();
+
+        assertTrue(rejected.get() > 0, "Bookings after the removal should be refused");
+        assertTrue(db.getReservations().isEmpty(), "No booking should outlive its user");
+        assertEquals(1000, st.getAvailableSeatCount(), "Every seat should be free again");
+        db.commit();
+
+        Database recovered = new Database();
+        recovered.openJournal();
+        assertNull(recovered.findUser("leaving"));
+        assertTrue(recovered.getReservations().isEmpty(), "Replay should not bring back a booking of the removed user");
+        assertEquals(1000, recovered.findShowtimeById(st.getId()).getAvailableSeatCount());
+    }
+}
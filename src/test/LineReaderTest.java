@@ -0,0 +1,40 @@
+package server;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that LineReader splits lines like the NIO engine and knows when a whole line is buffered.
+ */
+class LineReaderTest {
+
+    @Test
+    @DisplayName("Test a partial line does not count as a buffered line")
+    void testHasLineOnlyForCompleteLines() throws IOException {
+        LineReader reader = new LineReader(new StringReader("CMD1\r\nCMD2-partial"));
+        assertEquals("CMD1", reader.readLine());
+        assertFalse(reader.hasLine(), "The rest of CMD2 has not arrived");
+        assertEquals("CMD2-partial", reader.readLine(), "Text at the end of the stream is a last line");
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    @DisplayName("Test lines longer than the buffer and empty lines are returned whole")
+    void testLongAndEmptyLines() throws IOException {
+        String longLine = "x".repeat(LineReader.INITIAL_BUFFER * 3);
+        LineReader reader = new LineReader(new StringReader("A\nB\n\n" + longLine + "\nC\n"));
+        assertEquals("A", reader.readLine());
+        assertTrue(reader.hasLine());
+        assertEquals("B", reader.readLine());
+        assertEquals("", reader.readLine());
+        assertEquals(longLine, reader.readLine());
+        assertEquals("C", reader.readLine());
+        assertFalse(reader.hasLine());
+        assertNull(reader.readLine());
+    }
+}
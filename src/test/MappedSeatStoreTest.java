@@ -0,0 +1,177 @@
+package showtime;
+
+import movie.Movie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSeatStoreTest {
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.createTempFile("seats", ".bin");
+        Files.delete(file);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    private Showtime showtime(int id, int rows, int cols) {
+        Showtime st = new Showtime(new Movie("Inception", 148), LocalDateTime.of(2030, 1, 1, 20, 0), rows, cols, 10.0, "Aud 1");
+        st.assignId(id);
+        return st;
+    }
+
+    @Test
+    void testAttachKeepsBookingsAndRecoveredStateWins() throws Exception {
+        Showtime st = showtime(3, 5, 30);
+        st.bookSeat(0, 0);
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            assertTrue(store.attach(st));
+            assertFalse(st.isSeatAvailable(0, 0), "Seats booked before attaching should carry over");
+            assertTrue(st.bookSeat(4, 29));
+            assertTrue(st.bookSeat(2, 10));
+            assertTrue(st.cancelSeat(2, 10));
+            assertEquals(148, st.getAvailableSeatCount());
+        }
+
+        // The restored showtime (snapshot + journal) says (4, 29) is free and (1, 5) is taken;
+        // the file's stale bits must not override it.
+        Showtime restarted = showtime(3, 5, 30);
+        restarted.bookSeat(0, 0);
+        restarted.bookSeat(1, 5);
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            assertTrue(store.attach(restarted));
+            assertFalse(restarted.isSeatAvailable(0, 0));
+            assertFalse(restarted.isSeatAvailable(1, 5));
+            assertTrue(restarted.isSeatAvailable(4, 29), "A seat the file still holds should not come back booked");
+            assertEquals(148, restarted.getAvailableSeatCount());
+        }
+
+        Showtime fresh = showtime(3, 5, 30);
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            assertTrue(store.attach(fresh));
+            assertEquals(150, fresh.getAvailableSeatCount(), "A new showtime reusing the ID should start empty");
+        }
+    }
+
+    @Test
+    void testCleanCloseKeepsRegionsForSameVersion() throws Exception {
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 7)) {
+            Showtime st = showtime(4, 6, 6);
+            assertTrue(store.attach(st));
+            st.bookSeat(2, 3);
+            st.bookSeat(5, 5);
+            store.markClean(7);
+        }
+
+        // Seats came back from the file, not from the (empty) showtime handed in.
+        Showtime reopened = showtime(4, 6, 6);
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 7)) {
+            assertTrue(store.attach(reopened));
+            assertFalse(reopened.isSeatAvailable(2, 3));
+            assertFalse(reopened.isSeatAvailable(5, 5));
+            assertEquals(34, reopened.getAvailableSeatCount());
+            // closed without markClean, as after a crash
+        }
+
+        Showtime afterCrash = showtime(4, 6, 6);
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 7)) {
+            assertTrue(store.attach(afterCrash));
+            assertEquals(36, afterCrash.getAvailableSeatCount(), "A store not closed cleanly should not be reused");
+            afterCrash.bookSeat(0, 0);
+            store.markClean(7);
+        }
+
+        Showtime newerState = showtime(4, 6, 6);
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 8)) {
+            assertTrue(store.attach(newerState));
+            assertEquals(36, newerState.getAvailableSeatCount(), "Regions written for another state version should be reset");
+        }
+    }
+
+    @Test
+    void testRegionWithOtherLayoutIsReset() throws Exception {
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            Showtime st = showtime(0, 4, 4);
+            store.attach(st);
+            st.bookSeat(1, 1);
+        }
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            Showtime other = showtime(0, 8, 8);
+            store.attach(other);
+            assertEquals(64, other.getAvailableSeatCount(), "A different seating chart should start empty");
+        }
+    }
+
+    @Test
+    void testAttachedShowtimeSerializesAsHeapCopy() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            Showtime st = showtime(5, 3, 3);
+            assertTrue(store.attach(st));
+            st.bookSeat(1, 2);
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(st);
+            }
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Showtime copy = (Showtime) in.readObject();
+            assertTrue(copy.bits() instanceof HeapSeatBits);
+            assertFalse(copy.isSeatAvailable(1, 2));
+            assertEquals(8, copy.getAvailableSeatCount());
+            assertTrue(copy.bookSeat(0, 0), "The copy should keep working after the store is closed");
+        }
+    }
+
+    @Test
+    void testOversizedShowtimeStaysOnHeap() throws Exception {
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            Showtime huge = showtime(1, 100, 100);
+            assertFalse(store.attach(huge));
+            assertTrue(huge.bookSeat(99, 99));
+            assertFalse(store.attach(new Showtime(new Movie("Up", 96), LocalDateTime.now(), 2, 2, 5.0, null)),
+                    "A showtime without an ID has no region");
+        }
+    }
+
+    @Test
+    void testConcurrentBookingOnMappedSeats() throws Exception {
+        try (MappedSeatStore store = MappedSeatStore.open(file.toString(), 0)) {
+            Showtime st = showtime(2048, 10, 20); // lands in a later segment
+            assertTrue(store.attach(st));
+            AtomicInteger wins = new AtomicInteger();
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    for (int r = 0; r < 10; r++) {
+                        for (int c = 0; c < 20; c++) {
+                            if (st.bookSeat(r, c)) wins.incrementAndGet();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertEquals(200, wins.get(), "Every seat should be won exactly once");
+            assertEquals(0, st.getAvailableSeatCount());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package test;
+
+import movie.Movie;
+import org.junit.jupiter.api.*;
+import server.Server;
+import showtime.Showtime;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioServerEngineTest {
+
+    private Server server;
+    private int port;
+
+    private static void deleteStore() {
+        new File("myDataBase.ser").delete();
+        new File("myDataBase.log").delete();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteStore();
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new Server(port, Server.ExecutionMode.NIO);
+        new Thread(server).start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+        deleteStore();
+    }
+
+    private Socket connect() throws Exception {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                Socket s = new Socket("localhost", port);
+                s.setSoTimeout(5000);
+                return s;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("NIO server did not start listening");
+        return null;
+    }
+
+    private static BufferedReader reader(Socket s) throws IOException {
+        return new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Test NIO engine greets clients and runs commands")
+    void testGreetingAndCommand() throws Exception {
+        try (Socket s = connect()) {
+            BufferedReader in = reader(s);
+            PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+
+            assertTrue(in.readLine().startsWith("CONNECTED|"));
+            out.println("LOGIN|admin|admin123");
+            assertTrue(in.readLine().startsWith("SUCCESS|"), "Default admin should log in over NIO");
+        }
+    }
+
+    @Test
+    @DisplayName("Test pipelined and split lines are answered in order")
+    void testPipelinedLinesKeepOrder() throws Exception {
+        try (Socket s = connect()) {
+            BufferedReader in = reader(s);
+            OutputStream raw = s.getOutputStream();
+            in.readLine();
+
+            // Three commands in one write, the last one split across two writes.
+            raw.write("REGISTER|niouser|secret123|nio@x.com\r\nLOGIN|niouser|wrongpass\nLOGIN|nio".getBytes(StandardCharsets.UTF_8));
+            raw.flush();
+            Thread.sleep(50);
+            raw.write("user|secret123\n".getBytes(StandardCharsets.UTF_8));
+            raw.flush();
+
+            assertEquals("SUCCESS|Account created successfully", in.readLine());
+            assertTrue(in.readLine().startsWith("ERROR|"), "Wrong password should fail");
+            assertTrue(in.readLine().startsWith("SUCCESS|"), "Login after registration should succeed");
+        }
+    }
+
+    @Test
+    @DisplayName("Test many idle clients are served without a thread each")
+    void testManyIdleClients() throws Exception {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                Socket s = connect();
+                sockets.add(s);
+                assertTrue(reader(s).readLine().startsWith("CONNECTED|"));
+            }
+
+            Socket last = sockets.get(sockets.size() - 1);
+            BufferedReader in = reader(last);
+            new PrintWriter(last.getOutputStream(), true).println("LOGIN|admin|admin123");
+            assertTrue(in.readLine().startsWith("SUCCESS|"));
+        } finally {
+            for (Socket s : sockets) {
+                s.close();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test a burst of logins does not hold up other clients' commands")
+    void testLoginBurstDoesNotBlockWorkers() throws Exception {
+        List<Socket> sockets = new ArrayList<>();
+        List<Thread> logins = new ArrayList<>();
+        AtomicInteger answered = new AtomicInteger();
+        try {
+            for (int i = 0; i < 20; i++) {
+                Socket s = connect();
+                s.setSoTimeout(60_000);
+                sockets.add(s);
+                BufferedReader in = reader(s);
+                assertTrue(in.readLine().startsWith("CONNECTED|"));
+                // Wrong passwords are never cached, so every login costs a full KDF run.
+                new PrintWriter(s.getOutputStream(), true).println("LOGIN|admin|wrong" + i);
+                Thread t = new Thread(() -> {
+                    try {
+                        in.readLine();
+                        answered.incrementAndGet();
+                    } catch (IOException e) {
+                        // the socket was closed by the finally block below
+                    }
+                });
+                t.start();
+                logins.add(t);
+            }
+
+            Socket other = connect();
+            sockets.add(other);
+            BufferedReader in = reader(other);
+            in.readLine();
+            new PrintWriter(other.getOutputStream(), true).println("LIST_MOVIES");
+            assertTrue(in.readLine().startsWith("SUCCESS|"));
+            // Workers waiting on the hashes would leave LIST_MOVIES queued behind most of the logins.
+            assertTrue(answered.get() < 10,
+                    "LIST_MOVIES should not wait for the logins; " + answered.get() + " answered first");
+
+            for (Thread t : logins) {
+                t.join(60_000);
+            }
+            assertEquals(20, answered.get());
+        } finally {
+            for (Socket s : sockets) {
+                s.close();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test a client that does not read its replies stops being read")
+    void testUnreadRepliesPauseReading() throws Exception {
+        Movie m = new Movie("Tenet", 150);
+        server.getDatabase().addMovie(m);
+        Showtime st = new Showtime(m, LocalDateTime.now().plusDays(1), 100, 100, 10.0, "Aud1");
+        server.getDatabase().addShowtime(st);
+
+        // Each request is ~32 KB and each seat map reply ~20 KB: 64 MB in, 40 MB out, far more
+        // than the socket buffers and the server's limits can hold while nothing is read.
+        int requests = 2000;
+        char[] padding = new char[32 * 1024];
+        Arrays.fill(padding, 'x');
+        byte[] request = ("VIEW_SEATS|ST_" + st.getId() + "|-1|" + new String(padding) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+
+        try (Socket s = connect()) {
+            s.setSoTimeout(30_000);
+            BufferedReader in = reader(s);
+            in.readLine();
+            OutputStream raw = s.getOutputStream();
+            AtomicInteger sent = new AtomicInteger();
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int i = 0; i < requests; i++) {
+                        raw.write(request);
+                        sent.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    // the socket was closed by the test
+                }
+            });
+            sender.start();
+
+            // Wait for the sender to stall on a full socket, or to finish.
+            int taken;
+            do {
+                taken = sent.get();
+                Thread.sleep(1000);
+            } while (sent.get() != taken && taken < requests);
+            assertTrue(taken < requests / 2,
+                    "The server should stop reading while its replies are unread; " + taken + " requests taken");
+
+            int answered = 0;
+            String line;
+            while (answered < requests && (line = in.readLine()) != null) {
+                if (line.startsWith("SUCCESS|")) {
+                    answered++;
+                }
+            }
+            assertEquals(requests, answered, "Every request should be answered once replies are read");
+            sender.join(5000);
+            assertFalse(sender.isAlive());
+        }
+    }
+}
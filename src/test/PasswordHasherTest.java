@@ -0,0 +1,83 @@
+package user;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the PBKDF2 format, the legacy MD5 path and hex encoding in PasswordHasher.
+ */
+class PasswordHasherTest {
+
+    @Test
+    @DisplayName("Test hashes are salted PBKDF2 and verify only the right password")
+    void testHashRoundTrip() {
+        String first = PasswordHasher.hash("secret1");
+        String second = PasswordHasher.hash("secret1");
+
+        String[] fields = first.split("\\$");
+        assertEquals(4, fields.length);
+        assertEquals("pbkdf2", fields[0]);
+        assertEquals(32, fields[2].length(), "16-byte salt in hex");
+        assertEquals(64, fields[3].length(), "256-bit key in hex");
+        assertNotEquals(first, second, "Each hash should get its own salt");
+
+        assertTrue(PasswordHasher.verify("secret1", first));
+        assertTrue(PasswordHasher.verify("secret1", first), "Second check goes through the cache");
+        assertTrue(PasswordHasher.verify("secret1", second));
+        assertFalse(PasswordHasher.verify("secret2", first));
+        assertFalse(PasswordHasher.needsRehash(first));
+    }
+
+    @Test
+    @DisplayName("Test legacy MD5 hashes still verify and are marked for rehashing")
+    void testLegacyMd5() {
+        String legacy = PasswordHasher.md5Hex("password123");
+        assertEquals("482c811da5d5b4bc6d497ffa98491e38", legacy);
+        assertTrue(PasswordHasher.verify("password123", legacy));
+        assertFalse(PasswordHasher.verify("password124", legacy));
+        assertTrue(PasswordHasher.needsRehash(legacy));
+    }
+
+    @Test
+    @DisplayName("Test cheaper and malformed hashes")
+    void testMalformedAndOutdatedHashes() {
+        String cheap = "pbkdf2$1$" + PasswordHasher.toHex(new byte[16]) + "$" + PasswordHasher.toHex(new byte[32]);
+        assertTrue(PasswordHasher.needsRehash(cheap));
+        assertFalse(PasswordHasher.verify("anything", cheap));
+
+        assertFalse(PasswordHasher.verify("x", null));
+        assertFalse(PasswordHasher.verify("x", "pbkdf2$abc$00$00"));
+        assertFalse(PasswordHasher.verify("x", "pbkdf2$10$$00"));
+        assertFalse(PasswordHasher.verify("x", "pbkdf2$10$zz$00"));
+        assertFalse(PasswordHasher.verify("x", "sha1$10$00$00"));
+        assertTrue(PasswordHasher.needsRehash("pbkdf2$abc$00$00"));
+    }
+
+    @Test
+    @DisplayName("Test hex encoding round trip")
+    void testHex() {
+        byte[] bytes = {0, 1, (byte) 0x7f, (byte) 0x80, (byte) 0xff};
+        assertEquals("00017f80ff", PasswordHasher.toHex(bytes));
+        assertArrayEquals(bytes, PasswordHasher.fromHex("00017F80ff"));
+        assertThrows(IllegalArgumentException.class, () -> PasswordHasher.fromHex("abc"));
+        assertThrows(IllegalArgumentException.class, () -> PasswordHasher.fromHex("0g"));
+    }
+
+    @Test
+    @DisplayName("Test work on the hashing pool returns its result or rethrows")
+    void testOnHashingPool() {
+        assertEquals(Integer.valueOf(42), PasswordHasher.onHashingPool(() -> 42));
+        assertThrows(IllegalStateException.class, () -> PasswordHasher.onHashingPool(() -> {
+            throw new IllegalStateException("boom");
+        }));
+    }
+
+    @Test
+    @DisplayName("Test a login for a missing user never verifies")
+    void testVerifyMissing() {
+        assertFalse(PasswordHasher.verifyMissing("secret1"));
+        assertFalse(PasswordHasher.verifyMissing(""));
+    }
+}
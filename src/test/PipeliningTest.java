@@ -0,0 +1,149 @@
+package test;
+
+import client.Client;
+import movie.Movie;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import server.Server;
+import showtime.Showtime;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends tagged commands without waiting for replies and checks each reply line carries its tag,
+ * with both the thread-per-connection and the NIO engine.
+ */
+class PipeliningTest {
+
+    private Server server;
+    private int port;
+
+    private static void deleteStore() {
+        new File("myDataBase.ser").delete();
+        new File("myDataBase.log").delete();
+    }
+
+    private void startServer(Server.ExecutionMode mode) throws IOException {
+        deleteStore();
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new Server(port, mode);
+        Movie inception = new Movie("Inception", 148);
+        Movie memento = new Movie("Memento", 113);
+        server.getDatabase().addMovie(inception);
+        server.getDatabase().addMovie(memento);
+        server.getDatabase().addShowtime(new Showtime(inception, LocalDateTime.now().plusDays(1), 2, 2, 10.0, "Aud1"));
+        new Thread(server).start();
+    }
+
+    private Socket connect() throws Exception {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                Socket s = new Socket("localhost", port);
+                s.setSoTimeout(5000);
+                return s;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("Server did not start listening");
+        return null;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        deleteStore();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Server.ExecutionMode.class, names = {"THREAD_PER_CONNECTION", "NIO"})
+    @DisplayName("Test tagged replies come back in order with their tags")
+    void testTaggedRepliesKeepOrder(Server.ExecutionMode mode) throws Exception {
+        startServer(mode);
+        try (Socket s = connect()) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(in.readLine().startsWith("CONNECTED|"));
+
+            OutputStream out = s.getOutputStream();
+            out.write(("#a|LIST_MOVIES\n#b|LIST_SHOWTIMES|Memento\n#|LIST_MOVIES\nBOGUS\n#c|LIST_SHOWTIMES|Inception\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertEquals("#a|SUCCESS|2", in.readLine());
+            assertTrue(in.readLine().startsWith("#a|MOVIE|Inception|"));
+            assertTrue(in.readLine().startsWith("#a|MOVIE|Memento|"));
+            assertEquals("#a|END_LIST", in.readLine());
+            assertEquals("#a|END_RESPONSE", in.readLine());
+            assertEquals("#b|SUCCESS|0", in.readLine());
+            assertEquals("#b|END_LIST", in.readLine());
+            assertEquals("#b|END_RESPONSE", in.readLine());
+            assertTrue(in.readLine().startsWith("ERROR|"), "An empty tag is rejected untagged");
+            assertTrue(in.readLine().startsWith("ERROR|"), "Untagged commands are answered as before");
+            assertEquals("#c|SUCCESS|1", in.readLine());
+            assertTrue(in.readLine().startsWith("#c|SHOWTIME|"));
+            assertEquals("#c|END_LIST", in.readLine());
+            assertEquals("#c|END_RESPONSE", in.readLine());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Server.ExecutionMode.class, names = {"THREAD_PER_CONNECTION", "NIO"})
+    @DisplayName("Test a command is answered while the next one is only partly received")
+    void testReplyNotHeldByPartialLine(Server.ExecutionMode mode) throws Exception {
+        startServer(mode);
+        try (Socket s = connect()) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(in.readLine().startsWith("CONNECTED|"));
+
+            OutputStream out = s.getOutputStream();
+            out.write("LIST_MOVIES\nLIST_SHOW".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals("SUCCESS|2", in.readLine(), "The reply should not wait for the rest of the next line");
+            assertTrue(in.readLine().startsWith("MOVIE|Inception|"));
+            assertTrue(in.readLine().startsWith("MOVIE|Memento|"));
+            assertEquals("END_LIST", in.readLine());
+
+            out.write("TIMES|Memento\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals("SUCCESS|0", in.readLine());
+            assertEquals("END_LIST", in.readLine());
+        }
+    }
+
+    @Test
+    @DisplayName("Test client collects pipelined replies per command")
+    void testClientSendPipelined() throws Exception {
+        startServer(Server.ExecutionMode.NIO);
+        connect().close(); // wait until the server listens
+
+        Client client = new Client("localhost", port);
+        client.connect();
+        try {
+            List<List<String>> replies = client.sendPipelined(List.of(
+                    "LIST_MOVIES", "LIST_SHOWTIMES|Inception", "LIST_SHOWTIMES|Memento"));
+
+            assertEquals(3, replies.size());
+            assertEquals(4, replies.get(0).size(), "SUCCESS, two MOVIE lines and END_LIST");
+            assertEquals("SUCCESS|1", replies.get(1).get(0));
+            assertEquals(List.of("SUCCESS|0", "END_LIST"), replies.get(2));
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package server;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that ResponseWriter encodes like String.getBytes(UTF_8) and only writes on flush.
+ */
+class ResponseWriterTest {
+
+    @Test
+    @DisplayName("Test text is encoded as UTF-8, including pairs split across writes")
+    void testEncodesUtf8() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResponseWriter writer = new ResponseWriter(bytes);
+        String text = "MOVIE|Am\u00e9lie|\u4e2d\u6587|\ud83c\udfac|";
+        writer.write(text);
+        writer.write("\ud83c");
+        writer.write("\udfac");
+        writer.write("\udfac!");
+        writer.flush();
+
+        String expected = text + "\ud83c\udfac" + "?!";
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+    }
+
+    @Test
+    @DisplayName("Test nothing reaches the stream before flush, and big responses go in chunks")
+    void testBuffersUntilFlush() throws IOException {
+        int[] writes = {0};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes[0]++;
+                super.write(b, off, len);
+            }
+        };
+        ResponseWriter writer = new ResponseWriter(bytes);
+        writer.write("SUCCESS|1\nEND_LIST\n");
+        assertEquals(0, bytes.size());
+        writer.flush();
+        assertEquals(1, writes[0]);
+
+        String line = "BOOKING_DETAIL|" + "x".repeat(100) + "\n";
+        int lines = 10_000;
+        for (int i = 0; i < lines; i++) {
+            writer.write(line);
+        }
+        writer.flush();
+        int total = line.length() * lines;
+        assertEquals(total + "SUCCESS|1\nEND_LIST\n".length(), bytes.size());
+        assertEquals(1 + (total + ResponseWriter.MAX_BUFFER - 1) / ResponseWriter.MAX_BUFFER, writes[0]);
+    }
+
+    @Test
+    @DisplayName("Test pre-encoded bytes are copied between text, and large blocks go straight out")
+    void testWriteEncoded() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ResponseWriter writer = new ResponseWriter(bytes);
+        byte[] cached = "MOVIE|Am\u00e9lie\n".getBytes(StandardCharsets.UTF_8);
+        byte[] large = new byte[ResponseWriter.MAX_BUFFER + 10];
+        Arrays.fill(large, (byte) 'x');
+
+        writer.write("#a|");
+        writer.writeEncoded(cached, 0, cached.length);
+        writer.write("#a|");
+        writer.writeEncoded(large, 0, large.length);
+        writer.write("END");
+        writer.flush();
+
+        String expected = "#a|MOVIE|Am\u00e9lie\n#a|" + "x".repeat(large.length) + "END";
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+    }
+}
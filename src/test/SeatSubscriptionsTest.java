@@ -0,0 +1,176 @@
+package server;
+
+import movie.Movie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import showtime.Showtime;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks seat subscriptions: SeatSubscriptions on its own, where updates wait in the
+ * subscriber's queue until its writer drains them and topics go away with their last
+ * subscriber, and over a real socket, where changes are pushed, coalesced and stopped on
+ * UNSUBSCRIBE_SEATS with both the thread-per-connection and the NIO engine.
+ */
+class SeatSubscriptionsTest {
+
+    private final SeatSubscriptions subscriptions = new SeatSubscriptions();
+    private Server server;
+    private Showtime showtime;
+    private Socket socket;
+    private BufferedReader in;
+    private PrintWriter out;
+
+    private static Showtime showtime(int id) {
+        Showtime st = new Showtime(new Movie("Dune", 155), LocalDateTime.now().plusDays(1), 2, 2, 9.0, "Aud1");
+        st.assignId(id);
+        return st;
+    }
+
+    private static void deleteStore() {
+        new File("myDataBase.ser").delete();
+        new File("myDataBase.log").delete();
+    }
+
+    private void startServer(Server.ExecutionMode mode) throws Exception {
+        deleteStore();
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new Server(port, mode);
+        Movie m = new Movie("Tenet", 150);
+        server.getDatabase().addMovie(m);
+        showtime = new Showtime(m, LocalDateTime.now().plusDays(1), 3, 4, 10.0, "Aud1");
+        server.getDatabase().addShowtime(showtime);
+        new Thread(server).start();
+
+        for (int attempt = 0; attempt < 50 && socket == null; attempt++) {
+            try {
+                socket = new Socket("localhost", port);
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        assertNotNull(socket, "Server did not start listening");
+        socket.setSoTimeout(5000);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out = new PrintWriter(socket.getOutputStream(), true);
+        assertTrue(in.readLine().startsWith("CONNECTED|"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        subscriptions.shutdown();
+        if (socket != null) {
+            socket.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+        deleteStore();
+    }
+
+    @Test
+    @DisplayName("Test updates queue until the writer drains them, coalesced per showtime")
+    void testUpdatesWaitForWriter() throws Exception {
+        Semaphore woken = new Semaphore(0);
+        SeatSubscriptions.Subscriber subscriber = subscriptions.newSubscriber(woken::release);
+        Showtime st = showtime(1);
+        assertTrue(subscriptions.subscribe(subscriber, st, st.getSeatVersion()));
+
+        st.bookSeat(0, 0);
+        assertTrue(woken.tryAcquire(2, TimeUnit.SECONDS), "The connection should be woken");
+        st.bookSeat(1, 1); // lands in the update still waiting in the queue
+        Thread.sleep(150);
+        assertTrue(subscriber.hasPending());
+
+        List<String> lines = new ArrayList<>();
+        subscriber.drain(lines::add);
+        assertEquals(List.of("SEAT_UPDATE|ST_1|" + st.getSeatVersion() + "|1:1:0,2:2:0"), lines);
+        assertFalse(subscriber.hasPending());
+    }
+
+    @Test
+    @DisplayName("Test a topic is dropped with its last subscriber or when its showtime is gone")
+    void testTopicsAreRemoved() {
+        SeatSubscriptions.Subscriber first = subscriptions.newSubscriber(() -> { });
+        SeatSubscriptions.Subscriber second = subscriptions.newSubscriber(() -> { });
+        Showtime a = showtime(1);
+        Showtime b = showtime(2);
+        subscriptions.subscribe(first, a, 0);
+        subscriptions.subscribe(second, a, 0);
+        subscriptions.subscribe(first, b, 0);
+        assertEquals(2, subscriptions.topicCount());
+
+        subscriptions.unsubscribe(first, a.getId());
+        assertEquals(2, subscriptions.topicCount(), "Topic should stay while it has a subscriber");
+        subscriptions.unsubscribeAll(second);
+        assertEquals(1, subscriptions.topicCount());
+
+        subscriptions.retainShowtimes(st -> st != b);
+        assertEquals(0, subscriptions.topicCount(), "An archived showtime's topic should be dropped");
+        assertEquals(0, first.size());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Server.ExecutionMode.class, names = {"THREAD_PER_CONNECTION", "NIO"})
+    @DisplayName("Test seat changes are pushed to subscribers")
+    void testChangesArePushedAndCoalesced(Server.ExecutionMode mode) throws Exception {
+        startServer(mode);
+        String id = "ST_" + showtime.getId();
+        out.println("SUBSCRIBE_SEATS|" + id);
+        String reply = in.readLine();
+        assertTrue(reply.startsWith("SUCCESS|" + id + "|"), reply);
+        long version = Long.parseLong(reply.split("\\|")[2]);
+
+        showtime.bookSeat(0, 0);
+        showtime.bookSeat(2, 3);
+        showtime.cancelSeat(0, 0);
+
+        String update = in.readLine();
+        assertEquals("SEAT_UPDATE|" + id + "|" + (version + 3) + "|1:1:1,3:4:0", update,
+                "A burst of changes should arrive as one update with each seat's current state");
+
+        out.println("UNSUBSCRIBE_SEATS|" + id);
+        assertTrue(in.readLine().startsWith("SUCCESS|"));
+        showtime.bookSeat(1, 1);
+        socket.setSoTimeout(300);
+        assertThrows(SocketTimeoutException.class, () -> in.readLine(), "No pushes after unsubscribing");
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Server.ExecutionMode.class, names = {"THREAD_PER_CONNECTION", "NIO"})
+    @DisplayName("Test subscribing from an older version pushes the missed changes")
+    void testSubscribeSinceVersionCatchesUp(Server.ExecutionMode mode) throws Exception {
+        startServer(mode);
+        String id = "ST_" + showtime.getId();
+        long seen = showtime.getSeatVersion();
+        showtime.bookSeat(1, 2);
+
+        out.println("SUBSCRIBE_SEATS|" + id + "|" + seen);
+        assertTrue(in.readLine().startsWith("SUCCESS|" + id + "|"));
+        assertEquals("SEAT_UPDATE|" + id + "|" + (seen + 1) + "|2:3:0", in.readLine());
+
+        out.println("LIST_MOVIES");
+        assertEquals("SUCCESS|1", in.readLine(), "Replies continue normally after a push");
+    }
+}
@@ -0,0 +1,125 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import server.Server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Opens many concurrent connections against each execution mode and has every one of them
+ * run a command. Every client must be served, and the virtual-thread and NIO modes must do it
+ * without a platform thread per connection. The database files go to a temporary directory.
+ */
+class ServerLoadTest {
+
+    private static final int CLIENTS = 300;
+    // Threads a shared-thread mode may add: virtual-thread carriers or the selector, plus the
+    // accept loop, archiver and snapshot writer.
+    private static final int SHARED_THREAD_SLACK = Runtime.getRuntime().availableProcessors() + 16;
+
+    @TempDir
+    Path dataDir;
+
+    private Server server;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("cinema.dataDir", dataDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        System.clearProperty("cinema.dataDir");
+    }
+
+    /**
+     * Serves CLIENTS connections at once and returns how many live threads the server added.
+     */
+    private int runLoad(Server.ExecutionMode mode) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new Server(port, mode);
+        new Thread(server).start();
+
+        int threadsBefore = Thread.activeCount();
+        List<Socket> sockets = new ArrayList<>();
+        List<BufferedReader> readers = new ArrayList<>();
+        try {
+            for (int i = 0; i < CLIENTS; i++) {
+                Socket s = connect(port);
+                sockets.add(s);
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                readers.add(in);
+                assertTrue(in.readLine().startsWith("CONNECTED|"));
+            }
+            int addedThreads = Thread.activeCount() - threadsBefore;
+
+            for (Socket s : sockets) {
+                new PrintWriter(s.getOutputStream(), true).println("LIST_MOVIES");
+            }
+            for (BufferedReader in : readers) {
+                String reply = in.readLine();
+                assertNotNull(reply, "Every client should get a reply");
+                assertTrue(reply.startsWith("SUCCESS|"), reply);
+            }
+            return addedThreads;
+        } finally {
+            for (Socket s : sockets) {
+                s.close();
+            }
+        }
+    }
+
+    private static Socket connect(int port) throws Exception {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                Socket s = new Socket("localhost", port);
+                s.setSoTimeout(10000);
+                return s;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("Server did not start listening");
+        return null;
+    }
+
+    @Test
+    @DisplayName("Load: platform thread per connection")
+    void testThreadPerConnection() throws Exception {
+        int added = runLoad(Server.ExecutionMode.THREAD_PER_CONNECTION);
+        assertTrue(added >= CLIENTS, "Expected a thread per connection, got +" + added);
+    }
+
+    @Test
+    @DisplayName("Load: virtual thread per connection")
+    void testVirtualThreads() throws Exception {
+        int added = runLoad(Server.ExecutionMode.VIRTUAL);
+        // Before Java 21 the server falls back to a cached pool of platform threads.
+        Assumptions.assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need Java 21");
+        assertTrue(added <= SHARED_THREAD_SLACK, "Virtual threads should share a few carriers, got +" + added);
+    }
+
+    @Test
+    @DisplayName("Load: NIO selector engine")
+    void testNio() throws Exception {
+        int added = runLoad(Server.ExecutionMode.NIO);
+        assertTrue(added <= SHARED_THREAD_SLACK, "The selector should serve every connection, got +" + added);
+    }
+}
@@ -140,6 +140,122 @@ class ShowtimeTest {
                 "Price should scale smoothly with occupancy (~83%)");
     }
 
+    @Test
+    void testAvailableCountAcrossWordBoundaries() {
+        Showtime showtime = new Showtime(exampleMovie(), LocalDateTime.now(), 9, 15, 10.0, "Big");
+        assertEquals(135, showtime.getAvailableSeatCount());
+        for (int c = 0; c < 15; c++) {
+            assertTrue(showtime.bookSeat(4, c)); // bits 60..74 span two words
+        }
+        assertEquals(120, showtime.getAvailableSeatCount());
+        assertFalse(showtime.isSeatAvailable(4, 3));
+        assertTrue(showtime.isSeatAvailable(3, 14));
+        assertTrue(showtime.isSeatAvailable(5, 0));
+        assertTrue(showtime.cancelSeat(4, 4));
+        assertEquals(121, showtime.getAvailableSeatCount());
+    }
+
+    @Test
+    void testSeatsAllocatedLazilyWhenNotSupplied() {
+        Showtime showtime = new Showtime(exampleMovie(), LocalDateTime.now(), 2, 3, 10.0, null);
+        assertNull(showtime.getSeat(1, 2));
+        Seat[][] seats = showtime.getSeats();
+        assertEquals(2, seats.length);
+        assertEquals(3, seats[0].length);
+        seats[1][2] = new Seat(1, 2, 11.0);
+        assertSame(seats[1][2], showtime.getSeat(1, 2), "Seats placed into getSeats() should be visible");
+    }
+
+    @Test
+    void testTryBookSeatsIsAllOrNothing() {
+        Showtime showtime = new Showtime(exampleMovie(), LocalDateTime.now(), 3, 3, 10.0, null);
+        assertTrue(showtime.bookSeat(1, 1));
+
+        assertFalse(showtime.tryBookSeats(new int[]{0, 1, 2}, new int[]{0, 1, 2}));
+        assertTrue(showtime.isSeatAvailable(0, 0), "Seats taken before the conflict should be rolled back");
+        assertTrue(showtime.isSeatAvailable(2, 2));
+        assertEquals(8, showtime.getAvailableSeatCount());
+
+        assertFalse(showtime.tryBookSeats(new int[]{0, 0}, new int[]{0, 0}), "Repeated seat should fail");
+        assertTrue(showtime.isSeatAvailable(0, 0));
+
+        assertTrue(showtime.tryBookSeats(new int[]{0, 2}, new int[]{0, 2}));
+        assertFalse(showtime.isSeatAvailable(0, 0));
+        assertFalse(showtime.isSeatAvailable(2, 2));
+        assertEquals(6, showtime.getAvailableSeatCount());
+    }
+
+    @Test
+    void testConcurrentTryBookSeatsNeverDoubleBooks() throws Exception {
+        Showtime showtime = new Showtime(exampleMovie(), LocalDateTime.now(), 10, 20, 10.0, null);
+        int threads = 8;
+        int[] booked = new int[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                // Overlapping pairs: every seat is contended by several threads.
+                for (int i = 0; i < 200; i++) {
+                    int seat = (i + id) % 199;
+                    int[] rows = {seat / 20, (seat + 1) / 20};
+                    int[] cols = {seat % 20, (seat + 1) % 20};
+                    if (showtime.tryBookSeats(rows, cols)) {
+                        booked[id] += 2;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+
+        int total = 0;
+        for (int n : booked) {
+            total += n;
+        }
+        int bookedSeats = 0;
+        for (int r = 0; r < 10; r++) {
+            for (int c = 0; c < 20; c++) {
+                if (!showtime.isSeatAvailable(r, c)) bookedSeats++;
+            }
+        }
+        assertEquals(total, bookedSeats, "Each successful booking should own its seats exclusively");
+        assertEquals(200 - bookedSeats, showtime.getAvailableSeatCount());
+    }
+
+    @Test
+    void testAssignIdOnlyOnce() {
+        Showtime showtime = new Showtime(exampleMovie(), LocalDateTime.now(), 1, 1, 5.0, null);
+        showtime.assignId(7);
+        assertEquals(7, showtime.getId());
+        assertThrows(IllegalStateException.class, () -> showtime.assignId(8));
+    }
+
+    @Test
+    void testSeatVersionTracksChanges() {
+        Showtime showtime = new Showtime(exampleMovie(), LocalDateTime.now(), 4, 5, 10.0, null);
+        long start = showtime.getSeatVersion();
+        assertTrue(showtime.bookSeat(0, 1));
+        assertFalse(showtime.bookSeat(0, 1), "A failed booking changes nothing");
+        assertTrue(showtime.bookSeat(3, 4));
+        assertTrue(showtime.cancelSeat(0, 1));
+        long now = showtime.getSeatVersion();
+        assertEquals(start + 3, now);
+
+        assertArrayEquals(new int[]{1, 19}, showtime.getChangedSeatsSince(start, now));
+        assertArrayEquals(new int[]{1}, showtime.getChangedSeatsSince(now - 1, now));
+        assertArrayEquals(new int[0], showtime.getChangedSeatsSince(now, now));
+        assertNull(showtime.getChangedSeatsSince(0, now), "Unknown versions need a full map");
+
+        for (int i = 0; i < SeatChangeLog.CAPACITY; i++) {
+            showtime.bookSeat(1, 1);
+            showtime.cancelSeat(1, 1);
+        }
+        assertNull(showtime.getChangedSeatsSince(now, showtime.getSeatVersion()),
+                "Changes older than the ring need a full map");
+    }
+
     @Test
     void testHasStarted() {
         Movie m =  exampleMovie();
@@ -0,0 +1,174 @@
+package test;
+
+import database.Database;
+import movie.Movie;
+import reservation.Reservation;
+import seat.Seat;
+import showtime.Showtime;
+import user.PasswordHasher;
+import user.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the binary snapshot format with the Java serialization it replaced, and checks
+ * that stores in the old format are still imported.
+ */
+public class SnapshotFormatTest {
+
+    private static final File STORE = new File("myDataBase.ser");
+    // Hashed once: 200 users at full PBKDF2 cost would dominate the test run.
+    private static final String SECRET_HASH = PasswordHasher.hash("secret123");
+
+    private Database db;
+
+    private static void deleteStore() {
+        STORE.delete();
+        new File("myDataBase.log").delete();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        deleteStore();
+        db = new Database();
+        for (int i = 0; i < 200; i++) {
+            db.addUser(User.withPasswordHash("user" + i, SECRET_HASH, "user" + i + "@x.com", i == 0));
+        }
+        for (int i = 0; i < 20; i++) {
+            db.addMovie(new Movie("Movie " + i, "Drama", "PG", 100 + i, null));
+        }
+        for (int i = 0; i < 100; i++) {
+            Movie m = db.findMovie("Movie " + (i % 20));
+            db.addShowtime(new Showtime(m, LocalDateTime.of(2030, 1, 1 + i % 28, 10 + i % 12, 0), 10, 20, 12.5, "Aud" + i % 5));
+        }
+        int n = 0;
+        for (Showtime st : db.getShowtimes()) {
+            for (int row = 0; row < 10; row++) {
+                User u = db.findUser("user" + (n++ % 200));
+                ArrayList<Seat> seats = new ArrayList<>();
+                seats.add(new Seat(row, 0, st.getBasePrice()));
+                seats.add(new Seat(row, 1, st.getBasePrice()));
+                Reservation r = new Reservation(u, st, seats, "1234567891011121", "02/27", "123");
+                db.addReservation(r);
+                u.addReservation(r);
+            }
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        deleteStore();
+    }
+
+    private void assertSameContents(Database loaded) {
+        assertEquals(db.getUsers().size(), loaded.getUsers().size());
+        assertEquals(db.getMovies().size(), loaded.getMovies().size());
+        assertEquals(db.getShowtimes().size(), loaded.getShowtimes().size());
+        assertEquals(db.getReservations().size(), loaded.getReservations().size());
+        for (Showtime st : db.getShowtimes()) {
+            Showtime restored = loaded.findShowtimeById(st.getId());
+            assertNotNull(restored);
+            assertEquals(st.getAvailableSeatCount(), restored.getAvailableSeatCount());
+            assertEquals(st.getDateTime(), restored.getDateTime());
+        }
+        User u = loaded.findUser("user7");
+        assertTrue(u.verifyPassword("secret123"));
+        assertEquals(db.findUser("user7").getReservations().size(), u.getReservations().size());
+        assertTrue(loaded.findUser("user0").isAdmin());
+    }
+
+    @Test
+    public void testBinaryFormatIsSmallerAndRoundTrips() throws Exception {
+        db.saveDatabase();
+        long binarySize = STORE.length();
+        long start = System.nanoTime();
+        Database binary = (Database) new Database().loadDatabase();
+        long binaryLoadMs = (System.nanoTime() - start) / 1_000_000;
+        assertSameContents(binary);
+
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(STORE))) {
+            out.writeObject(db);
+        }
+        long legacySize = STORE.length();
+        start = System.nanoTime();
+        Database legacy = (Database) new Database().loadDatabase();
+        long legacyLoadMs = (System.nanoTime() - start) / 1_000_000;
+        assertSameContents(legacy);
+
+        System.out.println("Snapshot: binary " + binarySize + " bytes / " + binaryLoadMs + " ms, "
+                + "serialized " + legacySize + " bytes / " + legacyLoadMs + " ms");
+        assertTrue(binarySize < legacySize, "Binary snapshot should be smaller than Java serialization");
+    }
+
+    @Test
+    public void testImportedStoreIsRewrittenInBinary() throws Exception {
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(STORE))) {
+            out.writeObject(db);
+        }
+        Database imported = (Database) new Database().loadDatabase();
+        imported.saveDatabase();
+
+        try (RandomAccessFile f = new RandomAccessFile(STORE, "r")) {
+            assertEquals(0x43534E50, f.readInt(), "Next snapshot should use the binary format");
+        }
+        assertSameContents((Database) new Database().loadDatabase());
+    }
+
+    private static void flipByte(long position) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(STORE, "rw")) {
+            f.seek(position);
+            int b = f.read();
+            f.seek(position);
+            f.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    public void testCorruptCatalogIsRejected() throws Exception {
+        db.saveDatabase();
+        flipByte(40);
+        assertThrows(IOException.class, () -> new Database().loadDatabase());
+    }
+
+    @Test
+    public void testCorruptReservationsAreRejectedWhenPagedIn() throws Exception {
+        db.saveDatabase();
+        flipByte(STORE.length() - 100);
+        Database loaded = (Database) new Database().loadDatabase();
+        assertThrows(UncheckedIOException.class, loaded::getReservations);
+        assertFalse(loaded.reservationsLoaded(), "Failed load should leave reservations deferred");
+    }
+
+    @Test
+    public void testReservationsArePagedInOnFirstAccess() throws Exception {
+        db.saveDatabase();
+        Database loaded = (Database) new Database().loadDatabase();
+        assertFalse(loaded.reservationsLoaded());
+
+        // Logins, listings and seat maps work without touching reservations.
+        assertTrue(loaded.findUser("user3").verifyPassword("secret123"));
+        assertEquals(20, loaded.getMovies().size());
+        Showtime st = loaded.getShowtimes().get(0);
+        assertFalse(st.isSeatAvailable(0, 0), "Seat state should come from the snapshot bitmaps");
+        assertEquals(180, st.getAvailableSeatCount());
+        assertFalse(loaded.reservationsLoaded());
+
+        assertEquals(db.findUser("user3").getReservations().size(), loaded.findUser("user3").getReservations().size());
+        assertTrue(loaded.reservationsLoaded());
+        assertEquals(180, st.getAvailableSeatCount(), "Paging in must not book seats twice");
+        assertEquals(db.getReservations().size(), loaded.getReservations().size());
+    }
+}
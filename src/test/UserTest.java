@@ -5,8 +5,12 @@ import org.junit.jupiter.api.Test;
 import user.User;
 import showtime.Showtime;
 import reservation.Reservation;
+import movie.Movie;
+import seat.Seat;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -187,5 +191,34 @@ public class UserTest {
         assertFalse(regularUser.hasReservation("ID does not exist"), "User should not have a reservation ID");
     }
 
-}
+    @Test
+    public void testReservationsKeepBookingOrderAndAreCopied() {
+        Showtime s = new Showtime(
+                new Movie("Matrix", "Sci-Fi", "PG-13", 136, "matrix.jpg"),
+                LocalDateTime.now(),
+                5, 5, 10.0,
+                "Auditorium 1"
+        );
+        ArrayList<Reservation> booked = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ArrayList<Seat> seats = new ArrayList<>();
+            seats.add(new Seat(i, 0, 10.0));
+            Reservation r = new Reservation(regularUser, s, seats, "1234567891011121", "02/27", "123");
+            regularUser.addReservation(r);
+            booked.add(r);
+        }
+        regularUser.addReservation(booked.get(1));
+        assertEquals(booked, regularUser.getReservations(), "Re-adding a booking should not duplicate or move it");
 
+        regularUser.getReservations().clear();
+        assertEquals(3, regularUser.getReservations().size(), "The returned list should be a copy");
+
+        regularUser.removeReservation(booked.get(1).getBookingID());
+        assertEquals(List.of(booked.get(0), booked.get(2)), regularUser.getReservations());
+
+        assertEquals(List.of(booked.get(0), booked.get(2)), regularUser.removeAllReservations());
+        assertFalse(regularUser.hasReservation(booked.get(0).getBookingID()));
+        assertTrue(regularUser.getReservations().isEmpty());
+    }
+
+}
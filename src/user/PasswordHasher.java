@@ -0,0 +1,282 @@
+package user;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Salted PBKDF2 password hashes, and the bounded pool they are computed on.
+ *
+ * Notes:
+ * - Stored hashes look like "pbkdf2$iterations$saltHex$hashHex" (PBKDF2WithHmacSHA256, 16-byte
+ *   salt, 256-bit key). A bare 32-digit hex string is an unsalted MD5 hash from before; it still
+ *   verifies, and needsRehash() reports it so it can be replaced after the next successful login.
+ * - The cost is -Dcinema.passwordIterations (default DEFAULT_ITERATIONS). Hashes made with fewer
+ *   iterations than configured also count as outdated.
+ * - onHashingPool() runs work on HASHING_THREADS daemon threads with a queue of QUEUE_CAPACITY;
+ *   beyond that it throws RejectedExecutionException, so a burst of logins is turned away rather
+ *   than taking every CPU (and client thread) from bookings. submit() queues the same work
+ *   without waiting, for callers (the NIO workers) that must not block on it.
+ * - Passwords verified against a PBKDF2 hash are remembered as a SHA-256 digest (keyed with a
+ *   random per-process pepper) of the password, per stored hash. A repeat login with the same
+ *   password then costs one digest instead of a full KDF run. The cache holds at most
+ *   VERIFIED_CACHE_SIZE entries and is lost on restart.
+ * - verifyMissing() checks a password against a dummy hash of the same cost, so unknown
+ *   usernames cannot be told apart from known ones by how fast a login fails.
+ */
+public final class PasswordHasher {
+
+    static final int DEFAULT_ITERATIONS = 100_000;
+    static final int HASHING_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    static final int QUEUE_CAPACITY = 256;
+    static final int VERIFIED_CACHE_SIZE = 4096;
+
+    private static final String PREFIX = "pbkdf2";
+    private static final char SEPARATOR = '$';
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int ITERATIONS = Math.max(1, Integer.getInteger("cinema.passwordIterations", DEFAULT_ITERATIONS));
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] PEPPER = new byte[32];
+
+    static {
+        RANDOM.nextBytes(PEPPER);
+    }
+
+    private static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(HASHING_THREADS, HASHING_THREADS,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                Thread t = new Thread(r, "password-hasher");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private static final ReentrantLock VERIFIED_LOCK = new ReentrantLock();
+    private static final Map<String, byte[]> VERIFIED = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > VERIFIED_CACHE_SIZE;
+        }
+    };
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * Runs the task on the hashing pool and waits for its result.
+     *
+     * @throws RejectedExecutionException if the pool's queue is full
+     */
+    public static <T> T onHashingPool(Callable<T> task) {
+        CompletableFuture<T> future = submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the hashing pool", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Queues the task on the hashing pool without waiting for it.
+     *
+     * @return future completed with the task's result, or exceptionally with what it threw
+     * @throws RejectedExecutionException if the pool's queue is full
+     */
+    public static <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        POOL.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Hashes the password with a new random salt and the configured cost.
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] key = pbkdf2(password, salt, ITERATIONS, KEY_BITS);
+        return PREFIX + SEPARATOR + ITERATIONS + SEPARATOR + toHex(salt) + SEPARATOR + toHex(key);
+    }
+
+    /**
+     * Checks the password against a stored hash in either format. Malformed hashes never match.
+     */
+    public static boolean verify(String password, String stored) {
+        if (stored == null) {
+            return false;
+        }
+        if (stored.indexOf(SEPARATOR) < 0) {
+            return MessageDigest.isEqual(stored.getBytes(StandardCharsets.US_ASCII),
+                    md5Hex(password).getBytes(StandardCharsets.US_ASCII));
+        }
+
+        byte[] digest = pepperedDigest(password);
+        VERIFIED_LOCK.lock();
+        try {
+            byte[] known = VERIFIED.get(stored);
+            if (known != null && MessageDigest.isEqual(known, digest)) {
+                return true;
+            }
+        } finally {
+            VERIFIED_LOCK.unlock();
+        }
+
+        String[] fields = stored.split("\\$");
+        if (fields.length != 4 || !PREFIX.equals(fields[0])) {
+            return false;
+        }
+        int iterations;
+        byte[] salt;
+        byte[] expected;
+        try {
+            iterations = Integer.parseInt(fields[1]);
+            salt = fromHex(fields[2]);
+            expected = fromHex(fields[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (iterations <= 0 || salt.length == 0 || expected.length == 0) {
+            return false;
+        }
+        byte[] actual = pbkdf2(password, salt, iterations, expected.length * 8);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return false;
+        }
+
+        VERIFIED_LOCK.lock();
+        try {
+            VERIFIED.put(stored, digest);
+        } finally {
+            VERIFIED_LOCK.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Runs the same KDF as verifying a real stored hash, and always returns false. Used for
+     * unknown usernames, so a failed login takes as long whether or not the account exists.
+     */
+    public static boolean verifyMissing(String password) {
+        verify(password, DummyHash.VALUE);
+        return false;
+    }
+
+    /**
+     * Returns true if the stored hash should be replaced: an MD5 hash, or PBKDF2 with fewer
+     * iterations than configured.
+     */
+    public static boolean needsRehash(String stored) {
+        if (stored == null || stored.indexOf(SEPARATOR) < 0) {
+            return true;
+        }
+        int start = PREFIX.length() + 1;
+        int end = stored.indexOf(SEPARATOR, start);
+        if (!stored.startsWith(PREFIX + SEPARATOR) || end < 0) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(stored, start, end, 10) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Unsalted MD5 in lowercase hex, the format every stored hash had before PBKDF2.
+     */
+    static String md5Hex(String password) {
+        try {
+            return toHex(MessageDigest.getInstance("MD5").digest(password.getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    static byte[] fromHex(String hex) {
+        if ((hex.length() & 1) != 0) {
+            throw new IllegalArgumentException("Odd hex length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Not a hex digit");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int keyBits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyBits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Hash of a random password at the configured cost, made on first use.
+     */
+    private static final class DummyHash {
+        static final String VALUE;
+
+        static {
+            byte[] password = new byte[SALT_BYTES];
+            RANDOM.nextBytes(password);
+            VALUE = hash(toHex(password));
+        }
+    }
+
+    private static byte[] pepperedDigest(String password) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(PEPPER);
+            return sha.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
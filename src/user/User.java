@@ -3,39 +3,107 @@ package user;
 import interfaces.IUser;
 import reservation.Reservation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A registered account and the reservations it owns.
+ *
+ * Notes:
+ * - Reservations are kept in booking order in a map keyed by booking ID, so finding or removing
+ *   one does not scan the user's other bookings.
+ * - The serialized form still holds the reservations as an ArrayList, so stores written before
+ *   the map was introduced can be imported and vice versa.
+ * - The reservations have their own lock, so bookings of different users never contend, and one
+ *   user's connections and the database can change them concurrently.
+ */
 public class User implements IUser, Serializable {
 
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("username", String.class),
+            new ObjectStreamField("passwordHash", String.class),
+            new ObjectStreamField("email", String.class),
+            new ObjectStreamField("isAdmin", boolean.class),
+            new ObjectStreamField("reservations", ArrayList.class)
+    };
+
     private String username;                      // Unique username for login
-    private String passwordHash;                  // Securely stored hashed password
+    private volatile String passwordHash;         // Salted hash from PasswordHasher (or a legacy MD5 hash)
     private String email;                         // Registered email for confirmation
-    private boolean isAdmin;                      // Whether the user has admin privileges
-    private ArrayList<Reservation> reservations; // All reservations owned by this user
+    private volatile boolean isAdmin;             // Whether the user has admin privileges
+    private LinkedHashMap<String, Reservation> reservations; // All reservations owned by this user, by booking ID
+    private transient ReentrantLock lock = new ReentrantLock(); // guards reservations
+    private transient volatile Runnable reservationLoader; // pages in stored reservations before first use
 
     public User(String username, String password, String email, boolean isAdmin) {
+        this(username, email, isAdmin, PasswordHasher.hash(password));
+    }
+
+    private User(String username, String email, boolean isAdmin, String passwordHash) {
         this.username = username;
-        this.passwordHash = hashPassword(password);
+        this.passwordHash = passwordHash;
         this.email = email;
         this.isAdmin = isAdmin;
-        this.reservations = new ArrayList<>();
+        this.reservations = new LinkedHashMap<>();
     }
 
-    private static String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] digest = md.digest(password.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("username", username);
+        fields.put("passwordHash", passwordHash);
+        fields.put("email", email);
+        fields.put("isAdmin", isAdmin);
+        fields.put("reservations", getReservations());
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        username = (String) fields.get("username", null);
+        passwordHash = (String) fields.get("passwordHash", null);
+        email = (String) fields.get("email", null);
+        isAdmin = fields.get("isAdmin", false);
+        reservations = new LinkedHashMap<>();
+        lock = new ReentrantLock();
+        ArrayList<Reservation> stored = (ArrayList<Reservation>) fields.get("reservations", null);
+        if (stored != null) {
+            for (Reservation r : stored) {
+                reservations.put(r.getBookingID(), r);
             }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            return null;
+        }
+    }
+
+    /**
+     * Rebuilds a user whose password has already been hashed, e.g. when replaying the database journal.
+     */
+    public static User withPasswordHash(String username, String passwordHash, String email, boolean isAdmin) {
+        return new User(username, email, isAdmin, passwordHash);
+    }
+
+    /**
+     * Defers this user's stored reservations: the loader runs before the reservation list is first
+     * read or changed and must add them through addReservation(). It is called on every access, so
+     * it should return quickly once the reservations are loaded.
+     */
+    public void deferReservations(Runnable loader) {
+        this.reservationLoader = loader;
+    }
+
+    /**
+     * Runs the loader, if any. Called before taking the lock, since the loader adds reservations.
+     */
+    private void loadDeferredReservations() {
+        Runnable loader = reservationLoader;
+        if (loader != null) {
+            loader.run();
         }
     }
 
@@ -60,30 +128,78 @@ public class User implements IUser, Serializable {
         return passwordHash;
     }
 
+    /**
+     * Checks the password against the stored hash. Costs a full PBKDF2 run unless this password
+     * was verified recently, so servers call it on PasswordHasher.onHashingPool().
+     */
     @Override
     public boolean verifyPassword(String password) {
-        return passwordHash.equals(hashPassword(password));
+        return PasswordHasher.verify(password, passwordHash);
     }
 
+    /**
+     * Replaces the stored hash, e.g. with PasswordHasher.hash() once an outdated one verified.
+     * Database.updatePasswordHash() also journals the change.
+     */
+    public void setPasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
+    }
+
+    /**
+     * Returns a copy of this user's reservations in booking order; changing it does not affect the user.
+     */
     @Override
     public ArrayList<Reservation> getReservations() {
-        return reservations;
+        loadDeferredReservations();
+        lock.lock();
+        try {
+            return new ArrayList<>(reservations.values());
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Adds a reservation, replacing any earlier one with the same booking ID.
+     */
     @Override
     public void addReservation(Reservation reservation) {
         if (reservation != null) {
-            reservations.add(reservation);
+            loadDeferredReservations();
+            lock.lock();
+            try {
+                reservations.put(reservation.getBookingID(), reservation);
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
     @Override
     public void removeReservation(String bookingID) {
-        for (int i = 0; i < reservations.size(); i++) {
-            if (reservations.get(i).getBookingID().equals(bookingID)) {
-                reservations.remove(i);
-                break;
-            }
+        loadDeferredReservations();
+        lock.lock();
+        try {
+            reservations.remove(bookingID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every reservation of this user in one step, e.g. when the account is deleted.
+     *
+     * @return the removed reservations, in booking order
+     */
+    public List<Reservation> removeAllReservations() {
+        loadDeferredReservations();
+        lock.lock();
+        try {
+            List<Reservation> removed = new ArrayList<>(reservations.values());
+            reservations.clear();
+            return removed;
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -103,12 +219,13 @@ public class User implements IUser, Serializable {
 
     @Override
     public boolean hasReservation(String bookingID) {
-        for (Reservation r : reservations) {
-            if (r.getBookingID().equals(bookingID)) {
-                return true;
-            }
+        loadDeferredReservations();
+        lock.lock();
+        try {
+            return reservations.containsKey(bookingID);
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
 }